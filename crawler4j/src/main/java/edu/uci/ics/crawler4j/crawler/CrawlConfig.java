@@ -30,6 +30,7 @@ import org.apache.http.impl.conn.SystemDefaultDnsResolver;
 import org.apache.http.message.BasicHeader;
 
 import edu.uci.ics.crawler4j.crawler.authentication.AuthInfo;
+import edu.uci.ics.crawler4j.frontier.priority.UrlPrioritizer;
 
 public class CrawlConfig {
 
@@ -235,6 +236,154 @@ public class CrawlConfig {
      */
     private int batchReadSize = 50;
 
+    /**
+     * If enabled, a bloom filter of the seen URLs is kept in memory so that
+     * lookups of new URLs do not have to hit the DocIDs database.
+     */
+    private boolean seenUrlsBloomFilter = false;
+
+    /**
+     * Number of URLs the seen-URL bloom filter is initially sized for. The filter
+     * grows beyond this, but sizing it for the expected crawl keeps it compact.
+     */
+    private long seenUrlsBloomFilterExpectedUrls = 1000000;
+
+    /**
+     * Target false positive probability of the seen-URL bloom filter.
+     */
+    private double seenUrlsBloomFilterFalsePositiveRate = 0.01;
+
+    /**
+     * If enabled, the DocIDs database of resumable crawls is keyed by 64-bit
+     * fingerprints of the URLs instead of the URLs themselves.
+     */
+    private boolean urlFingerprintKeys = false;
+
+    /**
+     * If enabled, URLs whose fingerprints collide are told apart with further
+     * bits of their hash and kept in a side table, so they get their own docid.
+     */
+    private boolean urlFingerprintCollisionCheck = true;
+
+    /**
+     * If enabled, crawls which are not resumable keep the seen URLs as 64-bit
+     * fingerprints in hash tables outside of the Java heap.
+     */
+    private boolean offHeapSeenUrls = false;
+
+    /**
+     * Number of URLs the off-heap seen URL tables are initially sized for.
+     */
+    private long offHeapSeenUrlsInitialCapacity = 1000000;
+
+    /**
+     * Interval in milliseconds at which the counters of resumable crawls are
+     * written to the database.
+     */
+    private long counterCheckpointIntervalMillis = 1000;
+
+    /**
+     * Interval in milliseconds at which the queue changes of resumable crawls are
+     * committed together. 0 commits every change on its own.
+     */
+    private long frontierGroupCommitIntervalMillis = 0;
+
+    /**
+     * Maximum number of queue operations in one group commit.
+     */
+    private int frontierGroupCommitMaxOperations = 1000;
+
+    /**
+     * Whether the queue of resumable crawls keeps the parent URL of every scheduled
+     * URL. Otherwise the parent is only referenced by its docid.
+     */
+    private boolean frontierParentUrls = true;
+
+    /**
+     * Whether the queue of resumable crawls keeps the anchor text of every scheduled URL.
+     */
+    private boolean frontierAnchors = true;
+
+    /**
+     * If enabled, the pending URLs are kept in memory-mapped, append-only segment
+     * files instead of the frontier database.
+     */
+    private boolean segmentedQueue = false;
+
+    /**
+     * Size in bytes of each segment file of the segmented queue.
+     */
+    private int segmentedQueueSegmentSize = 64 * 1024 * 1024;
+
+    /**
+     * If enabled, the next URLs in crawl order are kept in a bounded in-memory head
+     * in front of the frontier database.
+     */
+    private boolean tieredFrontier = false;
+
+    /**
+     * Maximum number of URLs in the in-memory head of the tiered frontier.
+     */
+    private int tieredFrontierHeadSize = 10000;
+
+    /**
+     * Number of URLs the tiered frontier writes to the frontier database at once.
+     */
+    private int tieredFrontierSpillBatchSize = 1000;
+
+    /**
+     * If positive, resumable crawls keep the frontier on the heap and write a snapshot
+     * of it this often (in milliseconds) instead of keeping it in Derby.
+     */
+    private long frontierCheckpointIntervalMillis = 0;
+
+    /**
+     * If enabled, resumable crawls keep the frontier in log-structured key-value files
+     * instead of Derby.
+     */
+    private boolean logStructuredFrontier = false;
+
+    /**
+     * If positive, resumable crawls which keep the frontier in Derby check this often
+     * (in milliseconds) whether the frontier tables need to be compressed.
+     */
+    private long derbyCompressionIntervalMillis = 0;
+
+    /**
+     * Number of rows deleted from a frontier database after which its tables are compressed.
+     */
+    private long derbyCompressionChurnThreshold = 100000;
+
+    /**
+     * Maximum number of URLs the frontier keeps in its per-host queues.
+     */
+    private int hostQueuesCapacity = 10000;
+
+    /**
+     * Number of URLs the frontier takes off its queue ahead of time in the background.
+     */
+    private int frontierPrefetchSize = 0;
+
+    /**
+     * Number of buffered URLs below which the prefetch buffer is refilled.
+     */
+    private int frontierPrefetchLowWaterMark = 0;
+
+    /**
+     * Whether each crawler thread keeps a local deque of URLs which idle threads steal from.
+     */
+    private boolean workStealing = false;
+
+    /**
+     * Maximum number of discovered links a crawler thread keeps in its local deque.
+     */
+    private int localQueueCapacity = 1000;
+
+    /**
+     * Scores the URLs at schedule time to set their priority, null to keep the priority of the URLs.
+     */
+    private UrlPrioritizer urlPrioritizer = null;
+
     /**
      * Validates the configs specified by this instance.
      *
@@ -255,6 +404,77 @@ public class CrawlConfig {
         if (maxDepthOfCrawling > Short.MAX_VALUE) {
             throw new Exception("Maximum value for crawl depth is " + Short.MAX_VALUE);
         }
+        if (seenUrlsBloomFilterExpectedUrls <= 0) {
+            throw new Exception(
+                "Invalid value for bloom filter expected URLs: " + seenUrlsBloomFilterExpectedUrls);
+        }
+        if (seenUrlsBloomFilterFalsePositiveRate <= 0 || seenUrlsBloomFilterFalsePositiveRate >= 1) {
+            throw new Exception("Invalid value for bloom filter false positive rate: " +
+                                seenUrlsBloomFilterFalsePositiveRate);
+        }
+        if (offHeapSeenUrlsInitialCapacity <= 0) {
+            throw new Exception(
+                "Invalid value for off-heap seen URLs initial capacity: " + offHeapSeenUrlsInitialCapacity);
+        }
+        if (counterCheckpointIntervalMillis <= 0) {
+            throw new Exception(
+                "Invalid value for counter checkpoint interval: " + counterCheckpointIntervalMillis);
+        }
+        if (frontierGroupCommitIntervalMillis < 0) {
+            throw new Exception(
+                "Invalid value for frontier group commit interval: " + frontierGroupCommitIntervalMillis);
+        }
+        if (segmentedQueueSegmentSize < 64 * 1024) {
+            throw new Exception("Segmented queue segment size should be at least 64 KB");
+        }
+        if (tieredFrontier && segmentedQueue) {
+            throw new Exception("Tiered frontier can not be combined with the segmented queue");
+        }
+        if (tieredFrontier && resumableCrawling) {
+            throw new Exception("Tiered frontier can not be combined with resumable crawling");
+        }
+        if (urlPrioritizer != null && (segmentedQueue || tieredFrontier)) {
+            throw new Exception("URL prioritizer can not be combined with the segmented queue or the tiered frontier");
+        }
+        if (frontierCheckpointIntervalMillis < 0) {
+            throw new Exception(
+                "Invalid value for frontier checkpoint interval: " + frontierCheckpointIntervalMillis);
+        }
+        if (logStructuredFrontier && frontierCheckpointIntervalMillis > 0) {
+            throw new Exception("Log-structured frontier can not be combined with frontier checkpoints");
+        }
+        if (derbyCompressionIntervalMillis < 0) {
+            throw new Exception(
+                "Invalid value for Derby compression interval: " + derbyCompressionIntervalMillis);
+        }
+        if (derbyCompressionChurnThreshold <= 0) {
+            throw new Exception(
+                "Invalid value for Derby compression churn threshold: " + derbyCompressionChurnThreshold);
+        }
+        if (hostQueuesCapacity < 0) {
+            throw new Exception("Invalid value for host queues capacity: " + hostQueuesCapacity);
+        }
+        if (frontierPrefetchSize < 0) {
+            throw new Exception("Invalid value for frontier prefetch size: " + frontierPrefetchSize);
+        }
+        if (frontierPrefetchLowWaterMark < 0 || frontierPrefetchLowWaterMark > frontierPrefetchSize) {
+            throw new Exception(
+                "Invalid value for frontier prefetch low-water mark: " + frontierPrefetchLowWaterMark);
+        }
+        if (localQueueCapacity < 0) {
+            throw new Exception("Invalid value for local queue capacity: " + localQueueCapacity);
+        }
+        if (tieredFrontierHeadSize <= 0) {
+            throw new Exception("Invalid value for tiered frontier head size: " + tieredFrontierHeadSize);
+        }
+        if (tieredFrontierSpillBatchSize <= 0) {
+            throw new Exception(
+                "Invalid value for tiered frontier spill batch size: " + tieredFrontierSpillBatchSize);
+        }
+        if (frontierGroupCommitMaxOperations <= 0) {
+            throw new Exception(
+                "Invalid value for frontier group commit max operations: " + frontierGroupCommitMaxOperations);
+        }
     }
 
     public String getCrawlStorageFolder() {
@@ -731,6 +951,415 @@ public class CrawlConfig {
         this.batchReadSize = batchReadSize;
     }
 
+    public boolean isSeenUrlsBloomFilter() {
+        return seenUrlsBloomFilter;
+    }
+
+    /**
+     * Keep a bloom filter of the seen URLs in memory, so that most lookups of URLs
+     * which have not been seen before are answered without a database read. For
+     * resumable crawls the filter is saved next to the DocIDs database on shutdown.
+     *
+     * @param seenUrlsBloomFilter
+     *            {@code true} to put a bloom filter in front of the DocIDs database
+     */
+    public void setSeenUrlsBloomFilter(boolean seenUrlsBloomFilter) {
+        this.seenUrlsBloomFilter = seenUrlsBloomFilter;
+    }
+
+    public long getSeenUrlsBloomFilterExpectedUrls() {
+        return seenUrlsBloomFilterExpectedUrls;
+    }
+
+    /**
+     * Number of URLs the seen-URL bloom filter is initially sized for. Default is 1000000.
+     */
+    public void setSeenUrlsBloomFilterExpectedUrls(long seenUrlsBloomFilterExpectedUrls) {
+        this.seenUrlsBloomFilterExpectedUrls = seenUrlsBloomFilterExpectedUrls;
+    }
+
+    public double getSeenUrlsBloomFilterFalsePositiveRate() {
+        return seenUrlsBloomFilterFalsePositiveRate;
+    }
+
+    /**
+     * Target false positive probability of the seen-URL bloom filter. Default is 0.01.
+     */
+    public void setSeenUrlsBloomFilterFalsePositiveRate(double seenUrlsBloomFilterFalsePositiveRate) {
+        this.seenUrlsBloomFilterFalsePositiveRate = seenUrlsBloomFilterFalsePositiveRate;
+    }
+
+    public boolean isUrlFingerprintKeys() {
+        return urlFingerprintKeys;
+    }
+
+    /**
+     * Key the DocIDs database of resumable crawls by 64-bit fingerprints of the URLs
+     * instead of the URLs themselves. The index stays small and every lookup is a
+     * fixed width key probe. The setting can not be changed for an existing crawl
+     * storage folder.
+     *
+     * @param urlFingerprintKeys
+     *            {@code true} to store URL fingerprints instead of URLs
+     */
+    public void setUrlFingerprintKeys(boolean urlFingerprintKeys) {
+        this.urlFingerprintKeys = urlFingerprintKeys;
+    }
+
+    public boolean isUrlFingerprintCollisionCheck() {
+        return urlFingerprintCollisionCheck;
+    }
+
+    /**
+     * Keep 32 further bits of the URL hash with each fingerprint, and store the
+     * rare URLs whose fingerprints collide in a side table. Without it such URLs
+     * are taken for already seen. Default is true.
+     */
+    public void setUrlFingerprintCollisionCheck(boolean urlFingerprintCollisionCheck) {
+        this.urlFingerprintCollisionCheck = urlFingerprintCollisionCheck;
+    }
+
+    public boolean isOffHeapSeenUrls() {
+        return offHeapSeenUrls;
+    }
+
+    /**
+     * Keep the seen URLs of crawls which are not resumable as 64-bit fingerprints in
+     * open addressing hash tables outside of the Java heap, instead of a map of URL
+     * strings. This takes about 16 bytes per URL and puts no load on the garbage
+     * collector; the memory counts against {@code -XX:MaxDirectMemorySize}.
+     *
+     * @param offHeapSeenUrls
+     *            {@code true} to keep the seen URLs off the heap
+     */
+    public void setOffHeapSeenUrls(boolean offHeapSeenUrls) {
+        this.offHeapSeenUrls = offHeapSeenUrls;
+    }
+
+    public long getOffHeapSeenUrlsInitialCapacity() {
+        return offHeapSeenUrlsInitialCapacity;
+    }
+
+    /**
+     * Number of URLs the off-heap seen URL tables are initially sized for. The tables
+     * grow when they fill up, which briefly needs the old and the new table in memory.
+     * Default is 1000000.
+     */
+    public void setOffHeapSeenUrlsInitialCapacity(long offHeapSeenUrlsInitialCapacity) {
+        this.offHeapSeenUrlsInitialCapacity = offHeapSeenUrlsInitialCapacity;
+    }
+
+    public long getCounterCheckpointIntervalMillis() {
+        return counterCheckpointIntervalMillis;
+    }
+
+    /**
+     * Interval in milliseconds at which the counters of resumable crawls (such as the
+     * number of scheduled and processed pages) are written to the database. They are
+     * also written on shutdown; after a crash they may lag by up to this interval.
+     * Default is 1000.
+     */
+    public void setCounterCheckpointIntervalMillis(long counterCheckpointIntervalMillis) {
+        this.counterCheckpointIntervalMillis = counterCheckpointIntervalMillis;
+    }
+
+    public long getFrontierGroupCommitIntervalMillis() {
+        return frontierGroupCommitIntervalMillis;
+    }
+
+    /**
+     * Commit the queue changes of resumable crawls (URLs scheduled, handed out to the
+     * crawler threads and finished) together, at most this many milliseconds apart,
+     * instead of syncing every change to disk on its own. A crash loses at most the
+     * changes of the last interval. Default is 0, which commits every change.
+     */
+    public void setFrontierGroupCommitIntervalMillis(long frontierGroupCommitIntervalMillis) {
+        this.frontierGroupCommitIntervalMillis = frontierGroupCommitIntervalMillis;
+    }
+
+    public int getFrontierGroupCommitMaxOperations() {
+        return frontierGroupCommitMaxOperations;
+    }
+
+    /**
+     * Maximum number of queue operations committed together when group commit is
+     * enabled. Default is 1000.
+     */
+    public void setFrontierGroupCommitMaxOperations(int frontierGroupCommitMaxOperations) {
+        this.frontierGroupCommitMaxOperations = frontierGroupCommitMaxOperations;
+    }
+
+    public boolean isFrontierParentUrls() {
+        return frontierParentUrls;
+    }
+
+    /**
+     * Keep the parent URL with every URL in the queue of a resumable crawl. When
+     * disabled, the parent URL of the URLs handed to the crawlers is null and the
+     * parent is only known by its docid, which makes the queue considerably smaller.
+     * Default is true.
+     */
+    public void setFrontierParentUrls(boolean frontierParentUrls) {
+        this.frontierParentUrls = frontierParentUrls;
+    }
+
+    public boolean isFrontierAnchors() {
+        return frontierAnchors;
+    }
+
+    /**
+     * Keep the anchor text with every URL in the queue of a resumable crawl. When
+     * disabled, the anchor of the URLs handed to the crawlers is null.
+     * Default is true.
+     */
+    public void setFrontierAnchors(boolean frontierAnchors) {
+        this.frontierAnchors = frontierAnchors;
+    }
+
+    public boolean isSegmentedQueue() {
+        return segmentedQueue;
+    }
+
+    /**
+     * Keep the pending URLs in memory-mapped, append-only segment files, one set per
+     * priority level, instead of the frontier database. Scheduling and dequeuing are
+     * then sequential writes and reads, which keeps queues much larger than the memory
+     * fast. URLs of the same priority are crawled in the order they were scheduled.
+     * For resumable crawls the setting can not be changed for an existing crawl storage
+     * folder.
+     *
+     * @param segmentedQueue
+     *            {@code true} to queue the pending URLs in segment files
+     */
+    public void setSegmentedQueue(boolean segmentedQueue) {
+        this.segmentedQueue = segmentedQueue;
+    }
+
+    public int getSegmentedQueueSegmentSize() {
+        return segmentedQueueSegmentSize;
+    }
+
+    /**
+     * Size in bytes of each segment file of the segmented queue. Default is 64 MB.
+     */
+    public void setSegmentedQueueSegmentSize(int segmentedQueueSegmentSize) {
+        this.segmentedQueueSegmentSize = segmentedQueueSegmentSize;
+    }
+
+    public boolean isTieredFrontier() {
+        return tieredFrontier;
+    }
+
+    /**
+     * Keep the next URLs in crawl order in a bounded in-memory head in front of the
+     * frontier database. Crawler threads are then served from memory while a
+     * background thread refills the head and writes the URLs which do not fit into it
+     * to the database in batches. The URLs in memory would be lost if the crawl
+     * stopped abruptly, so the tiered frontier can not be combined with
+     * {@link #setResumableCrawling(boolean)} nor with {@link #setSegmentedQueue(boolean)}.
+     *
+     * @param tieredFrontier
+     *            {@code true} to put an in-memory head in front of the frontier database
+     */
+    public void setTieredFrontier(boolean tieredFrontier) {
+        this.tieredFrontier = tieredFrontier;
+    }
+
+    public int getTieredFrontierHeadSize() {
+        return tieredFrontierHeadSize;
+    }
+
+    /**
+     * Maximum number of URLs in the in-memory head of the tiered frontier. Default is 10000.
+     */
+    public void setTieredFrontierHeadSize(int tieredFrontierHeadSize) {
+        this.tieredFrontierHeadSize = tieredFrontierHeadSize;
+    }
+
+    public int getTieredFrontierSpillBatchSize() {
+        return tieredFrontierSpillBatchSize;
+    }
+
+    /**
+     * Number of URLs the tiered frontier writes to the frontier database at once. Default is 1000.
+     */
+    public void setTieredFrontierSpillBatchSize(int tieredFrontierSpillBatchSize) {
+        this.tieredFrontierSpillBatchSize = tieredFrontierSpillBatchSize;
+    }
+
+    public long getFrontierCheckpointIntervalMillis() {
+        return frontierCheckpointIntervalMillis;
+    }
+
+    /**
+     * Keep the frontier of a resumable crawl on the heap instead of in Derby, and
+     * write a compressed snapshot of it to the crawl storage folder this often. Every
+     * change is also appended to a journal, so a restart reads the newest snapshot and
+     * replays the changes made after it; the restart time depends on the size of the
+     * snapshot rather than on the number of rows in the frontier databases. The whole
+     * frontier has to fit into the heap. Default is 0, which keeps the frontier in Derby.
+     *
+     * @param frontierCheckpointIntervalMillis
+     *            the snapshot interval in milliseconds, or 0 to keep the frontier in Derby
+     */
+    public void setFrontierCheckpointIntervalMillis(long frontierCheckpointIntervalMillis) {
+        this.frontierCheckpointIntervalMillis = frontierCheckpointIntervalMillis;
+    }
+
+    public boolean isLogStructuredFrontier() {
+        return logStructuredFrontier;
+    }
+
+    /**
+     * Keep the frontier of a resumable crawl in log-structured key-value files instead
+     * of Derby. Every change is appended to the log of its database and an in-memory
+     * index of the keys points into the log, so schedule, dequeue and seen-URL lookups
+     * skip the SQL layer; the keys of the frontier have to fit into the heap. The
+     * setting can not be changed for an existing crawl storage folder.
+     *
+     * @param logStructuredFrontier
+     *            {@code true} to keep the frontier in log files
+     */
+    public void setLogStructuredFrontier(boolean logStructuredFrontier) {
+        this.logStructuredFrontier = logStructuredFrontier;
+    }
+
+    public long getDerbyCompressionIntervalMillis() {
+        return derbyCompressionIntervalMillis;
+    }
+
+    /**
+     * Derby does not give the space of deleted rows back, so the tables which every
+     * URL passes through (the pending and in-process queues) keep growing over a long
+     * crawl. If positive, a background task checks this often (in milliseconds) and
+     * compresses the tables of a frontier database in place once enough rows were
+     * deleted from it (see {@link #setDerbyCompressionChurnThreshold(long)}) or once
+     * it had deletes and was idle since the previous check. Default is 0 (disabled).
+     *
+     * @param derbyCompressionIntervalMillis
+     *            the check interval in milliseconds, or 0 to never compress
+     */
+    public void setDerbyCompressionIntervalMillis(long derbyCompressionIntervalMillis) {
+        this.derbyCompressionIntervalMillis = derbyCompressionIntervalMillis;
+    }
+
+    public long getDerbyCompressionChurnThreshold() {
+        return derbyCompressionChurnThreshold;
+    }
+
+    /**
+     * @param derbyCompressionChurnThreshold
+     *            the number of rows deleted from a frontier database after which its
+     *            tables are compressed. Default is 100000.
+     */
+    public void setDerbyCompressionChurnThreshold(long derbyCompressionChurnThreshold) {
+        this.derbyCompressionChurnThreshold = derbyCompressionChurnThreshold;
+    }
+
+    public int getHostQueuesCapacity() {
+        return hostQueuesCapacity;
+    }
+
+    /**
+     * With a politeness delay, the frontier takes up to this many URLs off the queue
+     * into one queue per host and only hands out URLs of hosts whose politeness delay
+     * is over, so that threads crawl different hosts in parallel. The more URLs it
+     * keeps, the more hosts it can choose from. 0 hands the URLs out in queue order,
+     * in which case threads wait for the politeness delay of their next host when
+     * fetching. Default is 10000.
+     *
+     * @param hostQueuesCapacity
+     *            the number of URLs kept in the per-host queues, or 0 to keep none
+     */
+    public void setHostQueuesCapacity(int hostQueuesCapacity) {
+        this.hostQueuesCapacity = hostQueuesCapacity;
+    }
+
+    public int getFrontierPrefetchSize() {
+        return frontierPrefetchSize;
+    }
+
+    /**
+     * Have a background thread take URLs off the frontier queue ahead of time, so
+     * that crawler threads get their next batch from memory instead of waiting for
+     * the queue's storage. The buffer is refilled to this size whenever it drops
+     * below the low-water mark; with resumable crawling the buffered URLs count as
+     * in process. The {@link edu.uci.ics.crawler4j.frontier.Frontier} reports how
+     * often threads found the buffer empty (prefetch misses) to help tune this and
+     * {@link #setFrontierPrefetchLowWaterMark(int)} against the batch read size of
+     * the crawlers. Default is 0 (no prefetching).
+     *
+     * @param frontierPrefetchSize
+     *            the number of URLs to prefetch, or 0 to read the queue when asked
+     */
+    public void setFrontierPrefetchSize(int frontierPrefetchSize) {
+        this.frontierPrefetchSize = frontierPrefetchSize;
+    }
+
+    public int getFrontierPrefetchLowWaterMark() {
+        return frontierPrefetchLowWaterMark;
+    }
+
+    /**
+     * @param frontierPrefetchLowWaterMark
+     *            the number of buffered URLs below which the prefetch buffer is refilled.
+     *            Default is 0, which refills it when half of it is used up.
+     */
+    public void setFrontierPrefetchLowWaterMark(int frontierPrefetchLowWaterMark) {
+        this.frontierPrefetchLowWaterMark = frontierPrefetchLowWaterMark;
+    }
+
+    public boolean isWorkStealing() {
+        return workStealing;
+    }
+
+    /**
+     * Gives each crawler thread a local deque, filled in bulk from the frontier, where
+     * it also keeps the links it discovers on the host of the page it crawled. Threads
+     * take their next URL from their own deque without locking the frontier, and idle
+     * threads steal from the deques of busy ones. Default is false.
+     *
+     * @param workStealing
+     *            true to give each crawler thread a local deque
+     */
+    public void setWorkStealing(boolean workStealing) {
+        this.workStealing = workStealing;
+    }
+
+    public int getLocalQueueCapacity() {
+        return localQueueCapacity;
+    }
+
+    /**
+     * @param localQueueCapacity
+     *            the number of discovered links a crawler thread keeps in its local deque
+     *            with work stealing on; further links go to the frontier. Default is 1000.
+     */
+    public void setLocalQueueCapacity(int localQueueCapacity) {
+        this.localQueueCapacity = localQueueCapacity;
+    }
+
+    public UrlPrioritizer getUrlPrioritizer() {
+        return urlPrioritizer;
+    }
+
+    /**
+     * Sets the priority of every scheduled URL from its score, see the prioritizers in
+     * {@code edu.uci.ics.crawler4j.frontier.priority}. The frontier then keeps its queue
+     * in priority buckets, which also move queued URLs when new links change their
+     * score, so a prioritizer can not be combined with {@link #setSegmentedQueue(boolean)}
+     * or {@link #setTieredFrontier(boolean)}. With a prioritizer,
+     * maxPagesToFetch limits the pages handed out to the crawlers rather than the pages
+     * scheduled, so that the most valuable pages found so far are fetched first.
+     * Default is null (the priority of the URLs is left alone).
+     *
+     * @param urlPrioritizer
+     *            the prioritizer, or null for none
+     */
+    public void setUrlPrioritizer(UrlPrioritizer urlPrioritizer) {
+        this.urlPrioritizer = urlPrioritizer;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -760,6 +1389,35 @@ public class CrawlConfig {
         sb.append("Halt on error: " + isHaltOnError() + "\n");
         sb.append("Allow single level domain:" + isAllowSingleLevelDomain() + "\n");
         sb.append("Batch read size: " + getBatchReadSize() + "\n");
+        sb.append("Seen URLs bloom filter: " + isSeenUrlsBloomFilter() + "\n");
+        sb.append("Seen URLs bloom filter expected URLs: " + getSeenUrlsBloomFilterExpectedUrls() + "\n");
+        sb.append("Seen URLs bloom filter false positive rate: " +
+                  getSeenUrlsBloomFilterFalsePositiveRate() + "\n");
+        sb.append("URL fingerprint keys: " + isUrlFingerprintKeys() + "\n");
+        sb.append("URL fingerprint collision check: " + isUrlFingerprintCollisionCheck() + "\n");
+        sb.append("Off-heap seen URLs: " + isOffHeapSeenUrls() + "\n");
+        sb.append("Off-heap seen URLs initial capacity: " + getOffHeapSeenUrlsInitialCapacity() + "\n");
+        sb.append("Counter checkpoint interval: " + getCounterCheckpointIntervalMillis() + "\n");
+        sb.append("Frontier group commit interval: " + getFrontierGroupCommitIntervalMillis() + "\n");
+        sb.append("Frontier group commit max operations: " + getFrontierGroupCommitMaxOperations() + "\n");
+        sb.append("Frontier parent URLs: " + isFrontierParentUrls() + "\n");
+        sb.append("Frontier anchors: " + isFrontierAnchors() + "\n");
+        sb.append("Segmented queue: " + isSegmentedQueue() + "\n");
+        sb.append("Segmented queue segment size: " + getSegmentedQueueSegmentSize() + "\n");
+        sb.append("Tiered frontier: " + isTieredFrontier() + "\n");
+        sb.append("Tiered frontier head size: " + getTieredFrontierHeadSize() + "\n");
+        sb.append("Tiered frontier spill batch size: " + getTieredFrontierSpillBatchSize() + "\n");
+        sb.append("Frontier checkpoint interval: " + getFrontierCheckpointIntervalMillis() + "\n");
+        sb.append("Log-structured frontier: " + isLogStructuredFrontier() + "\n");
+        sb.append("Derby compression interval: " + getDerbyCompressionIntervalMillis() + "\n");
+        sb.append("Derby compression churn threshold: " + getDerbyCompressionChurnThreshold() + "\n");
+        sb.append("Host queues capacity: " + getHostQueuesCapacity() + "\n");
+        sb.append("Frontier prefetch size: " + getFrontierPrefetchSize() + "\n");
+        sb.append("Frontier prefetch low-water mark: " + getFrontierPrefetchLowWaterMark() + "\n");
+        sb.append("Work stealing: " + isWorkStealing() + "\n");
+        sb.append("Local queue capacity: " + getLocalQueueCapacity() + "\n");
+        sb.append("URL prioritizer: " +
+                  (getUrlPrioritizer() == null ? "none" : getUrlPrioritizer().getClass().getName()) + "\n");
         return sb.toString();
     }
 }
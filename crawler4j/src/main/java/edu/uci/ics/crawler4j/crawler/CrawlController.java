@@ -28,9 +28,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.uci.ics.crawler4j.db.DerbyEnvironment;
+import edu.uci.ics.crawler4j.db.LogEnvironment;
 import edu.uci.ics.crawler4j.fetcher.PageFetcher;
+import edu.uci.ics.crawler4j.frontier.CheckpointFrontierStore;
+import edu.uci.ics.crawler4j.frontier.DerbyFrontierStore;
 import edu.uci.ics.crawler4j.frontier.DocIDServer;
 import edu.uci.ics.crawler4j.frontier.Frontier;
+import edu.uci.ics.crawler4j.frontier.FrontierStore;
+import edu.uci.ics.crawler4j.frontier.InMemoryFrontierStore;
+import edu.uci.ics.crawler4j.frontier.LogFrontierStore;
 import edu.uci.ics.crawler4j.parser.Parser;
 import edu.uci.ics.crawler4j.robotstxt.RobotstxtServer;
 import edu.uci.ics.crawler4j.url.TLDList;
@@ -47,6 +53,10 @@ import edu.uci.ics.crawler4j.util.IO;
 public class CrawlController {
 
     static final Logger logger = LoggerFactory.getLogger(CrawlController.class);
+
+    private static final String CHECKPOINT_FOLDER = "checkpoints";
+    private static final String LOG_FOLDER = "log";
+
     private final CrawlConfig config;
 
     /**
@@ -80,7 +90,13 @@ public class CrawlController {
     protected TLDList tldList;
 
     protected final Object waitingLock = new Object();
+
+    /**
+     * The Derby environment holding the frontier of a resumable crawl,
+     * null when the crawl is not resumable or checkpoints its frontier to files.
+     */
     protected final DerbyEnvironment env;
+    protected final FrontierStore frontierStore;
 
     protected Parser parser;
 
@@ -115,12 +131,6 @@ public class CrawlController {
 
         boolean resumable = config.isResumableCrawling();
 
-        DerbyEnvironment.DerbyEnvironmentConfig envConfig = new DerbyEnvironment.DerbyEnvironmentConfig();
-        envConfig.setAllowCreate(true);
-        envConfig.setTransactional(resumable);
-        envConfig.setLocking(resumable);
-        envConfig.setLockTimeout(config.getDbLockTimeout(), TimeUnit.MILLISECONDS);
-
         File envHome = new File(config.getCrawlStorageFolder() + "/frontier");
         if (!envHome.exists()) {
             if (envHome.mkdir()) {
@@ -137,9 +147,34 @@ public class CrawlController {
                         " ( as you have configured resumable crawling to false )");
         }
 
-        env = new DerbyEnvironment(envHome, envConfig);
-        docIdServer = new DocIDServer(env, config);
-        frontier = new Frontier(env, config);
+        if (resumable && config.getFrontierCheckpointIntervalMillis() > 0) {
+            env = null;
+            frontierStore = new CheckpointFrontierStore(new File(envHome, CHECKPOINT_FOLDER),
+                                                        config.getFrontierCheckpointIntervalMillis());
+        } else if (resumable && config.isLogStructuredFrontier()) {
+            env = null;
+            frontierStore = new LogFrontierStore(new LogEnvironment(new File(envHome, LOG_FOLDER)), config);
+        } else if (resumable) {
+            DerbyEnvironment.DerbyEnvironmentConfig envConfig = new DerbyEnvironment.DerbyEnvironmentConfig();
+            envConfig.setAllowCreate(true);
+            envConfig.setTransactional(true);
+            envConfig.setLocking(true);
+            envConfig.setLockTimeout(config.getDbLockTimeout(), TimeUnit.MILLISECONDS);
+
+            env = new DerbyEnvironment(envHome, envConfig);
+            if (config.getDerbyCompressionIntervalMillis() > 0) {
+                env.startMaintenance(config.getDerbyCompressionIntervalMillis(),
+                                     config.getDerbyCompressionChurnThreshold());
+            }
+            frontierStore = new DerbyFrontierStore(env, config);
+        } else {
+            // Nothing has to survive a restart, so keep the frontier on the heap
+            env = null;
+            frontierStore = new InMemoryFrontierStore(config.isOffHeapSeenUrls(),
+                                                      config.getOffHeapSeenUrlsInitialCapacity());
+        }
+        docIdServer = new DocIDServer(frontierStore, config);
+        frontier = new Frontier(frontierStore, config, pageFetcher.getHostRateLimiter());
 
         this.pageFetcher = pageFetcher;
         this.parser = parser == null ? new Parser(config, tldList) : parser;
@@ -378,7 +413,7 @@ public class CrawlController {
 
                                         finished = true;
                                         waitingLock.notifyAll();
-                                        env.close();
+                                        frontierStore.close();
 
                                         return;
                                     }
@@ -394,7 +429,7 @@ public class CrawlController {
                                 docIdServer.close();
                                 pageFetcher.shutDown();
                                 waitingLock.notifyAll();
-                                env.close();
+                                frontierStore.close();
                             }
                         } else {
                             logger.error("Unexpected Error", e);
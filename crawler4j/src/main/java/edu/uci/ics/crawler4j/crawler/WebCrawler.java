@@ -20,8 +20,10 @@ package edu.uci.ics.crawler4j.crawler;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.impl.EnglishReasonPhraseCatalog;
@@ -35,6 +37,7 @@ import edu.uci.ics.crawler4j.fetcher.PageFetchResult;
 import edu.uci.ics.crawler4j.fetcher.PageFetcher;
 import edu.uci.ics.crawler4j.frontier.DocIDServer;
 import edu.uci.ics.crawler4j.frontier.Frontier;
+import edu.uci.ics.crawler4j.frontier.WorkStealingQueues;
 import edu.uci.ics.crawler4j.parser.HtmlParseData;
 import edu.uci.ics.crawler4j.parser.NotAllowedContentException;
 import edu.uci.ics.crawler4j.parser.ParseData;
@@ -51,6 +54,12 @@ public class WebCrawler implements Runnable {
 
     protected static final Logger logger = LoggerFactory.getLogger(WebCrawler.class);
 
+    /**
+     * How long an idle crawler thread waits for the frontier before it tries to steal
+     * URLs again, with work stealing on.
+     */
+    private static final long STEAL_INTERVAL_MILLIS = 100;
+
     /**
      * The id associated to the crawler thread running this instance
      */
@@ -94,6 +103,13 @@ public class WebCrawler implements Runnable {
      */
     private Frontier frontier;
 
+    /**
+     * The local deques of all crawler threads and the one of this instance, null if
+     * work stealing is off.
+     */
+    private WorkStealingQueues workStealingQueues;
+    private WorkStealingQueues.LocalQueue localQueue;
+
     /**
      * Is the current crawler instance waiting for new URLs? This field is
      * mainly used by the controller to detect whether all of the crawler
@@ -127,6 +143,8 @@ public class WebCrawler implements Runnable {
         this.myController = crawlController;
         this.isWaitingForNewURLs = false;
         this.batchReadSize = crawlController.getConfig().getBatchReadSize();
+        this.workStealingQueues = frontier.getWorkStealingQueues();
+        this.localQueue = workStealingQueues == null ? null : workStealingQueues.register();
     }
 
     /**
@@ -317,18 +335,19 @@ public class WebCrawler implements Runnable {
             boolean halt = false;
             while (!halt) {
                 List<WebURL> assignedURLs = new ArrayList<>(batchReadSize);
-                isWaitingForNewURLs = true;
-                frontier.getNextURLs(batchReadSize, assignedURLs);
-                isWaitingForNewURLs = false;
+                if (localQueue == null) {
+                    isWaitingForNewURLs = true;
+                    frontier.getNextURLs(batchReadSize, assignedURLs);
+                    isWaitingForNewURLs = false;
+                } else {
+                    takeLocalURL(assignedURLs);
+                }
                 if (assignedURLs.isEmpty()) {
-                    if (frontier.isFinished()) {
+                    // Without work stealing the frontier only hands out nothing once the crawl is over
+                    // or this thread was interrupted
+                    if (frontier.isFinished() || Thread.currentThread().isInterrupted()) {
                         return;
                     }
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException e) {
-                        logger.error("Error occurred", e);
-                    }
                 } else {
                     for (WebURL curURL : assignedURLs) {
                         if (myController.isShuttingDown()) {
@@ -349,6 +368,39 @@ public class WebCrawler implements Runnable {
             }
         } catch (Throwable t) {
             setError(t);
+        } finally {
+            if (localQueue != null) {
+                List<WebURL> left = workStealingQueues.unregister(localQueue);
+                if (!frontier.isFinished()) {
+                    // Hand the URLs of this thread to the others; once the crawl is over they stay
+                    // in process for a resumed crawl
+                    frontier.reschedule(left);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the next URL of the local deque to {@code result}. If the deque is empty, it
+     * is refilled with URLs stolen from another crawler thread, or else in bulk from
+     * the frontier, waiting for at most {@link #STEAL_INTERVAL_MILLIS} before trying
+     * to steal again.
+     */
+    private void takeLocalURL(List<WebURL> result) {
+        WebURL next = localQueue.pollFirst();
+        if (next == null) {
+            List<WebURL> urls = new ArrayList<>(batchReadSize);
+            if (workStealingQueues.steal(localQueue, batchReadSize, urls) == 0) {
+                isWaitingForNewURLs = true;
+                frontier.getNextURLs(batchReadSize, urls, STEAL_INTERVAL_MILLIS);
+                isWaitingForNewURLs = false;
+            }
+            // Other threads may steal the URLs this thread did not get to yet
+            localQueue.addAll(urls);
+            next = localQueue.pollFirst();
+        }
+        if (next != null) {
+            result.add(next);
         }
     }
 
@@ -514,7 +566,9 @@ public class WebCrawler implements Runnable {
 
                 if (shouldFollowLinksIn(page.getWebURL())) {
                     ParseData parseData = page.getParseData();
-                    List<WebURL> toSchedule = new ArrayList<>();
+                    Map<String, WebURL> toSchedule = new LinkedHashMap<>();
+                    List<WebURL> repeatedUrls = new ArrayList<>();
+                    List<WebURL> seenUrls = new ArrayList<>();
                     int maxCrawlDepth = myController.getConfig().getMaxDepthOfCrawling();
                     for (WebURL webURL : parseData.getOutgoingUrls()) {
                         webURL.setParentDocid(curURL.getDocid());
@@ -525,14 +579,18 @@ public class WebCrawler implements Runnable {
                             // depth to a negative number.
                             webURL.setDepth((short) -1);
                             webURL.setDocid(newdocid);
+                            seenUrls.add(webURL);
+                        } else if (toSchedule.containsKey(webURL.getURL())) {
+                            // Already found earlier on this page, it gets its docid below
+                            webURL.setDepth((short) -1);
+                            repeatedUrls.add(webURL);
                         } else {
                             webURL.setDocid(-1);
                             webURL.setDepth((short) (curURL.getDepth() + 1));
                             if ((maxCrawlDepth == -1) || (curURL.getDepth() < maxCrawlDepth)) {
                                 if (shouldVisit(page, webURL)) {
                                     if (robotstxtServer.allows(webURL)) {
-                                        webURL.setDocid(docIdServer.getNewDocID(webURL.getURL()));
-                                        toSchedule.add(webURL);
+                                        toSchedule.put(webURL.getURL(), webURL);
                                     } else {
                                         logger.debug(
                                             "Not visiting: {} as per the server's \"robots.txt\" " +
@@ -546,7 +604,11 @@ public class WebCrawler implements Runnable {
                             }
                         }
                     }
-                    frontier.scheduleAll(toSchedule);
+                    // Links turned down above will never be crawled and get no share of the page
+                    List<WebURL> newUrls = new ArrayList<>(toSchedule.values());
+                    newUrls.addAll(repeatedUrls);
+                    frontier.linksFound(curURL, newUrls, seenUrls);
+                    scheduleNewUrls(curURL, toSchedule, repeatedUrls);
                 } else {
                     logger.debug("Not looking for links in page {}, "
                                  + "as per your \"shouldFollowLinksInPage\" policy",
@@ -584,6 +646,55 @@ public class WebCrawler implements Runnable {
         }
     }
 
+    /**
+     * Assigns docids to the new outgoing urls of a page with a single batch and
+     * schedules them.
+     *
+     * With work stealing on, the urls on the host of the page go to the local deque
+     * of this thread, as far as it has room for them.
+     *
+     * @param curURL the url of the page
+     * @param toSchedule the urls to schedule, keyed by their canonical URL
+     * @param repeatedUrls later occurrences of urls in {@code toSchedule} on the same page
+     */
+    private void scheduleNewUrls(WebURL curURL, Map<String, WebURL> toSchedule, List<WebURL> repeatedUrls) {
+        if (toSchedule.isEmpty()) {
+            return;
+        }
+        List<WebURL> urls = new ArrayList<>(toSchedule.values());
+        List<String> urlStrings = new ArrayList<>(urls.size());
+        for (WebURL webURL : urls) {
+            urlStrings.add(webURL.getURL());
+        }
+        int[] docIds = docIdServer.assignDocIds(urlStrings);
+
+        List<WebURL> assigned = new ArrayList<>(urls.size());
+        for (int i = 0; i < docIds.length; i++) {
+            if (docIds[i] > 0) {
+                urls.get(i).setDocid(docIds[i]);
+                assigned.add(urls.get(i));
+            }
+        }
+        for (WebURL webURL : repeatedUrls) {
+            webURL.setDocid(toSchedule.get(webURL.getURL()).getDocid());
+        }
+        if (localQueue != null && localQueue.remainingCapacity() > 0) {
+            String host = curURL.getHost();
+            List<WebURL> local = new ArrayList<>();
+            List<WebURL> shared = new ArrayList<>(assigned.size());
+            for (WebURL webURL : assigned) {
+                if (local.size() < localQueue.remainingCapacity() && host.equals(webURL.getHost())) {
+                    local.add(webURL);
+                } else {
+                    shared.add(webURL);
+                }
+            }
+            localQueue.addAll(frontier.assign(local));
+            assigned = shared;
+        }
+        frontier.scheduleAll(assigned);
+    }
+
     public Thread getThread() {
         return myThread;
     }
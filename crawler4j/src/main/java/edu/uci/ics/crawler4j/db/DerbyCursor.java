@@ -0,0 +1,127 @@
+package edu.uci.ics.crawler4j.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward only cursor over the rows of a query, to replace Berkeley DB Cursor.
+ *
+ * Rows are fetched from Derby {@code fetchSize} at a time while iterating, so
+ * walking a table of any size takes constant memory. The cursor has a connection
+ * of its own, so the thread which iterates may write to the same database in the
+ * meantime. It must be closed, which a try-with-resources block takes care of.
+ */
+public class DerbyCursor<T> implements Iterator<T>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DerbyCursor.class);
+
+    /**
+     * Turns the current row of a result set into an entry.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private final Connection connection;
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final RowMapper<T> mapper;
+    private final Consumer<DerbyCursor<?>> onClose;
+    private T next;
+    private boolean closed = false;
+
+    DerbyCursor(Connection connection, String sql, int fetchSize, RowMapper<T> mapper,
+                Consumer<DerbyCursor<?>> onClose)
+        throws SQLException {
+        this.connection = connection;
+        this.mapper = mapper;
+        this.onClose = onClose;
+        try {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            resultSet = statement.executeQuery(sql);
+        } catch (SQLException e) {
+            closeConnection();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            if (resultSet.next()) {
+                next = mapper.map(resultSet);
+                return true;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read from database cursor", e);
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result = next;
+        next = null;
+        return result;
+    }
+
+    /**
+     * @return the remaining rows as a sequential stream which closes this cursor when it is closed.
+     */
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED |
+                                                                                Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            resultSet.close();
+            statement.close();
+        } catch (SQLException e) {
+            logger.error("Error closing database cursor", e);
+        }
+        closeConnection();
+    }
+
+    private void closeConnection() {
+        try {
+            // Derby refuses to close a connection with an open transaction
+            connection.rollback();
+            connection.close();
+        } catch (SQLException e) {
+            logger.error("Error closing database cursor", e);
+        }
+        onClose.accept(this);
+    }
+}
@@ -1,6 +1,8 @@
 package edu.uci.ics.crawler4j.db;
 
 import java.io.File;
+import java.sql.BatchUpdateException;
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -8,32 +10,95 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.uci.ics.crawler4j.util.Util;
+
 /**
  * Derby database abstraction to replace Berkeley DB functionality
  */
 public class DerbyDatabase {
     private static final Logger logger = LoggerFactory.getLogger(DerbyDatabase.class);
 
+    /** SQL state of a primary key violation */
+    private static final String DUPLICATE_KEY_STATE = "23505";
+
+    /** Tables which see deletes and so grow fragmented over a long crawl */
+    private static final String[] COMPRESSED_TABLES = {"QUEUE_TABLE", "DATA_TABLE"};
+
+    /**
+     * Counter under which the length of the queue table is saved on close; it is
+     * removed again on open, so that it is missing after a crash.
+     */
+    private static final String QUEUE_LENGTH_COUNTER = "queue_table.length";
+
+    /** Rows fetched at a time by the cursors of the methods which read a whole table */
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
     private final String dbPath;
     private final String dbName;
     private final boolean transactional;
     private final boolean resumable;
-    private Connection connection;
-    private final ConcurrentHashMap<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
+    private final Role role;
+    /** Whether there is a queue table whose length is maintained */
+    private boolean hasQueue;
+    private String connectionURL;
+    private volatile boolean closed = false;
+
+    /**
+     * Every thread gets its own connection (and statement cache), so that
+     * crawler threads can read the database in parallel and a transaction
+     * started by one thread never picks up the statements of another.
+     */
+    private final ConcurrentHashMap<Thread, ThreadConnection> connections = new ConcurrentHashMap<>();
     private final AtomicInteger transactionCounter = new AtomicInteger(0);
+    private final Set<DerbyCursor<?>> openCursors = ConcurrentHashMap.newKeySet();
+
+    /** Rows deleted since the tables were last compressed: the space Derby keeps but no longer uses */
+    private final LongAdder deletedRows = new LongAdder();
+    /** Statements prepared so far, to tell whether the database has been idle for a while */
+    private final LongAdder statements = new LongAdder();
+    /** Committed rows of the queue table, maintained by every statement which inserts or deletes some */
+    private final AtomicLong queueLength = new AtomicLong();
+
+    /**
+     * What a database is used for, which decides the tables it gets.
+     */
+    public enum Role {
+        /** A queue of URLs: the queue table, and the counters table for its saved length */
+        QUEUE,
+        /** Docids keyed by URL: the data table, and the counters table for the high-water docid */
+        DOC_IDS,
+        /** Docids keyed by URL fingerprint: the fingerprint, collision and counters tables */
+        FINGERPRINT_DOC_IDS,
+        /** Statistics: the counters table */
+        COUNTERS
+    }
 
     public DerbyDatabase(String dbPath, String dbName, boolean transactional, boolean resumable) {
+        this(dbPath, dbName, transactional, resumable, null);
+    }
+
+    /**
+     * @param role decides which tables are created; null for all of them.
+     */
+    public DerbyDatabase(String dbPath, String dbName, boolean transactional, boolean resumable, Role role) {
         this.dbPath = dbPath;
         this.dbName = dbName;
         this.transactional = transactional;
         this.resumable = resumable;
+        this.role = role;
         initializeDatabase();
     }
 
@@ -41,8 +106,9 @@ public class DerbyDatabase {
         try {
             // Load Derby JDBC driver
             try {
-                Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
-            } catch (ClassNotFoundException e) {
+                // A new instance boots the engine again if an earlier environment shut it down
+                Class.forName("org.apache.derby.jdbc.EmbeddedDriver").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
                 logger.error("Derby JDBC driver not found. Make sure derby dependency is included in classpath.", e);
                 throw new RuntimeException("Derby JDBC driver not found", e);
             }
@@ -54,11 +120,16 @@ public class DerbyDatabase {
             }
 
             // Connect to Derby database
-            String connectionURL = "jdbc:derby:" + dbPath + "/" + dbName + ";create=true";
-            connection = DriverManager.getConnection(connectionURL);
+            connectionURL = "jdbc:derby:" + dbPath + "/" + dbName;
+            Connection connection = DriverManager.getConnection(connectionURL + ";create=true");
+            connections.put(Thread.currentThread(), new ThreadConnection(connection));
 
             // Create tables if they don't exist
             createTables();
+            hasQueue = hasTable("queue_table");
+            if (hasQueue) {
+                loadQueueLength();
+            }
 
         } catch (SQLException e) {
             logger.error("Failed to initialize Derby database", e);
@@ -66,36 +137,111 @@ public class DerbyDatabase {
         }
     }
 
+    /**
+     * Creates the tables of the role of this database, or every table if it has none.
+     */
     private void createTables() throws SQLException {
-        // Create main data table
-        try (Statement stmt = connection.createStatement()) {
-            try {
-                stmt.execute("CREATE TABLE data_table (" +
-                           "key_data VARCHAR(32672) PRIMARY KEY, " +
-                           "value_data BLOB)");
-            } catch (SQLException e) {
-                // Table might already exist, ignore
-                if (!e.getMessage().contains("already exists")) {
-                    throw e;
-                }
+        if (role == null || role == Role.DOC_IDS) {
+            // Create main data table
+            createTable("CREATE TABLE data_table (" +
+                        "key_data VARCHAR(32672) PRIMARY KEY, " +
+                        "value_data BLOB)");
+        }
+
+        // Create counters table for statistics; every role keeps some, such as the saved length of a queue
+        createTable("CREATE TABLE counters_table (" +
+                    "counter_name VARCHAR(255) PRIMARY KEY, " +
+                    "counter_value BIGINT)");
+
+        if (role == null || role == Role.QUEUE) {
+            // Create queue table keyed by the packed crawl order of the URLs
+            createTable("CREATE TABLE queue_table (" +
+                        "key_data BIGINT PRIMARY KEY, " +
+                        "value_data BLOB)");
+        }
+
+        if (role == null || role == Role.FINGERPRINT_DOC_IDS) {
+            // Create fingerprint tables for the seen URLs keyed by URL hash
+            createTable("CREATE TABLE fingerprint_table (" +
+                        "fingerprint BIGINT PRIMARY KEY, " +
+                        "check_hash INT, " +
+                        "docid INT)");
+            createTable("CREATE TABLE collision_table (" +
+                        "key_data VARCHAR(32672) PRIMARY KEY, " +
+                        "docid INT)");
+        }
+    }
+
+    private void createTable(String sql) throws SQLException {
+        try (Statement stmt = currentConnection().createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            // Table might already exist, ignore
+            if (!e.getMessage().contains("already exists")) {
+                throw e;
             }
         }
+    }
 
-        // Create counters table for statistics
-        try (Statement stmt = connection.createStatement()) {
-            try {
-                stmt.execute("CREATE TABLE counters_table (" +
-                           "counter_name VARCHAR(255) PRIMARY KEY, " +
-                           "counter_value BIGINT)");
-            } catch (SQLException e) {
-                // Table might already exist, ignore
-                if (!e.getMessage().contains("already exists")) {
-                    throw e;
+    /**
+     * @return true if the database has the table, whether this or an earlier
+     *         version of the crawler created it.
+     */
+    public boolean hasTable(String table) throws SQLException {
+        try (ResultSet rs = currentConnection().getMetaData()
+                                               .getTables(null, null, table.toUpperCase(Locale.ROOT), null)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * @return the connection of the calling thread, opened on first use.
+     */
+    private ThreadConnection currentThreadConnection() throws SQLException {
+        Thread thread = Thread.currentThread();
+        ThreadConnection threadConnection = connections.get(thread);
+        if (threadConnection == null) {
+            if (closed) {
+                throw new SQLException("Database " + dbName + " is closed");
+            }
+            releaseDeadThreadConnections();
+            threadConnection = new ThreadConnection(DriverManager.getConnection(connectionURL));
+            connections.put(thread, threadConnection);
+        }
+        return threadConnection;
+    }
+
+    private Connection currentConnection() throws SQLException {
+        return currentThreadConnection().connection;
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        statements.increment();
+        return currentThreadConnection().prepare(sql);
+    }
+
+    /**
+     * Crawler threads which died (and were replaced by the monitor) no longer need their connection.
+     */
+    private void releaseDeadThreadConnections() {
+        for (Thread thread : connections.keySet()) {
+            if (!thread.isAlive()) {
+                ThreadConnection threadConnection = connections.remove(thread);
+                if (threadConnection != null) {
+                    threadConnection.close();
                 }
             }
         }
     }
 
+    /**
+     * @return the connections held for threads, including the ones of threads which
+     *         died since another thread last opened a connection.
+     */
+    int getThreadConnectionCount() {
+        return connections.size();
+    }
+
     public DerbyTransaction beginTransaction() {
         if (transactional) {
             return new DerbyTransaction(this);
@@ -106,13 +252,7 @@ public class DerbyDatabase {
     public void put(String key, byte[] value) throws SQLException {
         // First try to update, if no rows affected then insert
         String updateSql = "UPDATE data_table SET value_data = ? WHERE key_data = ?";
-        PreparedStatement updateStmt = preparedStatements.computeIfAbsent(updateSql, k -> {
-            try {
-                return connection.prepareStatement(k);
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to prepare statement", e);
-            }
-        });
+        PreparedStatement updateStmt = prepare(updateSql);
 
         updateStmt.setBytes(1, value);
         updateStmt.setString(2, key);
@@ -121,13 +261,7 @@ public class DerbyDatabase {
         if (rowsAffected == 0) {
             // No rows updated, so insert new record
             String insertSql = "INSERT INTO data_table (key_data, value_data) VALUES (?, ?)";
-            PreparedStatement insertStmt = preparedStatements.computeIfAbsent(insertSql, k -> {
-                try {
-                    return connection.prepareStatement(k);
-                } catch (SQLException e) {
-                    throw new RuntimeException("Failed to prepare statement", e);
-                }
-            });
+            PreparedStatement insertStmt = prepare(insertSql);
 
             insertStmt.setString(1, key);
             insertStmt.setBytes(2, value);
@@ -135,15 +269,57 @@ public class DerbyDatabase {
         }
     }
 
-    public byte[] get(String key) throws SQLException {
-        String sql = "SELECT value_data FROM data_table WHERE key_data = ?";
-        PreparedStatement pstmt = preparedStatements.computeIfAbsent(sql, k -> {
+    /**
+     * Writes all entries with one JDBC batch of plain INSERTs and a single commit.
+     * Callers use this for keys which are expected to be new (freshly assigned
+     * docids, newly scheduled URLs); if any of them already exists the batch
+     * falls back to {@link #put(String, byte[])} for every entry.
+     */
+    public void putAll(List<DerbyCursorEntry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        String insertSql = "INSERT INTO data_table (key_data, value_data) VALUES (?, ?)";
+        PreparedStatement insertStmt = prepare(insertSql);
+
+        Connection connection = currentConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            for (DerbyCursorEntry entry : entries) {
+                insertStmt.setString(1, entry.getKey());
+                insertStmt.setBytes(2, entry.getValue());
+                insertStmt.addBatch();
+            }
             try {
-                return connection.prepareStatement(k);
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to prepare statement", e);
+                insertStmt.executeBatch();
+            } catch (BatchUpdateException e) {
+                // At least one key is already there, so redo the batch as update-or-insert
+                insertStmt.clearBatch();
+                for (DerbyCursorEntry entry : entries) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
             }
-        });
+        }
+    }
+
+    public byte[] get(String key) throws SQLException {
+        String sql = "SELECT value_data FROM data_table WHERE key_data = ?";
+        PreparedStatement pstmt = prepare(sql);
 
         pstmt.setString(1, key);
         try (ResultSet rs = pstmt.executeQuery()) {
@@ -156,13 +332,7 @@ public class DerbyDatabase {
 
     public boolean contains(String key) throws SQLException {
         String sql = "SELECT 1 FROM data_table WHERE key_data = ?";
-        PreparedStatement pstmt = preparedStatements.computeIfAbsent(sql, k -> {
-            try {
-                return connection.prepareStatement(k);
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to prepare statement", e);
-            }
-        });
+        PreparedStatement pstmt = prepare(sql);
 
         pstmt.setString(1, key);
         try (ResultSet rs = pstmt.executeQuery()) {
@@ -172,35 +342,77 @@ public class DerbyDatabase {
 
     public void delete(String key) throws SQLException {
         String sql = "DELETE FROM data_table WHERE key_data = ?";
-        PreparedStatement pstmt = preparedStatements.computeIfAbsent(sql, k -> {
-            try {
-                return connection.prepareStatement(k);
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to prepare statement", e);
-            }
-        });
+        PreparedStatement pstmt = prepare(sql);
 
         pstmt.setString(1, key);
-        pstmt.executeUpdate();
+        deletedRows.add(pstmt.executeUpdate());
     }
 
     public long count() throws SQLException {
-        String sql = "SELECT COUNT(*) FROM data_table";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getLong(1);
-            }
-        }
-        return 0;
+        return countRows("data_table");
     }
 
+    /**
+     * Loads the whole table into memory; prefer {@link #openCursor(int)} for tables of unbounded size.
+     */
     public List<DerbyCursorEntry> getAllEntries() throws SQLException {
         List<DerbyCursorEntry> entries = new ArrayList<>();
-        String sql = "SELECT key_data, value_data FROM data_table ORDER BY key_data";
+        try (DerbyCursor<DerbyCursorEntry> cursor = openCursor(DEFAULT_FETCH_SIZE)) {
+            cursor.forEachRemaining(entries::add);
+        }
+        return entries;
+    }
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    /**
+     * Opens a cursor over all entries in key order which fetches {@code fetchSize} rows at a time.
+     */
+    public DerbyCursor<DerbyCursorEntry> openCursor(int fetchSize) throws SQLException {
+        return openCursor("SELECT key_data, value_data FROM data_table ORDER BY key_data", fetchSize,
+                          rs -> new DerbyCursorEntry(rs.getString(1), rs.getBytes(2)));
+    }
+
+    /**
+     * Opens a cursor over all queue entries in key order which fetches {@code fetchSize} rows at a time.
+     */
+    public DerbyCursor<DerbyQueueEntry> openQueueCursor(int fetchSize) throws SQLException {
+        return openCursor("SELECT key_data, value_data FROM queue_table ORDER BY key_data", fetchSize,
+                          rs -> new DerbyQueueEntry(rs.getLong(1), rs.getBytes(2)));
+    }
+
+    /**
+     * Opens a cursor over all counters, with their values encoded as in {@link #getAllCounters()}.
+     */
+    public DerbyCursor<DerbyCursorEntry> openCounterCursor() throws SQLException {
+        return openCursor("SELECT counter_name, counter_value FROM counters_table", DEFAULT_FETCH_SIZE,
+                          rs -> new DerbyCursorEntry(rs.getString(1), Util.long2ByteArray(rs.getLong(2))));
+    }
+
+    private <T> DerbyCursor<T> openCursor(String sql, int fetchSize, DerbyCursor.RowMapper<T> mapper)
+        throws SQLException {
+        if (closed) {
+            throw new SQLException("Database " + dbName + " is closed");
+        }
+        DerbyCursor<T> cursor = new DerbyCursor<>(DriverManager.getConnection(connectionURL), sql, fetchSize,
+                                                  mapper, openCursors::remove);
+        openCursors.add(cursor);
+        return cursor;
+    }
+
+    /**
+     * Returns the first {@code max} entries in key order. The primary key index
+     * is walked and the scan stops after {@code max} rows, so the cost depends
+     * on the batch size rather than on the size of the table.
+     */
+    public List<DerbyCursorEntry> getFirstNEntries(int max) throws SQLException {
+        List<DerbyCursorEntry> entries = new ArrayList<>(max);
+        if (max <= 0) {
+            return entries;
+        }
+        String sql = "SELECT key_data, value_data FROM data_table ORDER BY key_data FETCH FIRST ? ROWS ONLY";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setInt(1, max);
+        try (ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
                 String key = rs.getString("key_data");
                 byte[] value = rs.getBytes("value_data");
@@ -210,41 +422,485 @@ public class DerbyDatabase {
         return entries;
     }
 
-    public List<DerbyCursorEntry> getFirstNEntries(int max) throws SQLException {
-        List<DerbyCursorEntry> entries = new ArrayList<>();
-        String sql = "SELECT key_data, value_data FROM data_table ORDER BY key_data";
+    /**
+     * Returns the key of the {@code count}-th entry in key order, or the last key
+     * if the table holds fewer entries; null if the table is empty.
+     */
+    private String getNthKey(int count) throws SQLException {
+        String sql = "SELECT key_data FROM data_table ORDER BY key_data FETCH FIRST ? ROWS ONLY";
+        PreparedStatement pstmt = prepare(sql);
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            int count = 0;
-            while (rs.next() && count < max) {
-                String key = rs.getString("key_data");
-                byte[] value = rs.getBytes("value_data");
-                entries.add(new DerbyCursorEntry(key, value));
-                count++;
+        pstmt.setInt(1, count);
+        String lastKey = null;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                lastKey = rs.getString(1);
             }
         }
-        return entries;
+        return lastKey;
     }
 
     public void deleteFirstNEntries(int count) throws SQLException {
-        // Get the first N entries to delete
-        List<DerbyCursorEntry> entries = getFirstNEntries(count);
-        for (DerbyCursorEntry entry : entries) {
-            delete(entry.getKey());
+        if (count <= 0) {
+            return;
+        }
+        String lastKey = getNthKey(count);
+        if (lastKey != null) {
+            deleteUpTo(lastKey);
+        }
+    }
+
+    /**
+     * Deletes every entry whose key is lower than or equal to {@code lastKey}
+     * with a single range delete on the primary key index.
+     *
+     * @return the number of deleted entries
+     */
+    public int deleteUpTo(String lastKey) throws SQLException {
+        String sql = "DELETE FROM data_table WHERE key_data <= ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setString(1, lastKey);
+        return countDeleted(pstmt.executeUpdate());
+    }
+
+    /**
+     * Removes and returns the first {@code max} entries in key order: one bounded
+     * index scan followed by one range delete.
+     */
+    public List<DerbyCursorEntry> pollFirstNEntries(int max) throws SQLException {
+        List<DerbyCursorEntry> entries = getFirstNEntries(max);
+        if (!entries.isEmpty()) {
+            deleteUpTo(entries.get(entries.size() - 1).getKey());
+        }
+        return entries;
+    }
+
+    public void putQueueEntry(long key, byte[] value) throws SQLException {
+        String updateSql = "UPDATE queue_table SET value_data = ? WHERE key_data = ?";
+        PreparedStatement updateStmt = prepare(updateSql);
+
+        updateStmt.setBytes(1, value);
+        updateStmt.setLong(2, key);
+        if (updateStmt.executeUpdate() == 0) {
+            String insertSql = "INSERT INTO queue_table (key_data, value_data) VALUES (?, ?)";
+            PreparedStatement insertStmt = prepare(insertSql);
+
+            insertStmt.setLong(1, key);
+            insertStmt.setBytes(2, value);
+            adjustQueueLength(insertStmt.executeUpdate());
+        }
+    }
+
+    /**
+     * Writes all queue entries with one JDBC batch of plain INSERTs and a single
+     * commit, falling back to {@link #putQueueEntry(long, byte[])} for every entry
+     * if any of the keys already exists.
+     */
+    public void putQueueEntries(List<DerbyQueueEntry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        String insertSql = "INSERT INTO queue_table (key_data, value_data) VALUES (?, ?)";
+        PreparedStatement insertStmt = prepare(insertSql);
+
+        Connection connection = currentConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            for (DerbyQueueEntry entry : entries) {
+                insertStmt.setLong(1, entry.getKey());
+                insertStmt.setBytes(2, entry.getValue());
+                insertStmt.addBatch();
+            }
+            try {
+                adjustQueueLength(sum(insertStmt.executeBatch()));
+            } catch (BatchUpdateException e) {
+                // At least one key is already there, so redo the batch as update-or-insert
+                adjustQueueLength(sum(e.getUpdateCounts()));
+                insertStmt.clearBatch();
+                for (DerbyQueueEntry entry : entries) {
+                    putQueueEntry(entry.getKey(), entry.getValue());
+                }
+            }
+            if (autoCommit) {
+                connection.commit();
+                commitQueueLength();
+            }
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+                rollbackQueueLength();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the first {@code max} queue entries in key order, read straight off
+     * the primary key index.
+     */
+    public List<DerbyQueueEntry> getFirstQueueEntries(int max) throws SQLException {
+        List<DerbyQueueEntry> entries = new ArrayList<>(max);
+        if (max <= 0) {
+            return entries;
+        }
+        String sql = "SELECT key_data, value_data FROM queue_table ORDER BY key_data FETCH FIRST ? ROWS ONLY";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setInt(1, max);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                entries.add(new DerbyQueueEntry(rs.getLong("key_data"), rs.getBytes("value_data")));
+            }
+        }
+        return entries;
+    }
+
+    public void deleteFirstQueueEntries(int count) throws SQLException {
+        if (count <= 0) {
+            return;
+        }
+        deleteQueueEntries(getFirstQueueEntries(count));
+    }
+
+    /**
+     * Deletes every queue entry whose key is lower than or equal to {@code lastKey}
+     * with a single range delete on the primary key index. Entries inserted below
+     * {@code lastKey} by another thread meanwhile are deleted as well, so this is
+     * only safe while nothing else writes to the queue.
+     *
+     * @return the number of deleted entries
+     */
+    public int deleteQueueEntriesUpTo(long lastKey) throws SQLException {
+        String sql = "DELETE FROM queue_table WHERE key_data <= ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setLong(1, lastKey);
+        return countDeletedQueueEntries(pstmt.executeUpdate());
+    }
+
+    /**
+     * Removes and returns the first {@code max} queue entries in key order: one
+     * bounded index scan followed by one batch of deletes of exactly the keys it
+     * read. A range delete up to the last key would also take entries which
+     * another thread inserted between the two statements, without returning them.
+     */
+    public List<DerbyQueueEntry> pollFirstQueueEntries(int max) throws SQLException {
+        return deleteQueueEntries(getFirstQueueEntries(max));
+    }
+
+    /**
+     * Deletes the keys of the given entries with one JDBC batch and a single commit.
+     *
+     * @return the entries which were actually deleted, leaving out those that another
+     *         thread deleted first.
+     */
+    private List<DerbyQueueEntry> deleteQueueEntries(List<DerbyQueueEntry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return entries;
+        }
+        String sql = "DELETE FROM queue_table WHERE key_data = ?";
+        PreparedStatement deleteStmt = prepare(sql);
+
+        Connection connection = currentConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            for (DerbyQueueEntry entry : entries) {
+                deleteStmt.setLong(1, entry.getKey());
+                deleteStmt.addBatch();
+            }
+            int[] updateCounts = deleteStmt.executeBatch();
+            List<DerbyQueueEntry> deleted = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                if (updateCounts[i] != 0) {
+                    deleted.add(entries.get(i));
+                }
+            }
+            countDeletedQueueEntries(deleted.size());
+            if (autoCommit) {
+                connection.commit();
+                commitQueueLength();
+            }
+            return deleted;
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+                rollbackQueueLength();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
         }
     }
 
+    /**
+     * Deletes the entries with the given keys with one JDBC batch and a single commit.
+     *
+     * @return the number of entries which were deleted
+     */
+    public int deleteQueueKeys(List<Long> keys) throws SQLException {
+        List<DerbyQueueEntry> entries = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            entries.add(new DerbyQueueEntry(key, null));
+        }
+        return deleteQueueEntries(entries).size();
+    }
+
+    /**
+     * @return true if there was an entry with the key.
+     */
+    public boolean deleteQueueEntry(long key) throws SQLException {
+        String sql = "DELETE FROM queue_table WHERE key_data = ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setLong(1, key);
+        return countDeletedQueueEntries(pstmt.executeUpdate()) > 0;
+    }
+
+    /**
+     * Deletes all queue entries.
+     *
+     * @return the number of deleted entries
+     */
+    public int deleteAllQueueEntries() throws SQLException {
+        String sql = "DELETE FROM queue_table";
+        PreparedStatement pstmt = prepare(sql);
+
+        return countDeletedQueueEntries(pstmt.executeUpdate());
+    }
+
+    /**
+     * @return the number of committed queue entries, without touching the table:
+     *         the length is maintained by the statements which change it.
+     */
+    public long countQueueEntries() {
+        return queueLength.get();
+    }
+
+    /**
+     * Takes the queue length saved by the last {@link #close()}, or counts the rows
+     * if there is none (a new database, or one left behind by a crash).
+     */
+    private void loadQueueLength() throws SQLException {
+        String sql = "SELECT counter_value FROM counters_table WHERE counter_name = ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setString(1, QUEUE_LENGTH_COUNTER);
+        Long saved = null;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                saved = rs.getLong(1);
+            }
+        }
+        if (saved == null) {
+            queueLength.set(countRows("queue_table"));
+            return;
+        }
+        queueLength.set(saved);
+        PreparedStatement deleteStmt = prepare("DELETE FROM counters_table WHERE counter_name = ?");
+        deleteStmt.setString(1, QUEUE_LENGTH_COUNTER);
+        deleteStmt.executeUpdate();
+    }
+
+    private int countDeletedQueueEntries(int rows) throws SQLException {
+        adjustQueueLength(-rows);
+        return countDeleted(rows);
+    }
+
+    /**
+     * Applies a change of the queue table to its length right away, or when the
+     * transaction of the calling thread commits.
+     */
+    private void adjustQueueLength(long delta) throws SQLException {
+        ThreadConnection threadConnection = currentThreadConnection();
+        if (threadConnection.connection.getAutoCommit()) {
+            queueLength.addAndGet(delta);
+        } else {
+            threadConnection.pendingQueueLengthDelta += delta;
+        }
+    }
+
+    private void commitQueueLength() throws SQLException {
+        ThreadConnection threadConnection = currentThreadConnection();
+        queueLength.addAndGet(threadConnection.pendingQueueLengthDelta);
+        threadConnection.pendingQueueLengthDelta = 0;
+    }
+
+    private void rollbackQueueLength() throws SQLException {
+        currentThreadConnection().pendingQueueLengthDelta = 0;
+    }
+
+    private static long sum(int[] updateCounts) {
+        long sum = 0;
+        for (int count : updateCounts) {
+            if (count > 0) {
+                sum += count;
+            }
+        }
+        return sum;
+    }
+
+    public FingerprintEntry getFingerprint(long fingerprint) throws SQLException {
+        String sql = "SELECT check_hash, docid FROM fingerprint_table WHERE fingerprint = ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setLong(1, fingerprint);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                return new FingerprintEntry(fingerprint, rs.getInt("check_hash"), rs.getInt("docid"));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return false if the fingerprint is already in the table, in which case nothing is written.
+     */
+    public boolean insertFingerprint(FingerprintEntry entry) throws SQLException {
+        String sql = "INSERT INTO fingerprint_table (fingerprint, check_hash, docid) VALUES (?, ?, ?)";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setLong(1, entry.getFingerprint());
+        pstmt.setInt(2, entry.getCheckHash());
+        pstmt.setInt(3, entry.getDocId());
+        try {
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            if (DUPLICATE_KEY_STATE.equals(e.getSQLState())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    public void updateFingerprint(FingerprintEntry entry) throws SQLException {
+        String sql = "UPDATE fingerprint_table SET check_hash = ?, docid = ? WHERE fingerprint = ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setInt(1, entry.getCheckHash());
+        pstmt.setInt(2, entry.getDocId());
+        pstmt.setLong(3, entry.getFingerprint());
+        pstmt.executeUpdate();
+    }
+
+    /**
+     * Inserts all fingerprints with one JDBC batch and a single commit.
+     *
+     * @return false if at least one fingerprint was already in the table. The
+     *         other entries may or may not have been written; callers redo them one by one.
+     */
+    public boolean insertFingerprints(List<FingerprintEntry> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        String sql = "INSERT INTO fingerprint_table (fingerprint, check_hash, docid) VALUES (?, ?, ?)";
+        PreparedStatement insertStmt = prepare(sql);
+
+        Connection connection = currentConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            for (FingerprintEntry entry : entries) {
+                insertStmt.setLong(1, entry.getFingerprint());
+                insertStmt.setInt(2, entry.getCheckHash());
+                insertStmt.setInt(3, entry.getDocId());
+                insertStmt.addBatch();
+            }
+            boolean inserted = true;
+            try {
+                insertStmt.executeBatch();
+            } catch (BatchUpdateException e) {
+                if (!DUPLICATE_KEY_STATE.equals(e.getSQLState())) {
+                    throw e;
+                }
+                insertStmt.clearBatch();
+                inserted = false;
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+            return inserted;
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * @return the docid stored for a key whose fingerprint collides with another key, or -1.
+     */
+    public int getCollision(String key) throws SQLException {
+        String sql = "SELECT docid FROM collision_table WHERE key_data = ?";
+        PreparedStatement pstmt = prepare(sql);
+
+        pstmt.setString(1, key);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getInt("docid");
+            }
+        }
+        return -1;
+    }
+
+    public void putCollision(String key, int docId) throws SQLException {
+        String updateSql = "UPDATE collision_table SET docid = ? WHERE key_data = ?";
+        PreparedStatement updateStmt = prepare(updateSql);
+
+        updateStmt.setInt(1, docId);
+        updateStmt.setString(2, key);
+        if (updateStmt.executeUpdate() == 0) {
+            String insertSql = "INSERT INTO collision_table (key_data, docid) VALUES (?, ?)";
+            PreparedStatement insertStmt = prepare(insertSql);
+
+            insertStmt.setString(1, key);
+            insertStmt.setInt(2, docId);
+            insertStmt.executeUpdate();
+        }
+    }
+
+    public long countFingerprints() throws SQLException {
+        return countRows("fingerprint_table");
+    }
+
+    public long countCollisions() throws SQLException {
+        return countRows("collision_table");
+    }
+
+    private long countRows(String table) throws SQLException {
+        try (Statement stmt = currentConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+        }
+        return 0;
+    }
+
     public void setCounter(String name, long value) throws SQLException {
         // First try to update, if no rows affected then insert
         String updateSql = "UPDATE counters_table SET counter_value = ? WHERE counter_name = ?";
-        PreparedStatement updateStmt = preparedStatements.computeIfAbsent(updateSql, k -> {
-            try {
-                return connection.prepareStatement(k);
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to prepare statement", e);
-            }
-        });
+        PreparedStatement updateStmt = prepare(updateSql);
 
         updateStmt.setLong(1, value);
         updateStmt.setString(2, name);
@@ -253,13 +909,7 @@ public class DerbyDatabase {
         if (rowsAffected == 0) {
             // No rows updated, so insert new record
             String insertSql = "INSERT INTO counters_table (counter_name, counter_value) VALUES (?, ?)";
-            PreparedStatement insertStmt = preparedStatements.computeIfAbsent(insertSql, k -> {
-                try {
-                    return connection.prepareStatement(k);
-                } catch (SQLException e) {
-                    throw new RuntimeException("Failed to prepare statement", e);
-                }
-            });
+            PreparedStatement insertStmt = prepare(insertSql);
 
             insertStmt.setString(1, name);
             insertStmt.setLong(2, value);
@@ -269,13 +919,7 @@ public class DerbyDatabase {
 
     public long getCounter(String name) throws SQLException {
         String sql = "SELECT counter_value FROM counters_table WHERE counter_name = ?";
-        PreparedStatement pstmt = preparedStatements.computeIfAbsent(sql, k -> {
-            try {
-                return connection.prepareStatement(k);
-            } catch (SQLException e) {
-                throw new RuntimeException("Failed to prepare statement", e);
-            }
-        });
+        PreparedStatement pstmt = prepare(sql);
 
         pstmt.setString(1, name);
         try (ResultSet rs = pstmt.executeQuery()) {
@@ -288,31 +932,126 @@ public class DerbyDatabase {
 
     public List<DerbyCursorEntry> getAllCounters() throws SQLException {
         List<DerbyCursorEntry> entries = new ArrayList<>();
-        String sql = "SELECT counter_name, counter_value FROM counters_table";
+        try (DerbyCursor<DerbyCursorEntry> cursor = openCounterCursor()) {
+            cursor.forEachRemaining(entries::add);
+        }
+        return entries;
+    }
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                String key = rs.getString("counter_name");
-                long value = rs.getLong("counter_value");
-                // Convert long to byte array
-                byte[] valueBytes = new byte[8];
-                for (int i = 0; i < 8; i++) {
-                    valueBytes[i] = (byte) (value >> (8 * i));
+    private int countDeleted(int rows) {
+        deletedRows.add(rows);
+        return rows;
+    }
+
+    /**
+     * @return the rows deleted since the tables were last compressed.
+     */
+    public long getDeletedRowsSinceCompression() {
+        return deletedRows.sum();
+    }
+
+    /**
+     * @return the statements run against this database so far; it did not change
+     *         between two calls if the database was idle in the meantime.
+     */
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    /**
+     * Compresses the queue and data tables in place with
+     * {@code SYSCS_UTIL.SYSCS_INPLACE_COMPRESS_TABLE}: deleted rows are purged,
+     * the remaining ones are moved to the front of the table and the free pages
+     * at the end are handed back to the file system. Unlike
+     * {@code SYSCS_COMPRESS_TABLE} the tables are not copied, so crawler threads
+     * can keep reading and writing while this runs, at worst waiting for a lock.
+     *
+     * @return the number of bytes the database files shrunk by.
+     */
+    public long compressInPlace() throws SQLException {
+        long deletedBefore = deletedRows.sum();
+        long sizeBefore = getSize();
+        String schema;
+        try (ResultSet rs = prepare("VALUES CURRENT SCHEMA").executeQuery()) {
+            rs.next();
+            schema = rs.getString(1);
+        }
+        try (CallableStatement call = currentConnection().prepareCall(
+            "CALL SYSCS_UTIL.SYSCS_INPLACE_COMPRESS_TABLE(?, ?, 1, 1, 1)")) {
+            for (String table : COMPRESSED_TABLES) {
+                if (!hasTable(table)) {
+                    continue;
                 }
-                entries.add(new DerbyCursorEntry(key, valueBytes));
+                call.setString(1, schema);
+                call.setString(2, table);
+                call.execute();
             }
         }
-        return entries;
+        // Rows deleted while compressing may not have been purged, so only the ones seen before are forgotten
+        deletedRows.add(-deletedBefore);
+        return Math.max(0, sizeBefore - getSize());
+    }
+
+    /**
+     * @return the size in bytes of the files of the tables and indexes of this database.
+     */
+    public long getSize() {
+        File[] files = new File(new File(dbPath, dbName), "seg0").listFiles();
+        long size = 0;
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
     }
 
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        if (!closed && hasQueue) {
+            try {
+                setCounter(QUEUE_LENGTH_COUNTER, queueLength.get());
+            } catch (SQLException e) {
+                // The rows are counted again on the next open
+                logger.warn("Failed to save the queue length of {}: {}", dbName, e.getMessage());
+            }
+        }
+        closed = true;
+        for (DerbyCursor<?> cursor : openCursors) {
+            cursor.close();
+        }
+        for (ThreadConnection threadConnection : connections.values()) {
+            threadConnection.close();
+        }
+        connections.clear();
+    }
+
+    private static class ThreadConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+        /** Change of the queue length made by the open transaction of this connection */
+        private long pendingQueueLengthDelta;
+
+        ThreadConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement pstmt = preparedStatements.get(sql);
+            if (pstmt == null) {
+                pstmt = connection.prepareStatement(sql);
+                preparedStatements.put(sql, pstmt);
+            }
+            return pstmt;
+        }
+
+        void close() {
+            try {
+                if (!connection.isClosed()) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                logger.error("Error closing Derby database", e);
             }
-        } catch (SQLException e) {
-            logger.error("Error closing Derby database", e);
         }
     }
 
@@ -334,6 +1073,57 @@ public class DerbyDatabase {
         }
     }
 
+    public static class DerbyQueueEntry {
+        private final long key;
+        private final byte[] value;
+
+        public DerbyQueueEntry(long key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * A row of the fingerprint table: the 64-bit hash of a key, a further 32 bits
+     * of the hash to tell colliding keys apart, and the docid.
+     */
+    public static class FingerprintEntry {
+        private final long fingerprint;
+        private final int checkHash;
+        private final int docId;
+
+        public FingerprintEntry(long fingerprint, int checkHash, int docId) {
+            this.fingerprint = fingerprint;
+            this.checkHash = checkHash;
+            this.docId = docId;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public int getCheckHash() {
+            return checkHash;
+        }
+
+        public int getDocId() {
+            return docId;
+        }
+    }
+
+    /**
+     * A transaction on the connection of the thread that begins it. Only the
+     * statements issued by that thread take part in it, so it has to be
+     * committed or rolled back by the same thread.
+     */
     public static class DerbyTransaction {
         private final DerbyDatabase db;
         private final Connection transactionConnection;
@@ -343,7 +1133,7 @@ public class DerbyDatabase {
         public DerbyTransaction(DerbyDatabase db) {
             this.db = db;
             try {
-                this.transactionConnection = db.connection;
+                this.transactionConnection = db.currentConnection();
                 transactionConnection.setAutoCommit(false);
             } catch (SQLException e) {
                 throw new RuntimeException("Failed to begin transaction", e);
@@ -355,6 +1145,7 @@ public class DerbyDatabase {
                 try {
                     transactionConnection.commit();
                     transactionConnection.setAutoCommit(true);
+                    db.commitQueueLength();
                     committed = true;
                 } catch (SQLException e) {
                     throw new RuntimeException("Failed to commit transaction", e);
@@ -367,6 +1158,7 @@ public class DerbyDatabase {
                 try {
                     transactionConnection.rollback();
                     transactionConnection.setAutoCommit(true);
+                    db.rollbackQueueLength();
                     rolledBack = true;
                 } catch (SQLException e) {
                     throw new RuntimeException("Failed to rollback transaction", e);
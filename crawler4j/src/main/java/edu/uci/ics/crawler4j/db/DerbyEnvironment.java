@@ -3,8 +3,12 @@ package edu.uci.ics.crawler4j.db;
 import java.io.File;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +25,13 @@ public class DerbyEnvironment {
     private final long lockTimeout;
     private final ConcurrentHashMap<String, DerbyDatabase> databases = new ConcurrentHashMap<>();
 
+    private ScheduledExecutorService maintenance;
+    /** Statement count of each database when maintenance last looked at it */
+    private final Map<String, Long> lastStatementCounts = new ConcurrentHashMap<>();
+    private final AtomicLong compressions = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong compressionMillis = new AtomicLong();
+
     public DerbyEnvironment(File envHome, DerbyEnvironmentConfig config) {
         this.envHome = envHome.getAbsolutePath();
         this.transactional = config.isTransactional();
@@ -40,11 +51,98 @@ public class DerbyEnvironment {
 
     public DerbyDatabase openDatabase(String databaseName, DerbyDatabaseConfig config) {
         return databases.computeIfAbsent(databaseName, name -> {
-            return new DerbyDatabase(envHome, name, config.isTransactional(), config.isResumable());
+            return new DerbyDatabase(envHome, name, config.isTransactional(), config.isResumable(), config.getRole());
+        });
+    }
+
+    /**
+     * Starts a background task which, every {@code intervalMillis}, compresses the
+     * tables of each database in place (see {@link DerbyDatabase#compressInPlace()})
+     * once {@code churnThreshold} rows were deleted from it since its last
+     * compression, or sooner if the database had deletes but was idle since the
+     * previous check. Long crawls move every URL through the queue tables, which
+     * otherwise only grow.
+     */
+    public synchronized void startMaintenance(long intervalMillis, long churnThreshold) {
+        if (maintenance != null) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Derby maintenance");
+            thread.setDaemon(true);
+            return thread;
         });
+        maintenance.scheduleWithFixedDelay(() -> runMaintenance(churnThreshold), intervalMillis, intervalMillis,
+                                           TimeUnit.MILLISECONDS);
+    }
+
+    private void runMaintenance(long churnThreshold) {
+        for (Map.Entry<String, DerbyDatabase> entry : databases.entrySet()) {
+            DerbyDatabase db = entry.getValue();
+            long statements = db.getStatementCount();
+            Long lastStatements = lastStatementCounts.put(entry.getKey(), statements);
+            boolean idle = lastStatements != null && lastStatements == statements;
+            long churn = db.getDeletedRowsSinceCompression();
+            if (churn >= churnThreshold || (idle && churn > 0)) {
+                compress(entry.getKey(), db, churn);
+                lastStatementCounts.put(entry.getKey(), db.getStatementCount());
+            }
+        }
+    }
+
+    private void compress(String name, DerbyDatabase db, long churn) {
+        long start = System.currentTimeMillis();
+        try {
+            long reclaimed = db.compressInPlace();
+            long millis = System.currentTimeMillis() - start;
+            compressions.incrementAndGet();
+            reclaimedBytes.addAndGet(reclaimed);
+            compressionMillis.addAndGet(millis);
+            logger.info("Compressed {} after {} deleted rows in {} ms, reclaimed {} bytes", name, churn, millis,
+                        reclaimed);
+        } catch (Exception e) {
+            // Crawling goes on with the uncompressed tables, the next run tries again
+            logger.warn("Failed to compress {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of in place compressions run by the maintenance task.
+     */
+    public long getCompressionCount() {
+        return compressions.get();
+    }
+
+    /**
+     * @return the bytes the database files shrunk by through the maintenance task.
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    /**
+     * @return the milliseconds the maintenance task spent compressing.
+     */
+    public long getCompressionMillis() {
+        return compressionMillis.get();
     }
 
     public void close() {
+        synchronized (this) {
+            if (maintenance != null) {
+                maintenance.shutdown();
+                try {
+                    // A compression in progress has to finish before its database is closed
+                    maintenance.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                maintenance = null;
+                logger.info("Derby maintenance ran {} compressions in {} ms, reclaimed {} bytes",
+                            compressions.get(), compressionMillis.get(), reclaimedBytes.get());
+            }
+        }
+
         // Close all databases
         for (DerbyDatabase db : databases.values()) {
             db.close();
@@ -106,6 +204,7 @@ public class DerbyEnvironment {
         private boolean transactional = false;
         private boolean resumable = false;
         private boolean deferredWrite = true;
+        private DerbyDatabase.Role role = null;
 
         public boolean isAllowCreate() {
             return allowCreate;
@@ -138,5 +237,16 @@ public class DerbyEnvironment {
         public void setDeferredWrite(boolean deferredWrite) {
             this.deferredWrite = deferredWrite;
         }
+
+        public DerbyDatabase.Role getRole() {
+            return role;
+        }
+
+        /**
+         * Creates only the tables needed for the given role; without one the database gets all of them.
+         */
+        public void setRole(DerbyDatabase.Role role) {
+            this.role = role;
+        }
     }
 }
@@ -0,0 +1,817 @@
+package edu.uci.ics.crawler4j.db;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log-structured key-value database, an alternative to {@link DerbyDatabase} for
+ * the frontier without an SQL layer.
+ *
+ * Every change is appended to a single log file as a checksummed record. An
+ * ordered in-memory index maps each live key to the position of its value in the
+ * log, so a lookup is one index probe plus one positional read, and the index
+ * itself is the ordered cursor over the keys. On open the log is scanned once,
+ * sequentially, to rebuild the index; a record torn by a crash is cut off. Once
+ * more than half of a large log is overwritten or deleted records, a background
+ * thread copies the live records to a new log which replaces the old one; writers
+ * only wait for the records written during the copy and the switch of the files.
+ *
+ * Like {@link DerbyDatabase} there are three key spaces: string keys with binary
+ * values, the queue with BIGINT keys and the counters. Writes reach the operating
+ * system when the method returns and the disk on {@link #sync()} and {@link #close()}.
+ */
+public class LogDatabase {
+    private static final Logger logger = LoggerFactory.getLogger(LogDatabase.class);
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final byte DATA = 1;
+    private static final byte QUEUE = 2;
+    private static final byte COUNTER = 3;
+
+    /** Body length and checksum */
+    private static final int RECORD_HEADER = 8;
+    private static final long COMPACTION_MIN_BYTES = 64L * 1024 * 1024;
+    private static final int COMPACTION_BATCH_BYTES = 1024 * 1024;
+
+    /** Value positions are packed with their length into one long: 40 bits offset, 24 bits length */
+    private static final int LENGTH_BITS = 24;
+    private static final int MAX_VALUE_LENGTH = (1 << LENGTH_BITS) - 1;
+
+    private final File file;
+    private final long compactionMinBytes;
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+    /** The thread compacting the log, or null. Guarded by the write lock */
+    private Thread compactor;
+    /** Increased by every compaction, which moves all values */
+    private volatile int generation;
+
+    private volatile ConcurrentSkipListMap<String, Long> data = new ConcurrentSkipListMap<>();
+    private volatile ConcurrentSkipListMap<Long, Long> queue = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Long> counters = new ConcurrentHashMap<>();
+
+    /** Readers share the log, writers and the compaction own it */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean closed = false;
+
+    public LogDatabase(File file) {
+        this(file, COMPACTION_MIN_BYTES);
+    }
+
+    /**
+     * @param compactionMinBytes the size below which the log is never compacted.
+     */
+    LogDatabase(File file, long compactionMinBytes) {
+        this.file = file;
+        this.compactionMinBytes = compactionMinBytes;
+        try {
+            recover();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+            if (channel.size() > size) {
+                logger.warn("Cutting off {} bytes of an incomplete record at the end of {}",
+                            channel.size() - size, file);
+                channel.truncate(size);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open log database " + file, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long records = 0;
+        long fileLength = file.length();
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file), 1024 * 1024))) {
+            while (true) {
+                int bodyLength;
+                try {
+                    bodyLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (bodyLength < 2 || size + RECORD_HEADER + bodyLength > fileLength) {
+                    break;
+                }
+                int checksum = in.readInt();
+                byte[] body = new byte[bodyLength];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body, 0, body.length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(Record.decode(body), size);
+                size += RECORD_HEADER + bodyLength;
+                records++;
+            }
+        }
+        logger.info("Read {} records ({} bytes, {} live) of {} in {} ms", records, size, liveBytes,
+                    file.getName(), System.currentTimeMillis() - start);
+    }
+
+    private static long pack(long offset, int length) {
+        return (offset << LENGTH_BITS) | length;
+    }
+
+    private static long offsetOf(long location) {
+        return location >>> LENGTH_BITS;
+    }
+
+    private static int lengthOf(long location) {
+        return (int) (location & MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * Updates the index for a record written at {@code position}.
+     */
+    private void apply(Record record, long position) {
+        long location = record.op == PUT ? pack(position + record.valueOffset(), record.value.length) : 0;
+        Long old;
+        switch (record.space) {
+            case DATA:
+                old = record.op == PUT ? data.put(record.key, location) : data.remove(record.key);
+                break;
+            case QUEUE:
+                old = record.op == PUT ? queue.put(record.queueKey, location) : queue.remove(record.queueKey);
+                break;
+            default:
+                Long oldValue = record.op == PUT ? counters.put(record.key, toLong(record.value)) :
+                                counters.remove(record.key);
+                old = oldValue == null ? null : pack(0, Long.BYTES);
+                break;
+        }
+        if (record.op == PUT) {
+            liveBytes += record.size();
+        }
+        if (old != null) {
+            liveBytes -= record.size() - (record.op == PUT ? record.value.length : 0) + lengthOf(old);
+        }
+    }
+
+    private void write(List<Record> records) throws IOException {
+        if (closed) {
+            throw new IOException("Log database " + file.getName() + " is closed");
+        }
+        ByteBuffer buffer = encode(records);
+        long position = size;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        for (Record record : records) {
+            apply(record, position);
+            position += record.size();
+        }
+        size = position;
+        if (compactor == null && size > compactionMinBytes && size - liveBytes > liveBytes) {
+            compactor = new Thread(this::compact, "Log database compaction " + file.getName());
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    private static ByteBuffer encode(List<Record> records) {
+        int total = 0;
+        for (Record record : records) {
+            total += record.size();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (Record record : records) {
+            int start = buffer.position();
+            buffer.putInt(record.size() - RECORD_HEADER);
+            buffer.putInt(0);
+            record.encodeBody(buffer);
+            crc.reset();
+            crc.update(buffer.array(), start + RECORD_HEADER, record.size() - RECORD_HEADER);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private byte[] read(long location) throws IOException {
+        return read(channel, location);
+    }
+
+    private byte[] read(FileChannel source, long location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lengthOf(location));
+        readFully(source, buffer, offsetOf(location));
+        return buffer.array();
+    }
+
+    private void readFully(FileChannel source, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Read beyond the end of " + file);
+            }
+        }
+    }
+
+    /**
+     * Copies the live records to a new log which then replaces the current one. Runs
+     * on its own thread. The values the index points to below the size of the log at
+     * the start are copied without a lock, as the log is only appended to; the
+     * records written after that are copied over in order, so they redo the changes
+     * made meanwhile. Only the last of those records and the switch of the files are
+     * copied under the write lock.
+     */
+    private void compact() {
+        long start = System.currentTimeMillis();
+        File compactedFile = new File(file.getPath() + ".compact");
+        boolean replaced = false;
+        try (FileChannel out = FileChannel.open(compactedFile.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            FileChannel source;
+            long copiedSize;
+            lock.readLock().lock();
+            try {
+                source = channel;
+                copiedSize = size;
+            } finally {
+                lock.readLock().unlock();
+            }
+            Compaction compaction = new Compaction(out);
+            for (Map.Entry<String, Long> entry : data.entrySet()) {
+                if (offsetOf(entry.getValue()) < copiedSize) {
+                    compaction.add(Record.put(DATA, entry.getKey(), 0, read(source, entry.getValue())));
+                }
+            }
+            for (Map.Entry<Long, Long> entry : queue.entrySet()) {
+                if (offsetOf(entry.getValue()) < copiedSize) {
+                    compaction.add(Record.put(QUEUE, null, entry.getKey(), read(source, entry.getValue())));
+                }
+            }
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                compaction.add(Record.put(COUNTER, entry.getKey(), 0, toBytes(entry.getValue())));
+            }
+            lock.readLock().lock();
+            long writtenSize;
+            try {
+                writtenSize = size;
+            } finally {
+                lock.readLock().unlock();
+            }
+            copiedSize = copyRecords(source, compaction, copiedSize, writtenSize);
+
+            lock.writeLock().lock();
+            try {
+                long pausedAt = System.currentTimeMillis();
+                long oldSize = size;
+                copyRecords(source, compaction, copiedSize, size);
+                compaction.flush();
+                out.force(true);
+                out.close();
+                replace(compactedFile);
+                data = compaction.data;
+                queue = compaction.queue;
+                size = compaction.position;
+                liveBytes = compaction.position;
+                generation++;
+                replaced = true;
+                logger.info("Compacted {} from {} to {} bytes in {} ms, writes waited for {} ms", file.getName(),
+                            oldSize, size, System.currentTimeMillis() - start,
+                            System.currentTimeMillis() - pausedAt);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to compact log database " + file.getName(), e);
+        } finally {
+            if (!replaced && compactedFile.exists() && !compactedFile.delete()) {
+                logger.warn("Could not delete {}", compactedFile);
+            }
+            lock.writeLock().lock();
+            try {
+                compactor = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies the records of the log between two positions to a compaction.
+     *
+     * @return the position after the last copied record
+     */
+    private long copyRecords(FileChannel source, Compaction compaction, long from, long to) throws IOException {
+        long position = from;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (position < to) {
+            header.clear();
+            readFully(source, header, position);
+            ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+            readFully(source, body, position + RECORD_HEADER);
+            compaction.add(Record.decode(body.array()));
+            position += RECORD_HEADER + body.capacity();
+        }
+        return position;
+    }
+
+    /**
+     * Moves the compacted log over the current one, with the write lock held. If the
+     * move fails the current log is opened again and stays in use.
+     */
+    private void replace(File compactedFile) throws IOException {
+        channel.close();
+        try {
+            Files.move(compactedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            throw e;
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes records to the new log of a compaction in batches and indexes them.
+     */
+    private static final class Compaction {
+        private final FileChannel out;
+        private final ConcurrentSkipListMap<String, Long> data = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<Long, Long> queue = new ConcurrentSkipListMap<>();
+        private final List<Record> batch = new ArrayList<>();
+        private int batchBytes;
+        private long position;
+
+        Compaction(FileChannel out) {
+            this.out = out;
+        }
+
+        void add(Record record) throws IOException {
+            batch.add(record);
+            batchBytes += record.size();
+            if (batchBytes >= COMPACTION_BATCH_BYTES) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            ByteBuffer buffer = encode(batch);
+            long batchStart = position;
+            while (buffer.hasRemaining()) {
+                out.write(buffer, batchStart + buffer.position());
+            }
+            for (Record record : batch) {
+                if (record.op == DELETE) {
+                    // Only the records written during the compaction delete anything
+                    if (record.space == DATA) {
+                        data.remove(record.key);
+                    } else if (record.space == QUEUE) {
+                        queue.remove(record.queueKey);
+                    }
+                } else if (record.space == DATA) {
+                    data.put(record.key, pack(position + record.valueOffset(), record.value.length));
+                } else if (record.space == QUEUE) {
+                    queue.put(record.queueKey, pack(position + record.valueOffset(), record.value.length));
+                }
+                position += record.size();
+            }
+            batch.clear();
+            batchBytes = 0;
+        }
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        List<Record> records = new ArrayList<>(1);
+        records.add(Record.put(DATA, key, 0, value));
+        writeLocked(records);
+    }
+
+    public void putAll(Map<String, byte[]> entries) throws IOException {
+        List<Record> records = new ArrayList<>(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            records.add(Record.put(DATA, entry.getKey(), 0, entry.getValue()));
+        }
+        writeLocked(records);
+    }
+
+    public byte[] get(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            Long location = data.get(key);
+            return location == null ? null : read(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        return data.containsKey(key);
+    }
+
+    public void delete(String key) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (data.containsKey(key)) {
+                List<Record> records = new ArrayList<>(1);
+                records.add(Record.delete(DATA, key, 0));
+                write(records);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long count() {
+        return data.size();
+    }
+
+    /**
+     * @return the keys in order. The iterator is weakly consistent: it never fails
+     *         because of concurrent changes, which it may or may not see.
+     */
+    public Iterator<String> keyCursor() {
+        return new Cursor<String, String>() {
+            @Override
+            ConcurrentNavigableMap<String, Long> index() {
+                return data;
+            }
+
+            @Override
+            String value(Map.Entry<String, Long> entry) {
+                return entry.getKey();
+            }
+        };
+    }
+
+    public void putQueueEntry(long key, byte[] value) throws IOException {
+        List<Record> records = new ArrayList<>(1);
+        records.add(Record.put(QUEUE, null, key, value));
+        writeLocked(records);
+    }
+
+    public void putQueueEntries(Map<Long, byte[]> entries) throws IOException {
+        List<Record> records = new ArrayList<>(entries.size());
+        for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+            records.add(Record.put(QUEUE, null, entry.getKey(), entry.getValue()));
+        }
+        writeLocked(records);
+    }
+
+    /**
+     * @return the values of the first {@code max} queue entries in key order.
+     */
+    public List<byte[]> getFirstQueueEntries(int max) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<byte[]> values = new ArrayList<>(Math.min(max, 1024));
+            Iterator<Long> it = queue.values().iterator();
+            while (values.size() < max && it.hasNext()) {
+                values.add(read(it.next()));
+            }
+            return values;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the values of the first {@code max} queue entries in key order.
+     */
+    public List<byte[]> pollFirstQueueEntries(int max) throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<byte[]> values = new ArrayList<>(Math.min(max, 1024));
+            List<Record> records = new ArrayList<>(Math.min(max, 1024));
+            Iterator<Map.Entry<Long, Long>> it = queue.entrySet().iterator();
+            while (values.size() < max && it.hasNext()) {
+                Map.Entry<Long, Long> entry = it.next();
+                values.add(read(entry.getValue()));
+                records.add(Record.delete(QUEUE, null, entry.getKey()));
+            }
+            if (!records.isEmpty()) {
+                write(records);
+            }
+            return values;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void deleteFirstQueueEntries(int count) throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<Record> records = new ArrayList<>(Math.min(count, 1024));
+            Iterator<Long> it = queue.keySet().iterator();
+            while (records.size() < count && it.hasNext()) {
+                records.add(Record.delete(QUEUE, null, it.next()));
+            }
+            if (!records.isEmpty()) {
+                write(records);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if there was an entry with the key.
+     */
+    public boolean deleteQueueEntry(long key) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!queue.containsKey(key)) {
+                return false;
+            }
+            List<Record> records = new ArrayList<>(1);
+            records.add(Record.delete(QUEUE, null, key));
+            write(records);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void deleteAllQueueEntries() throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<Record> records = new ArrayList<>(queue.size());
+            for (Long key : queue.keySet()) {
+                records.add(Record.delete(QUEUE, null, key));
+            }
+            if (!records.isEmpty()) {
+                write(records);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long countQueueEntries() {
+        return queue.size();
+    }
+
+    /**
+     * @return the values of the queue entries in key order, read one at a time.
+     *         Weakly consistent, like {@link #keyCursor()}.
+     */
+    public Iterator<byte[]> queueCursor() {
+        return new Cursor<Long, byte[]>() {
+            @Override
+            ConcurrentNavigableMap<Long, Long> index() {
+                return queue;
+            }
+
+            @Override
+            byte[] value(Map.Entry<Long, Long> entry) throws IOException {
+                return read(entry.getValue());
+            }
+        };
+    }
+
+    public void setCounter(String name, long value) throws IOException {
+        List<Record> records = new ArrayList<>(1);
+        records.add(Record.put(COUNTER, name, 0, toBytes(value)));
+        writeLocked(records);
+    }
+
+    public void setCounters(Map<String, Long> values) throws IOException {
+        List<Record> records = new ArrayList<>(values.size());
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            records.add(Record.put(COUNTER, entry.getKey(), 0, toBytes(entry.getValue())));
+        }
+        writeLocked(records);
+    }
+
+    public Map<String, Long> getAllCounters() {
+        return new HashMap<>(counters);
+    }
+
+    private void writeLocked(List<Record> records) throws IOException {
+        lock.writeLock().lock();
+        try {
+            write(records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the log to the disk.
+     */
+    public void sync() throws IOException {
+        lock.readLock().lock();
+        try {
+            channel.force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the size of the log in bytes, including overwritten and deleted records.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void close() {
+        Thread running;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = compactor;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Writes are refused from now on, so the compaction only has to finish what it copies
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing log database " + file.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static byte[] toBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static long toLong(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+
+    /**
+     * Iterates an index in key order. A compaction replaces the index, after which
+     * the iteration continues in the new index after the last returned key.
+     */
+    private abstract class Cursor<K, T> implements Iterator<T> {
+        private int cursorGeneration = -1;
+        private Iterator<Map.Entry<K, Long>> entries;
+        private K lastKey;
+
+        abstract ConcurrentNavigableMap<K, Long> index();
+
+        abstract T value(Map.Entry<K, Long> entry) throws IOException;
+
+        private void seek() {
+            if (cursorGeneration != generation) {
+                cursorGeneration = generation;
+                ConcurrentNavigableMap<K, Long> index = index();
+                entries = (lastKey == null ? index : index.tailMap(lastKey, false)).entrySet().iterator();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            lock.readLock().lock();
+            try {
+                seek();
+                return entries.hasNext();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public T next() {
+            lock.readLock().lock();
+            try {
+                seek();
+                if (!entries.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<K, Long> entry = entries.next();
+                lastKey = entry.getKey();
+                return value(entry);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read from log database " + file.getName(), e);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A change as it is written to the log: operation, key space, key and value.
+     */
+    private static final class Record {
+        private final byte op;
+        private final byte space;
+        private final String key;
+        private final byte[] keyBytes;
+        private final long queueKey;
+        private final byte[] value;
+
+        private Record(byte op, byte space, String key, byte[] keyBytes, long queueKey, byte[] value) {
+            this.op = op;
+            this.space = space;
+            this.key = key;
+            this.keyBytes = keyBytes;
+            this.queueKey = queueKey;
+            this.value = value;
+        }
+
+        static Record put(byte space, String key, long queueKey, byte[] value) {
+            if (value.length > MAX_VALUE_LENGTH) {
+                throw new IllegalArgumentException("Value of " + value.length + " bytes is too large");
+            }
+            return new Record(PUT, space, key, key == null ? null : keyBytes(key), queueKey, value);
+        }
+
+        static Record delete(byte space, String key, long queueKey) {
+            return new Record(DELETE, space, key, key == null ? null : keyBytes(key), queueKey, null);
+        }
+
+        private static byte[] keyBytes(String key) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Key of " + bytes.length + " bytes is too long");
+            }
+            return bytes;
+        }
+
+        static Record decode(byte[] body) {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            byte op = buffer.get();
+            byte space = buffer.get();
+            String key = null;
+            byte[] keyBytes = null;
+            long queueKey = 0;
+            if (space == QUEUE) {
+                queueKey = buffer.getLong();
+            } else {
+                keyBytes = new byte[buffer.getShort()];
+                buffer.get(keyBytes);
+                key = new String(keyBytes, StandardCharsets.UTF_8);
+            }
+            byte[] value = null;
+            if (op == PUT) {
+                value = new byte[buffer.remaining()];
+                buffer.get(value);
+            }
+            return new Record(op, space, key, keyBytes, queueKey, value);
+        }
+
+        /** Offset of the value from the start of the record */
+        int valueOffset() {
+            return RECORD_HEADER + 2 + (space == QUEUE ? Long.BYTES : 2 + keyBytes.length);
+        }
+
+        int size() {
+            return valueOffset() + (value == null ? 0 : value.length);
+        }
+
+        void encodeBody(ByteBuffer buffer) {
+            buffer.put(op);
+            buffer.put(space);
+            if (space == QUEUE) {
+                buffer.putLong(queueKey);
+            } else {
+                buffer.putShort((short) keyBytes.length);
+                buffer.put(keyBytes);
+            }
+            if (value != null) {
+                buffer.put(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package edu.uci.ics.crawler4j.db;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Folder of {@link LogDatabase}s, the counterpart of {@link DerbyEnvironment}.
+ * Every database is a single log file named after it.
+ */
+public class LogEnvironment {
+    private static final Logger logger = LoggerFactory.getLogger(LogEnvironment.class);
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private final File envHome;
+    private final ConcurrentHashMap<String, LogDatabase> databases = new ConcurrentHashMap<>();
+
+    public LogEnvironment(File envHome) {
+        this.envHome = envHome;
+
+        if (!envHome.exists()) {
+            if (envHome.mkdirs()) {
+                logger.debug("Created log environment directory: " + envHome.getAbsolutePath());
+            } else {
+                throw new RuntimeException("Failed to create log environment directory: " +
+                    envHome.getAbsolutePath());
+            }
+        }
+    }
+
+    public LogDatabase openDatabase(String databaseName) {
+        return databases.computeIfAbsent(databaseName,
+                                         name -> new LogDatabase(new File(envHome, name + LOG_SUFFIX)));
+    }
+
+    public File getHome() {
+        return envHome;
+    }
+
+    public void close() {
+        for (LogDatabase db : databases.values()) {
+            db.close();
+        }
+        databases.clear();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.fetcher;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+
+/**
+ * Spaces the fetches of each host: a fetch starts at least the politeness delay of
+ * its host after the previous fetch of that host. The delay of a host is the
+ * Crawl-delay of its robots.txt if it has one (see
+ * {@link edu.uci.ics.crawler4j.robotstxt.RobotstxtConfig#setHonorCrawlDelay(boolean)}),
+ * and {@link CrawlConfig#getPolitenessDelay()} otherwise. Fetches of different
+ * hosts never wait for each other.
+ */
+public class HostRateLimiter {
+
+    /**
+     * When more hosts are tracked, the fetch times whose delay is over are dropped.
+     */
+    private static final int TRACKED_HOSTS_PRUNE_THRESHOLD = 10000;
+
+    private final CrawlConfig config;
+    /** Time at which the last fetch of each host started, or was reserved to start */
+    private final ConcurrentHashMap<String, Long> fetchTimes = new ConcurrentHashMap<>();
+    /**
+     * The Crawl-delay of every host that asked for one. Never pruned, as it is only
+     * set again when the robots.txt of the host is fetched again, and it is small
+     * next to the robots.txt directives of those hosts.
+     */
+    private final ConcurrentHashMap<String, Long> crawlDelays = new ConcurrentHashMap<>();
+    private volatile long lastPruneTime = 0;
+
+    public HostRateLimiter(CrawlConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the minimum time in milliseconds between two fetches of the host.
+     */
+    public long getDelay(String host) {
+        Long crawlDelay = crawlDelays.get(host);
+        return crawlDelay != null ? crawlDelay : config.getPolitenessDelay();
+    }
+
+    /**
+     * Sets the delay a host asked for in its robots.txt.
+     *
+     * @param crawlDelay the delay in milliseconds, or a negative value if the host
+     *            did not ask for one and gets the politeness delay.
+     */
+    public void setCrawlDelay(String host, long crawlDelay) {
+        if (crawlDelay < 0) {
+            crawlDelays.remove(host);
+        } else {
+            crawlDelays.put(host, crawlDelay);
+        }
+    }
+
+    /**
+     * Reserves the next fetch of a host, at least its delay after the previous one.
+     *
+     * @return the milliseconds to wait until the reserved time.
+     */
+    public long reserve(String host) {
+        long delay = getDelay(host);
+        if (delay <= 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long fetchTime = fetchTimes.merge(host, now, (last, current) -> Math.max(current, last + delay));
+        if (fetchTimes.size() > TRACKED_HOSTS_PRUNE_THRESHOLD && now - lastPruneTime > delay) {
+            lastPruneTime = now;
+            fetchTimes.entrySet().removeIf(entry -> entry.getValue() + getDelay(entry.getKey()) < now);
+        }
+        return fetchTime - now;
+    }
+}
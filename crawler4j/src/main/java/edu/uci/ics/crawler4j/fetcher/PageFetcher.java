@@ -26,7 +26,6 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -80,7 +79,6 @@ import edu.uci.ics.crawler4j.url.WebURL;
  */
 public class PageFetcher {
     protected static final Logger logger = LoggerFactory.getLogger(PageFetcher.class);
-    protected final Object mutex = new Object();
     /**
      * This field is protected for retro compatibility. Please use the getter method: getConfig() to
      * read this field;
@@ -88,11 +86,12 @@ public class PageFetcher {
     protected final CrawlConfig config;
     protected PoolingHttpClientConnectionManager connectionManager;
     protected CloseableHttpClient httpClient;
-    protected long lastFetchTime = 0;
+    protected final HostRateLimiter hostRateLimiter;
     protected IdleConnectionMonitorThread connectionMonitorThread = null;
 
     public PageFetcher(CrawlConfig config) throws NoSuchAlgorithmException, KeyManagementException, KeyStoreException {
         this.config = config;
+        this.hostRateLimiter = new HostRateLimiter(config);
 
         RequestConfig requestConfig = RequestConfig.custom()
                 .setExpectContinueEnabled(false)
@@ -259,15 +258,10 @@ public class PageFetcher {
         HttpUriRequest request = null;
         try {
             request = newHttpUriRequest(toFetchURL);
-            if (config.getPolitenessDelay() > 0) {
-                // Applying Politeness delay
-                synchronized (mutex) {
-                    long now = (new Date()).getTime();
-                    if ((now - lastFetchTime) < config.getPolitenessDelay()) {
-                        Thread.sleep(config.getPolitenessDelay() - (now - lastFetchTime));
-                    }
-                    lastFetchTime = (new Date()).getTime();
-                }
+            // Applying Politeness delay, only fetches of the same host wait for each other
+            long wait = hostRateLimiter.reserve(webUrl.getHost());
+            if (wait > 0) {
+                Thread.sleep(wait);
             }
 
             CloseableHttpResponse response = httpClient.execute(request);
@@ -331,6 +325,13 @@ public class PageFetcher {
         }
     }
 
+    /**
+     * @return the limiter which spaces the fetches of each host.
+     */
+    public HostRateLimiter getHostRateLimiter() {
+        return hostRateLimiter;
+    }
+
     public synchronized void shutDown() {
         if (connectionMonitorThread != null) {
             connectionManager.shutdown();
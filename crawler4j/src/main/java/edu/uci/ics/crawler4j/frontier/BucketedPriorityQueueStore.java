@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * In-memory queue with one FIFO bucket per priority level. A bitmap of the
+ * non-empty levels finds the next URL, and every URL is linked into its bucket, so
+ * scheduling, dequeuing, removing and moving a queued URL to another priority
+ * ({@link #reprioritize(String, ToIntFunction)}) take constant time. URLs of the
+ * same priority come out in the order they were scheduled.
+ *
+ * The whole queue is held on the heap, however long it grows; unlike the
+ * segmented and the tiered queue, which keep most URLs on disk, this queue does
+ * not suit crawls whose frontier outgrows the memory of the crawler. With a
+ * backing store every change is also written to it, a polled or moved batch of
+ * URLs as one batch, and the queue is loaded from it on start, so that resumable
+ * crawls keep their queue.
+ */
+public class BucketedPriorityQueueStore implements UrlQueueStore {
+
+    private static final int LEVELS = 256;
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final UrlQueueStore backing;
+
+    /** Guarded by this */
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Node[] heads = new Node[LEVELS];
+    private final Node[] tails = new Node[LEVELS];
+    private final long[] nonEmptyLevels = new long[LEVELS / Long.SIZE];
+
+    private volatile long length;
+
+    private static class Node {
+        private WebURL url;
+        private Node previous;
+        private Node next;
+
+        Node(WebURL url) {
+            this.url = url;
+        }
+    }
+
+    public BucketedPriorityQueueStore() {
+        this(null);
+    }
+
+    /**
+     * @param backing the store the queue is written through to, or null to keep it in memory only.
+     */
+    public BucketedPriorityQueueStore(UrlQueueStore backing) {
+        this.backing = backing;
+        if (backing != null) {
+            backing.forEachBatch(LOAD_BATCH_SIZE, urls -> {
+                for (WebURL url : urls) {
+                    add(url);
+                }
+            });
+        }
+    }
+
+    private static int level(WebURL url) {
+        return url.getPriority() - Byte.MIN_VALUE;
+    }
+
+    /**
+     * @return the lowest non-empty level, or -1 if the queue is empty.
+     */
+    private int firstLevel() {
+        for (int i = 0; i < nonEmptyLevels.length; i++) {
+            if (nonEmptyLevels[i] != 0) {
+                return i * Long.SIZE + Long.numberOfTrailingZeros(nonEmptyLevels[i]);
+            }
+        }
+        return -1;
+    }
+
+    private void link(Node node) {
+        int level = level(node.url);
+        node.next = null;
+        node.previous = tails[level];
+        if (tails[level] == null) {
+            heads[level] = node;
+            nonEmptyLevels[level / Long.SIZE] |= 1L << level;
+        } else {
+            tails[level].next = node;
+        }
+        tails[level] = node;
+    }
+
+    private void unlink(Node node) {
+        int level = level(node.url);
+        if (node.previous == null) {
+            heads[level] = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            tails[level] = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+        if (heads[level] == null) {
+            nonEmptyLevels[level / Long.SIZE] &= ~(1L << level);
+        }
+    }
+
+    /**
+     * Adds a URL in memory only, replacing the queued entry of the same URL.
+     *
+     * @return the replaced entry, or null
+     */
+    private WebURL add(WebURL url) {
+        Node node = nodes.get(url.getURL());
+        WebURL replaced = null;
+        if (node == null) {
+            node = new Node(url);
+            nodes.put(url.getURL(), node);
+            length++;
+        } else {
+            unlink(node);
+            replaced = node.url;
+            node.url = url;
+        }
+        link(node);
+        return replaced;
+    }
+
+    @Override
+    public synchronized void put(WebURL url) {
+        WebURL replaced = add(url);
+        if (backing != null) {
+            if (replaced != null) {
+                backing.remove(replaced);
+            }
+            backing.put(url);
+        }
+    }
+
+    @Override
+    public synchronized void putAll(List<WebURL> urls) {
+        for (WebURL url : urls) {
+            WebURL replaced = add(url);
+            if (replaced != null && backing != null) {
+                backing.remove(replaced);
+            }
+        }
+        if (backing != null) {
+            backing.putAll(urls);
+        }
+    }
+
+    @Override
+    public synchronized List<WebURL> get(int max) {
+        List<WebURL> results = new ArrayList<>((int) Math.min(max, length));
+        for (int level = firstLevel(); level >= 0 && level < LEVELS && results.size() < max; level++) {
+            for (Node node = heads[level]; node != null && results.size() < max; node = node.next) {
+                results.add(node.url);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void delete(int count) {
+        poll(count);
+    }
+
+    @Override
+    public synchronized List<WebURL> poll(int max) {
+        List<WebURL> results = new ArrayList<>((int) Math.min(max, length));
+        int level;
+        while (results.size() < max && (level = firstLevel()) >= 0) {
+            Node node = heads[level];
+            unlink(node);
+            nodes.remove(node.url.getURL());
+            length--;
+            results.add(node.url);
+        }
+        if (backing != null && !results.isEmpty()) {
+            backing.removeAll(results);
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized boolean remove(WebURL url) {
+        Node node = nodes.remove(url.getURL());
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        length--;
+        if (backing != null) {
+            backing.remove(node.url);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the URL is queued
+     */
+    public synchronized boolean contains(String url) {
+        return nodes.containsKey(url);
+    }
+
+    /**
+     * Moves a queued URL to the priority {@code priority} gives its queued entry, to the
+     * end of that bucket.
+     *
+     * @return true if the URL was queued and its priority changed
+     */
+    public boolean reprioritize(String url, ToIntFunction<WebURL> priority) {
+        return reprioritizeAll(Collections.singletonList(url), priority) > 0;
+    }
+
+    /**
+     * Moves the queued URLs among {@code urls} to the priority {@code priority} gives
+     * their queued entries, to the end of that bucket. The backing store gets the
+     * moved URLs as one batch of removes and one of puts.
+     *
+     * @return the number of URLs whose priority changed
+     */
+    public synchronized int reprioritizeAll(Collection<String> urls, ToIntFunction<WebURL> priority) {
+        // A URL linked to twice is moved once
+        Map<Node, Byte> moved = new LinkedHashMap<>();
+        for (String url : urls) {
+            Node node = nodes.get(url);
+            if (node == null) {
+                continue;
+            }
+            byte newPriority = (byte) priority.applyAsInt(node.url);
+            if (newPriority != node.url.getPriority()) {
+                moved.put(node, newPriority);
+            }
+        }
+        if (moved.isEmpty()) {
+            return 0;
+        }
+        List<WebURL> movedUrls = new ArrayList<>(moved.size());
+        for (Node node : moved.keySet()) {
+            movedUrls.add(node.url);
+        }
+        if (backing != null) {
+            // The key of the backing store includes the priority, so the old entries go first
+            backing.removeAll(movedUrls);
+        }
+        for (Map.Entry<Node, Byte> entry : moved.entrySet()) {
+            Node node = entry.getKey();
+            unlink(node);
+            node.url.setPriority(entry.getValue());
+            link(node);
+        }
+        if (backing != null) {
+            backing.putAll(movedUrls);
+        }
+        return moved.size();
+    }
+
+    @Override
+    public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+        // Not under the lock of the queue: the action may well lock other queues
+        List<WebURL> urls = get(Integer.MAX_VALUE);
+        for (int start = 0; start < urls.size(); start += batchSize) {
+            action.accept(new ArrayList<>(urls.subList(start, Math.min(urls.size(), start + batchSize))));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        nodes.clear();
+        for (int level = 0; level < LEVELS; level++) {
+            heads[level] = null;
+            tails[level] = null;
+        }
+        for (int i = 0; i < nonEmptyLevels.length; i++) {
+            nonEmptyLevels[i] = 0;
+        }
+        length = 0;
+        if (backing != null) {
+            backing.clear();
+        }
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void close() {
+        if (backing != null) {
+            backing.close();
+        }
+    }
+}
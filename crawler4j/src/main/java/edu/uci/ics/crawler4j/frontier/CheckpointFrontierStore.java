@@ -0,0 +1,696 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * {@link FrontierStore} which keeps the frontier on the heap, like
+ * {@link InMemoryFrontierStore}, and makes it survive restarts with snapshot and
+ * journal files instead of a database.
+ *
+ * Every change is appended to a journal. A background thread periodically starts a
+ * new journal and writes a snapshot of all queues, seen-URL sets and counters to a
+ * single compressed file, after which the journals it covers are deleted. The
+ * snapshot is built from the previous snapshot and the journals written since, not
+ * from the live stores, so the crawlers only wait for the switch of the journal. On
+ * start the newest snapshot is read sequentially and only the journals written
+ * after it are replayed, so a restart costs a sequential read of the snapshot
+ * rather than a walk over the rows of a database. Journals are written to disk
+ * every second; a crash of the machine may lose the changes of that second.
+ *
+ * The file {@code snapshot-N.gz} holds the state after the changes of the journals
+ * up to {@code journal-N.log}.
+ */
+public class CheckpointFrontierStore implements FrontierStore {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointFrontierStore.class);
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".gz";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 10000;
+    private static final long JOURNAL_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final byte QUEUE_PUT = 1;
+    private static final byte QUEUE_REMOVE = 2;
+    private static final byte QUEUE_CLEAR = 3;
+    private static final byte DOC_ID_PUT = 4;
+    private static final byte COUNTER_SET = 5;
+
+    private final File folder;
+    private final State state = new State();
+    private final WebURLDerbyBinding binding = new WebURLDerbyBinding();
+
+    private final ConcurrentMap<String, JournaledQueue> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, JournaledDocIds> docIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, JournaledCounters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Every change is applied and journaled under this lock, so the journal has the
+     * changes in the order they were applied and replaying it rebuilds the state.
+     */
+    private final Object journalLock = new Object();
+    private FileOutputStream journalFile;
+    private DataOutputStream journal;
+    private long journalSequence;
+
+    /** Keeps two snapshots from being written at once */
+    private final Object checkpointLock = new Object();
+
+    private final ScheduledExecutorService checkpointer;
+    private volatile boolean closed = false;
+
+    /**
+     * @param folder the folder of the snapshot and journal files.
+     * @param checkpointIntervalMillis how often a snapshot is written.
+     */
+    public CheckpointFrontierStore(File folder, long checkpointIntervalMillis) {
+        this.folder = folder;
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new RuntimeException("Failed creating the checkpoint folder: " + folder.getAbsolutePath());
+        }
+        try {
+            long start = System.currentTimeMillis();
+            journalSequence = load(state, Long.MAX_VALUE) + 1;
+            if (journalSequence > 1) {
+                logger.info("Recovered the frontier up to journal {} in {} ms", journalSequence - 1,
+                            System.currentTimeMillis() - start);
+            }
+            journalFile = openJournal(journalSequence);
+            journal = new DataOutputStream(new BufferedOutputStream(journalFile, BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to recover the frontier from " + folder, e);
+        }
+
+        checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Frontier checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(this::flushJournal, JOURNAL_FLUSH_INTERVAL_MILLIS,
+                                            JOURNAL_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (RuntimeException e) {
+                logger.error("Failed to write a frontier snapshot", e);
+            }
+        }, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public UrlQueueStore openQueue(String name) {
+        return queues.computeIfAbsent(name, JournaledQueue::new);
+    }
+
+    @Override
+    public DocIdStore openDocIds(String name) {
+        return docIds.computeIfAbsent(name, JournaledDocIds::new);
+    }
+
+    @Override
+    public CounterStore openCounters(String name) {
+        return counters.computeIfAbsent(name, JournaledCounters::new);
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    /**
+     * Writes a snapshot of the current state and deletes the files it makes obsolete.
+     */
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            long start = System.currentTimeMillis();
+            long sequence;
+            FileOutputStream rotated;
+            synchronized (journalLock) {
+                try {
+                    journal.flush();
+                    FileOutputStream next = openJournal(journalSequence + 1);
+                    rotated = journalFile;
+                    sequence = journalSequence;
+                    journalSequence++;
+                    journalFile = next;
+                    journal = new DataOutputStream(new BufferedOutputStream(next, BUFFER_SIZE));
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to rotate the frontier journal", e);
+                }
+            }
+            long paused = System.currentTimeMillis() - start;
+            try {
+                rotated.getChannel().force(false);
+                rotated.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to close the frontier journal " + sequence, e);
+            }
+
+            File snapshot = new File(folder, SNAPSHOT_PREFIX + sequence + SNAPSHOT_SUFFIX);
+            File tmpFile = new File(folder, SNAPSHOT_PREFIX + sequence + SNAPSHOT_SUFFIX + ".tmp");
+            State copy = new State();
+            try {
+                load(copy, sequence);
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE), BUFFER_SIZE))) {
+                    writeSnapshot(out, copy);
+                }
+                Files.move(tmpFile.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                tmpFile.delete();
+                throw new RuntimeException("Failed to write the frontier snapshot " + snapshot, e);
+            } finally {
+                copy.close();
+            }
+            deleteObsoleteFiles(sequence);
+            logger.info("Wrote frontier snapshot {} ({} bytes) in {} ms, the frontier was paused for {} ms",
+                        snapshot.getName(), snapshot.length(), System.currentTimeMillis() - start, paused);
+        }
+    }
+
+    private static void writeSnapshot(DataOutputStream out, State copy) throws IOException {
+        WebURLDerbyBinding binding = new WebURLDerbyBinding();
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(copy.queues.size());
+        for (Map.Entry<String, InMemoryFrontierStore.QueueStore> queue : new TreeMap<>(copy.queues).entrySet()) {
+            out.writeUTF(queue.getKey());
+            out.writeLong(queue.getValue().getLength());
+            List<WebURL> urls = new ArrayList<>((int) queue.getValue().getLength());
+            queue.getValue().forEachBatch(BATCH_SIZE, urls::addAll);
+            for (WebURL url : urls) {
+                writeBytes(out, binding.objectToEntry(url));
+            }
+        }
+        out.writeInt(copy.docIds.size());
+        for (Map.Entry<String, DocIdStore> set : new TreeMap<>(copy.docIds).entrySet()) {
+            DocIdStore store = set.getValue();
+            List<String> urls = new ArrayList<>((int) store.count());
+            store.forEachUrl(urls::add);
+            out.writeUTF(set.getKey());
+            out.writeLong(urls.size());
+            for (String url : urls) {
+                writeString(out, url);
+                out.writeInt(store.get(url));
+            }
+        }
+        out.writeInt(copy.counters.size());
+        for (Map.Entry<String, CounterStore> table : new TreeMap<>(copy.counters).entrySet()) {
+            Map<String, Long> values = table.getValue().load();
+            out.writeUTF(table.getKey());
+            out.writeInt(values.size());
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Loads the newest snapshot and replays the journals written after it, up to the
+     * given journal, into the target.
+     *
+     * @return the sequence number of the last journal that was found
+     */
+    private long load(State target, long lastJournal) throws IOException {
+        long start = System.currentTimeMillis();
+        long snapshotSequence = 0;
+        List<Long> journals = new ArrayList<>();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long sequence = sequenceOf(file.getName(), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+                if (sequence > snapshotSequence && sequence <= lastJournal) {
+                    snapshotSequence = sequence;
+                }
+                sequence = sequenceOf(file.getName(), JOURNAL_PREFIX, JOURNAL_SUFFIX);
+                if (sequence > 0 && sequence <= lastJournal) {
+                    journals.add(sequence);
+                }
+            }
+        }
+        journals.sort(null);
+
+        if (snapshotSequence > 0) {
+            File snapshot = new File(folder, SNAPSHOT_PREFIX + snapshotSequence + SNAPSHOT_SUFFIX);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(snapshot), BUFFER_SIZE), BUFFER_SIZE))) {
+                readSnapshot(in, target);
+            }
+        }
+        long lastSequence = snapshotSequence;
+        long replayed = 0;
+        for (long sequence : journals) {
+            if (sequence > snapshotSequence) {
+                replayed += replayJournal(new File(folder, JOURNAL_PREFIX + sequence + JOURNAL_SUFFIX), target);
+            }
+            lastSequence = Math.max(lastSequence, sequence);
+        }
+        logger.debug("Loaded frontier snapshot {} and {} journaled changes in {} ms", snapshotSequence, replayed,
+                     System.currentTimeMillis() - start);
+        return lastSequence;
+    }
+
+    private static long sequenceOf(String fileName, String prefix, String suffix) {
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(suffix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void readSnapshot(DataInputStream in, State target) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported frontier snapshot format: " + version);
+        }
+        for (int queueCount = in.readInt(); queueCount > 0; queueCount--) {
+            UrlQueueStore queue = target.queue(in.readUTF());
+            List<WebURL> batch = new ArrayList<>();
+            for (long count = in.readLong(); count > 0; count--) {
+                batch.add(binding.entryToObject(readBytes(in)));
+                if (batch.size() == BATCH_SIZE) {
+                    queue.putAll(batch);
+                    batch.clear();
+                }
+            }
+            queue.putAll(batch);
+        }
+        for (int setCount = in.readInt(); setCount > 0; setCount--) {
+            DocIdStore set = target.docIds(in.readUTF());
+            for (long count = in.readLong(); count > 0; count--) {
+                set.put(readString(in), in.readInt());
+            }
+        }
+        for (int tableCount = in.readInt(); tableCount > 0; tableCount--) {
+            CounterStore table = target.counters(in.readUTF());
+            for (int count = in.readInt(); count > 0; count--) {
+                table.set(in.readUTF(), in.readLong());
+            }
+        }
+    }
+
+    /**
+     * @return the number of replayed changes; a change torn by a crash ends the replay.
+     */
+    private long replayJournal(File file, State target) throws IOException {
+        long replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                                                                                 BUFFER_SIZE))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                String name = in.readUTF();
+                switch (type) {
+                    case QUEUE_PUT:
+                        target.queue(name).put(binding.entryToObject(readBytes(in)));
+                        break;
+                    case QUEUE_REMOVE:
+                        target.queue(name).remove(in.readLong());
+                        break;
+                    case QUEUE_CLEAR:
+                        target.queue(name).clear();
+                        break;
+                    case DOC_ID_PUT:
+                        target.docIds(name).put(readString(in), in.readInt());
+                        break;
+                    case COUNTER_SET:
+                        target.counters(name).set(in.readUTF(), in.readLong());
+                        break;
+                    default:
+                        throw new IOException("Unknown change type " + type + " in " + file);
+                }
+                replayed++;
+            }
+        } catch (EOFException e) {
+            logger.warn("Journal {} ends with an incomplete change, which was dropped", file.getName());
+        }
+        return replayed;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /*
+     * URLs are written as length-prefixed UTF-8, as writeUTF() is limited to 64 KB.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private FileOutputStream openJournal(long sequence) throws IOException {
+        return new FileOutputStream(new File(folder, JOURNAL_PREFIX + sequence + JOURNAL_SUFFIX), true);
+    }
+
+    /**
+     * Writes the buffered changes to the journal file and forces them to disk. Only
+     * the buffer is written under the journal lock; the crawlers do not wait for the
+     * disk.
+     */
+    private void flushJournal() {
+        FileChannel channel;
+        synchronized (journalLock) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                logger.error("Failed to flush the frontier journal", e);
+                return;
+            }
+            channel = journalFile.getChannel();
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // The journal was rotated meanwhile, which forced it to disk before closing it
+        } catch (IOException e) {
+            logger.error("Failed to force the frontier journal to disk", e);
+        }
+    }
+
+    private void deleteObsoleteFiles(long snapshotSequence) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long sequence = Math.max(sequenceOf(file.getName(), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX),
+                                     sequenceOf(file.getName(), JOURNAL_PREFIX, JOURNAL_SUFFIX));
+            boolean obsolete = file.getName().startsWith(SNAPSHOT_PREFIX) ? sequence < snapshotSequence :
+                               sequence <= snapshotSequence;
+            if (sequence > 0 && obsolete && !file.delete()) {
+                logger.warn("Could not delete obsolete checkpoint file {}", file);
+            }
+        }
+    }
+
+    /**
+     * Appends a change to the journal. Must be called with the journal lock held.
+     */
+    private void journal(byte type, String name, JournalWriter writer) {
+        try {
+            journal.writeByte(type);
+            journal.writeUTF(name);
+            writer.write(journal);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the frontier journal", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JournalWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            logger.error("Failed to write the final frontier snapshot", e);
+        }
+        synchronized (journalLock) {
+            try {
+                journal.flush();
+                journalFile.getChannel().force(false);
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Failed to close the frontier journal", e);
+            }
+        }
+        state.close();
+    }
+
+    private class JournaledQueue implements UrlQueueStore {
+        private final String name;
+        private final InMemoryFrontierStore.QueueStore store;
+
+        JournaledQueue(String name) {
+            this.name = name;
+            this.store = state.queue(name);
+        }
+
+        @Override
+        public void put(WebURL url) {
+            byte[] entry = binding.objectToEntry(url);
+            synchronized (journalLock) {
+                store.put(url);
+                journal(QUEUE_PUT, name, out -> writeBytes(out, entry));
+            }
+        }
+
+        @Override
+        public void putAll(List<WebURL> urls) {
+            List<byte[]> entries = new ArrayList<>(urls.size());
+            for (WebURL url : urls) {
+                entries.add(binding.objectToEntry(url));
+            }
+            synchronized (journalLock) {
+                store.putAll(urls);
+                for (byte[] entry : entries) {
+                    journal(QUEUE_PUT, name, out -> writeBytes(out, entry));
+                }
+            }
+        }
+
+        @Override
+        public List<WebURL> get(int max) {
+            return store.get(max);
+        }
+
+        @Override
+        public void delete(int count) {
+            poll(count);
+        }
+
+        @Override
+        public List<WebURL> poll(int max) {
+            synchronized (journalLock) {
+                List<WebURL> urls = store.poll(max);
+                for (WebURL url : urls) {
+                    long key = QueueKey.of(url);
+                    journal(QUEUE_REMOVE, name, out -> out.writeLong(key));
+                }
+                return urls;
+            }
+        }
+
+        @Override
+        public boolean remove(WebURL url) {
+            long key = QueueKey.of(url);
+            synchronized (journalLock) {
+                if (!store.remove(key)) {
+                    return false;
+                }
+                journal(QUEUE_REMOVE, name, out -> out.writeLong(key));
+                return true;
+            }
+        }
+
+        @Override
+        public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+            store.forEachBatch(batchSize, action);
+        }
+
+        @Override
+        public void clear() {
+            synchronized (journalLock) {
+                store.clear();
+                journal(QUEUE_CLEAR, name, out -> { });
+            }
+        }
+
+        @Override
+        public long getLength() {
+            return store.getLength();
+        }
+
+        @Override
+        public void close() {
+            // The queue lives as long as its store
+        }
+    }
+
+    private class JournaledDocIds implements DocIdStore {
+        private final String name;
+        private final DocIdStore store;
+
+        JournaledDocIds(String name) {
+            this.name = name;
+            this.store = state.docIds(name);
+        }
+
+        @Override
+        public int get(String url) {
+            return store.get(url);
+        }
+
+        @Override
+        public void put(String url, int docId) {
+            synchronized (journalLock) {
+                store.put(url, docId);
+                journal(DOC_ID_PUT, name, out -> {
+                    writeString(out, url);
+                    out.writeInt(docId);
+                });
+            }
+        }
+
+        @Override
+        public void putAll(Map<String, Integer> docIds) {
+            synchronized (journalLock) {
+                for (Map.Entry<String, Integer> entry : docIds.entrySet()) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        @Override
+        public long count() {
+            return store.count();
+        }
+
+        @Override
+        public void forEachUrl(Consumer<String> action) {
+            store.forEachUrl(action);
+        }
+
+        @Override
+        public void close() {
+            // The set lives as long as its store
+        }
+    }
+
+    private class JournaledCounters implements CounterStore {
+        private final String name;
+        private final CounterStore store;
+
+        JournaledCounters(String name) {
+            this.name = name;
+            this.store = state.counters(name);
+        }
+
+        @Override
+        public Map<String, Long> load() {
+            return store.load();
+        }
+
+        @Override
+        public void set(String counter, long value) {
+            synchronized (journalLock) {
+                store.set(counter, value);
+                journal(COUNTER_SET, name, out -> {
+                    out.writeUTF(counter);
+                    out.writeLong(value);
+                });
+            }
+        }
+
+        @Override
+        public void close() {
+            // The counters live as long as their store
+        }
+    }
+
+    /**
+     * Queues, seen-URL sets and counters on the heap, by name: the live state of the
+     * store, or the copy a snapshot is written from.
+     */
+    private static class State {
+        private final InMemoryFrontierStore memory = new InMemoryFrontierStore();
+        private final ConcurrentMap<String, InMemoryFrontierStore.QueueStore> queues = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, DocIdStore> docIds = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, CounterStore> counters = new ConcurrentHashMap<>();
+
+        InMemoryFrontierStore.QueueStore queue(String name) {
+            return queues.computeIfAbsent(name, n -> (InMemoryFrontierStore.QueueStore) memory.openQueue(n));
+        }
+
+        DocIdStore docIds(String name) {
+            return docIds.computeIfAbsent(name, memory::openDocIds);
+        }
+
+        CounterStore counters(String name) {
+            return counters.computeIfAbsent(name, memory::openCounters);
+        }
+
+        void close() {
+            memory.close();
+        }
+    }
+}
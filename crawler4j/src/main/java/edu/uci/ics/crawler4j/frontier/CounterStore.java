@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.Map;
+
+/**
+ * Persistent backing of the {@link Counters}. The counters themselves are kept
+ * in memory; a store only loads them at startup and records their new values.
+ */
+public interface CounterStore {
+
+    Map<String, Long> load();
+
+    void set(String name, long value);
+
+    /**
+     * Records the values of several counters, written by the periodic checkpoint of the {@link Counters}.
+     */
+    default void setAll(Map<String, Long> values) {
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            set(entry.getKey(), entry.getValue());
+        }
+    }
+
+    void close();
+}
@@ -17,20 +17,28 @@
 
 package edu.uci.ics.crawler4j.frontier;
 
-import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
-import edu.uci.ics.crawler4j.db.DerbyDatabase;
 import edu.uci.ics.crawler4j.db.DerbyEnvironment;
-import edu.uci.ics.crawler4j.util.Util;
 
 /**
+ * Named counters of the crawl. Updates are lock free and stay in memory; for
+ * resumable crawls a background thread writes the changed counters to the store
+ * every {@link CrawlConfig#getCounterCheckpointIntervalMillis()} and once more on
+ * {@link #close()}. After a crash the stored values may lag by up to one interval.
+ *
  * @author Yasser Ganjisaffar
  */
 public class Counters {
@@ -42,17 +50,20 @@ public class Counters {
     }
 
     private static final String DATABASE_NAME = "Statistics";
-    protected DerbyDatabase statisticsDB = null;
-    protected DerbyEnvironment env;
+    protected CounterStore statisticsDB = null;
     private CrawlConfig config;
 
-    protected final Object mutex = new Object();
+    protected final ConcurrentMap<String, AtomicLong> counterValues = new ConcurrentHashMap<>();
 
-    protected Map<String, Long> counterValues;
+    /** Set by every update, cleared by the checkpoint which picks it up */
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private ScheduledExecutorService checkpointer;
 
     public Counters(DerbyEnvironment env, CrawlConfig config) {
-        this.env = env;
-        this.counterValues = new HashMap<>();
+        this(new DerbyFrontierStore(env, config.isResumableCrawling()), config);
+    }
+
+    public Counters(FrontierStore store, CrawlConfig config) {
         this.config = config;
 
     /*
@@ -61,52 +72,41 @@ public class Counters {
      * is crashed or terminated unexpectedly.
      */
         if (config.isResumableCrawling()) {
-            DerbyEnvironment.DerbyDatabaseConfig dbConfig = new DerbyEnvironment.DerbyDatabaseConfig();
-            dbConfig.setAllowCreate(true);
-            dbConfig.setTransactional(true);
-            dbConfig.setDeferredWrite(false);
-            statisticsDB = env.openDatabase(DATABASE_NAME, dbConfig);
+            statisticsDB = store.openCounters(DATABASE_NAME);
 
             try {
-                List<DerbyDatabase.DerbyCursorEntry> entries = statisticsDB.getAllCounters();
-                for (DerbyDatabase.DerbyCursorEntry entry : entries) {
-                    if (entry.getValue().length > 0) {
-                        String name = entry.getKey();
-                        long counterValue = Util.byteArray2Long(entry.getValue());
-                        counterValues.put(name, counterValue);
-                    }
+                for (Map.Entry<String, Long> entry : statisticsDB.load().entrySet()) {
+                    counterValues.put(entry.getKey(), new AtomicLong(entry.getValue()));
                 }
-            } catch (SQLException e) {
+            } catch (RuntimeException e) {
                 logger.error("Failed to load counters from database", e);
             }
+
+            long interval = config.getCounterCheckpointIntervalMillis();
+            checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Counters checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checkpointer.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MILLISECONDS);
         }
     }
 
+    private AtomicLong counter(String name) {
+        return counterValues.computeIfAbsent(name, n -> new AtomicLong());
+    }
+
     public long getValue(String name) {
-        synchronized (mutex) {
-            Long value = counterValues.get(name);
-            if (value == null) {
-                return 0;
-            }
-            return value;
+        AtomicLong value = counterValues.get(name);
+        if (value == null) {
+            return 0;
         }
+        return value.get();
     }
 
     public void setValue(String name, long value) {
-        synchronized (mutex) {
-            try {
-                counterValues.put(name, value);
-                if (statisticsDB != null) {
-                    statisticsDB.setCounter(name, value);
-                }
-            } catch (SQLException e) {
-                if (config.isHaltOnError()) {
-                    throw new RuntimeException(e);
-                } else {
-                    logger.error("Exception setting value", e);
-                }
-            }
-        }
+        counter(name).set(value);
+        dirty.set(true);
     }
 
     public void increment(String name) {
@@ -114,13 +114,43 @@ public class Counters {
     }
 
     public void increment(String name, long addition) {
-        synchronized (mutex) {
-            long prevValue = getValue(name);
-            setValue(name, prevValue + addition);
+        counter(name).addAndGet(addition);
+        dirty.set(true);
+    }
+
+    /**
+     * Writes the current values to the store if any counter changed since the last
+     * checkpoint. Called periodically and on close; does nothing for crawls which
+     * are not resumable.
+     */
+    public void checkpoint() {
+        if (statisticsDB == null || !dirty.getAndSet(false)) {
+            return;
+        }
+        Map<String, Long> values = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counterValues.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        try {
+            synchronized (this) {
+                statisticsDB.setAll(values);
+            }
+        } catch (RuntimeException e) {
+            dirty.set(true);
+            logger.error("Exception thrown while writing counters", e);
         }
     }
 
     public void close() {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(config.getCounterCheckpointIntervalMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkpoint();
         try {
             if (statisticsDB != null) {
                 statisticsDB.close();
@@ -129,4 +159,4 @@ public class Counters {
             logger.error("Exception thrown while trying to close statisticsDB", e);
         }
     }
-}
\ No newline at end of file
+}
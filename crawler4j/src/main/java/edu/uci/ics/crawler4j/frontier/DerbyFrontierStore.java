@@ -0,0 +1,599 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.db.DerbyCursor;
+import edu.uci.ics.crawler4j.db.DerbyDatabase;
+import edu.uci.ics.crawler4j.db.DerbyEnvironment;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.util.Util;
+
+/**
+ * {@link FrontierStore} that keeps every queue, the seen-URL set and the counters
+ * in their own Derby database under a {@link DerbyEnvironment}. This is the store
+ * used for resumable crawls.
+ */
+public class DerbyFrontierStore implements FrontierStore {
+    private static final Logger logger = LoggerFactory.getLogger(DerbyFrontierStore.class);
+
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    private static final int CURSOR_FETCH_SIZE = 1000;
+
+    private final DerbyEnvironment env;
+    private final boolean resumable;
+    private final boolean urlFingerprints;
+    private final boolean collisionCheck;
+    private final GroupCommitter groupCommitter;
+    private final boolean storeParentUrls;
+    private final boolean storeAnchors;
+
+    public DerbyFrontierStore(DerbyEnvironment env, boolean resumable) {
+        this.env = env;
+        this.resumable = resumable;
+        this.urlFingerprints = false;
+        this.collisionCheck = true;
+        this.groupCommitter = null;
+        this.storeParentUrls = true;
+        this.storeAnchors = true;
+    }
+
+    /**
+     * Store with the storage options of the given configuration: URL fingerprint keys
+     * for the seen-URL sets, group commit of the queue changes and the fields kept
+     * with the queued URLs.
+     */
+    public DerbyFrontierStore(DerbyEnvironment env, CrawlConfig config) {
+        this.env = env;
+        this.resumable = config.isResumableCrawling();
+        this.storeParentUrls = config.isFrontierParentUrls();
+        this.storeAnchors = config.isFrontierAnchors();
+        this.urlFingerprints = config.isUrlFingerprintKeys();
+        this.collisionCheck = config.isUrlFingerprintCollisionCheck();
+        if (resumable && config.getFrontierGroupCommitIntervalMillis() > 0) {
+            this.groupCommitter = new GroupCommitter(config.getFrontierGroupCommitIntervalMillis(),
+                                                     config.getFrontierGroupCommitMaxOperations());
+        } else {
+            this.groupCommitter = null;
+        }
+    }
+
+    public DerbyEnvironment getEnvironment() {
+        return env;
+    }
+
+    private DerbyDatabase openDatabase(String name, DerbyDatabase.Role role) {
+        DerbyEnvironment.DerbyDatabaseConfig dbConfig = new DerbyEnvironment.DerbyDatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        dbConfig.setTransactional(resumable);
+        dbConfig.setDeferredWrite(!resumable);
+        dbConfig.setRole(role);
+        return env.openDatabase(name, dbConfig);
+    }
+
+    @Override
+    public UrlQueueStore openQueue(String name) {
+        DerbyDatabase db = openDatabase(name, DerbyDatabase.Role.QUEUE);
+        if (groupCommitter != null && InProcessPagesDB.DATABASE_NAME.equals(name)) {
+            // A URL taken off the queue has to be in process for good before it is gone from the queue
+            groupCommitter.commitFirst(db);
+        }
+        return new QueueStore(db, groupCommitter, new WebURLDerbyBinding(storeParentUrls, storeAnchors));
+    }
+
+    @Override
+    public DocIdStore openDocIds(String name) {
+        DerbyDatabase db = openDatabase(name, urlFingerprints ? DerbyDatabase.Role.FINGERPRINT_DOC_IDS :
+                                              DerbyDatabase.Role.DOC_IDS);
+        try {
+            boolean otherMode = urlFingerprints ? db.hasTable("data_table") && db.count() > 0 :
+                                db.hasTable("fingerprint_table") && db.countFingerprints() > 0;
+            if (otherMode) {
+                throw new IllegalStateException(
+                    "Database " + name + " was created " + (urlFingerprints ? "without" : "with") +
+                    " URL fingerprint keys, delete the crawl storage folder or change the setting back");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open DocIDs database", e);
+        }
+        return urlFingerprints ? new FingerprintDocIds(db, collisionCheck) : new DocIds(db);
+    }
+
+    @Override
+    public CounterStore openCounters(String name) {
+        return new CounterTable(openDatabase(name, DerbyDatabase.Role.COUNTERS));
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return resumable;
+    }
+
+    @Override
+    public void close() {
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
+        env.close();
+    }
+
+    /**
+     * A queue in a Derby database, keyed by {@link QueueKey} so that the primary key
+     * index is the crawl order. With a {@link GroupCommitter} every operation runs
+     * on its writer thread and the writes are committed in groups; otherwise each
+     * operation runs on the calling thread and commits on its own.
+     */
+    static class QueueStore implements UrlQueueStore {
+        private final DerbyDatabase urlsDB;
+        private final GroupCommitter groupCommitter;
+        private final WebURLDerbyBinding webURLBinding;
+
+        QueueStore(DerbyDatabase urlsDB, GroupCommitter groupCommitter, WebURLDerbyBinding webURLBinding) {
+            this.urlsDB = urlsDB;
+            this.groupCommitter = groupCommitter;
+            this.webURLBinding = webURLBinding;
+            migrateStringKeys();
+        }
+
+        /**
+         * Earlier versions kept the queue in the VARCHAR keyed data table, under keys
+         * which did not sort in crawl order. Moves such entries to the queue table.
+         */
+        private void migrateStringKeys() {
+            try {
+                if (!urlsDB.hasTable("data_table")) {
+                    return;
+                }
+                long migrated = 0;
+                List<DerbyDatabase.DerbyCursorEntry> entries;
+                while (!(entries = urlsDB.getFirstNEntries(MIGRATION_BATCH_SIZE)).isEmpty()) {
+                    List<DerbyDatabase.DerbyQueueEntry> queueEntries = new ArrayList<>(entries.size());
+                    for (DerbyDatabase.DerbyCursorEntry entry : entries) {
+                        WebURL url = webURLBinding.entryToObject(entry.getValue());
+                        if (url != null) {
+                            queueEntries.add(new DerbyDatabase.DerbyQueueEntry(QueueKey.of(url),
+                                                                               entry.getValue()));
+                        }
+                    }
+                    urlsDB.putQueueEntries(queueEntries);
+                    urlsDB.deleteUpTo(entries.get(entries.size() - 1).getKey());
+                    migrated += queueEntries.size();
+                }
+                if (migrated > 0) {
+                    logger.info("Moved {} queued URLs to the BIGINT keyed queue table", migrated);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to migrate queued URLs", e);
+            }
+        }
+
+        private <T> T read(GroupCommitter.SqlCall<T> call) throws SQLException {
+            return groupCommitter == null ? call.call() : groupCommitter.call(urlsDB, call);
+        }
+
+        private void write(GroupCommitter.SqlCall<?> call) throws SQLException {
+            if (groupCommitter == null) {
+                call.call();
+            } else {
+                groupCommitter.submit(urlsDB, call);
+            }
+        }
+
+        private List<WebURL> toURLs(List<DerbyDatabase.DerbyQueueEntry> entries) {
+            List<WebURL> results = new ArrayList<>(entries.size());
+            for (DerbyDatabase.DerbyQueueEntry entry : entries) {
+                if (entry.getValue().length > 0) {
+                    results.add(webURLBinding.entryToObject(entry.getValue()));
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public void put(WebURL url) {
+            try {
+                long key = QueueKey.of(url);
+                byte[] value = webURLBinding.objectToEntry(url);
+                write(() -> {
+                    urlsDB.putQueueEntry(key, value);
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to put URL in database", e);
+            }
+        }
+
+        @Override
+        public void putAll(List<WebURL> urls) {
+            try {
+                List<DerbyDatabase.DerbyQueueEntry> entries = new ArrayList<>(urls.size());
+                for (WebURL url : urls) {
+                    entries.add(new DerbyDatabase.DerbyQueueEntry(QueueKey.of(url), webURLBinding.objectToEntry(url)));
+                }
+                write(() -> {
+                    urlsDB.putQueueEntries(entries);
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to put URLs in database", e);
+            }
+        }
+
+        @Override
+        public List<WebURL> get(int max) {
+            try {
+                return toURLs(read(() -> urlsDB.getFirstQueueEntries(max)));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get URLs from database", e);
+            }
+        }
+
+        @Override
+        public void delete(int count) {
+            try {
+                write(() -> {
+                    urlsDB.deleteFirstQueueEntries(count);
+                    return null;
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete URLs from database", e);
+            }
+        }
+
+        @Override
+        public List<WebURL> poll(int max) {
+            try {
+                return toURLs(read(() -> urlsDB.pollFirstQueueEntries(max)));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to poll URLs from database", e);
+            }
+        }
+
+        @Override
+        public boolean remove(WebURL url) {
+            try {
+                long key = QueueKey.of(url);
+                return read(() -> urlsDB.deleteQueueEntry(key));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to remove URL from database", e);
+            }
+        }
+
+        @Override
+        public int removeAll(List<WebURL> urls) {
+            try {
+                List<Long> keys = new ArrayList<>(urls.size());
+                for (WebURL url : urls) {
+                    keys.add(QueueKey.of(url));
+                }
+                return read(() -> urlsDB.deleteQueueKeys(keys));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to remove URLs from database", e);
+            }
+        }
+
+        @Override
+        public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+            if (groupCommitter != null) {
+                // The cursor has a connection of its own and only sees committed entries
+                groupCommitter.flush();
+            }
+            try (DerbyCursor<DerbyDatabase.DerbyQueueEntry> cursor = urlsDB.openQueueCursor(batchSize)) {
+                List<WebURL> batch = new ArrayList<>(batchSize);
+                while (cursor.hasNext()) {
+                    byte[] value = cursor.next().getValue();
+                    if (value.length > 0) {
+                        batch.add(webURLBinding.entryToObject(value));
+                    }
+                    if (batch.size() == batchSize) {
+                        action.accept(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    action.accept(batch);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to read URLs from database", e);
+            }
+        }
+
+        /**
+         * Moves the entries to another Derby queue as they are, without decoding
+         * them: both queues are keyed by {@link QueueKey}. The moved entries are
+         * committed in the target before this queue is cleared.
+         */
+        @Override
+        public long moveAllTo(UrlQueueStore target, int batchSize) {
+            if (!(target instanceof QueueStore)) {
+                return UrlQueueStore.super.moveAllTo(target, batchSize);
+            }
+            QueueStore targetStore = (QueueStore) target;
+            if (groupCommitter != null) {
+                groupCommitter.flush();
+            }
+            long moved = 0;
+            try (DerbyCursor<DerbyDatabase.DerbyQueueEntry> cursor = urlsDB.openQueueCursor(batchSize)) {
+                List<DerbyDatabase.DerbyQueueEntry> batch = new ArrayList<>(batchSize);
+                while (cursor.hasNext()) {
+                    batch.add(cursor.next());
+                    if (batch.size() == batchSize || !cursor.hasNext()) {
+                        List<DerbyDatabase.DerbyQueueEntry> entries = batch;
+                        targetStore.write(() -> {
+                            targetStore.urlsDB.putQueueEntries(entries);
+                            return null;
+                        });
+                        moved += entries.size();
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to move URLs to " + target, e);
+            }
+            if (targetStore.groupCommitter != null) {
+                targetStore.groupCommitter.flush();
+            }
+            clear();
+            return moved;
+        }
+
+        @Override
+        public void clear() {
+            try {
+                read(urlsDB::deleteAllQueueEntries);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete URLs from database", e);
+            }
+        }
+
+        /**
+         * The length is maintained by the database and read without a query; with a
+         * {@link GroupCommitter} it counts the changes committed so far.
+         */
+        @Override
+        public long getLength() {
+            return urlsDB.countQueueEntries();
+        }
+
+        @Override
+        public void close() {
+            if (groupCommitter != null) {
+                groupCommitter.flush();
+            }
+            urlsDB.close();
+        }
+    }
+
+    static class DocIds implements DocIdStore {
+        private final DerbyDatabase docIDsDB;
+
+        DocIds(DerbyDatabase docIDsDB) {
+            this.docIDsDB = docIDsDB;
+        }
+
+        @Override
+        public int get(String url) {
+            try {
+                byte[] value = docIDsDB.get(url);
+                if (value != null && value.length > 0) {
+                    return Util.byteArray2Int(value);
+                }
+                return -1;
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get DocID from database", e);
+            }
+        }
+
+        @Override
+        public void put(String url, int docId) {
+            try {
+                docIDsDB.put(url, Util.int2ByteArray(docId));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to put DocID in database", e);
+            }
+        }
+
+        @Override
+        public void putAll(Map<String, Integer> docIds) {
+            try {
+                List<DerbyDatabase.DerbyCursorEntry> entries = new ArrayList<>(docIds.size());
+                for (Map.Entry<String, Integer> entry : docIds.entrySet()) {
+                    entries.add(new DerbyDatabase.DerbyCursorEntry(entry.getKey(),
+                                                                   Util.int2ByteArray(entry.getValue())));
+                }
+                docIDsDB.putAll(entries);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to put DocIDs in database", e);
+            }
+        }
+
+        @Override
+        public long count() {
+            try {
+                return docIDsDB.count();
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get database count", e);
+            }
+        }
+
+        @Override
+        public void forEachUrl(Consumer<String> action) {
+            try (DerbyCursor<DerbyDatabase.DerbyCursorEntry> cursor = docIDsDB.openCursor(CURSOR_FETCH_SIZE)) {
+                while (cursor.hasNext()) {
+                    action.accept(cursor.next().getKey());
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to read DocIDs from database", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            docIDsDB.close();
+        }
+    }
+
+    /**
+     * Seen-URL set keyed by {@link UrlFingerprint}s: every lookup is a probe of a
+     * BIGINT primary key. Only URLs whose fingerprint is already taken by another
+     * URL are stored in full, in the collision table.
+     */
+    static class FingerprintDocIds implements DocIdStore {
+        private final DerbyDatabase docIDsDB;
+        private final boolean collisionCheck;
+
+        FingerprintDocIds(DerbyDatabase docIDsDB, boolean collisionCheck) {
+            this.docIDsDB = docIDsDB;
+            this.collisionCheck = collisionCheck;
+        }
+
+        private DerbyDatabase.FingerprintEntry entry(String url, int docId) {
+            UrlFingerprint fingerprint = UrlFingerprint.of(url);
+            return new DerbyDatabase.FingerprintEntry(fingerprint.getFingerprint(),
+                                                      collisionCheck ? fingerprint.getCheckHash() : 0, docId);
+        }
+
+        @Override
+        public int get(String url) {
+            try {
+                DerbyDatabase.FingerprintEntry key = entry(url, -1);
+                DerbyDatabase.FingerprintEntry stored = docIDsDB.getFingerprint(key.getFingerprint());
+                if (stored == null) {
+                    return -1;
+                }
+                if (stored.getCheckHash() == key.getCheckHash()) {
+                    return stored.getDocId();
+                }
+                return docIDsDB.getCollision(url);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get DocID from database", e);
+            }
+        }
+
+        @Override
+        public void put(String url, int docId) {
+            try {
+                put(url, entry(url, docId));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to put DocID in database", e);
+            }
+        }
+
+        private void put(String url, DerbyDatabase.FingerprintEntry entry) throws SQLException {
+            if (docIDsDB.insertFingerprint(entry)) {
+                return;
+            }
+            DerbyDatabase.FingerprintEntry stored = docIDsDB.getFingerprint(entry.getFingerprint());
+            if (stored != null && stored.getCheckHash() != entry.getCheckHash()) {
+                docIDsDB.putCollision(url, entry.getDocId());
+            } else {
+                docIDsDB.updateFingerprint(entry);
+            }
+        }
+
+        @Override
+        public void putAll(Map<String, Integer> docIds) {
+            try {
+                List<DerbyDatabase.FingerprintEntry> entries = new ArrayList<>(docIds.size());
+                for (Map.Entry<String, Integer> docId : docIds.entrySet()) {
+                    entries.add(entry(docId.getKey(), docId.getValue()));
+                }
+                if (!docIDsDB.insertFingerprints(entries)) {
+                    // A fingerprint collided, write the entries one by one to sort it out
+                    int i = 0;
+                    for (String url : docIds.keySet()) {
+                        put(url, entries.get(i++));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to put DocIDs in database", e);
+            }
+        }
+
+        @Override
+        public long count() {
+            try {
+                return docIDsDB.countFingerprints() + docIDsDB.countCollisions();
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get database count", e);
+            }
+        }
+
+        /**
+         * The URLs themselves are not stored.
+         *
+         * @throws UnsupportedOperationException always
+         */
+        @Override
+        public void forEachUrl(Consumer<String> action) {
+            throw new UnsupportedOperationException("URL fingerprint keyed store does not keep the URLs");
+        }
+
+        @Override
+        public void close() {
+            docIDsDB.close();
+        }
+    }
+
+    static class CounterTable implements CounterStore {
+        private final DerbyDatabase statisticsDB;
+
+        CounterTable(DerbyDatabase statisticsDB) {
+            this.statisticsDB = statisticsDB;
+        }
+
+        @Override
+        public Map<String, Long> load() {
+            try {
+                Map<String, Long> values = new HashMap<>();
+                for (DerbyDatabase.DerbyCursorEntry entry : statisticsDB.getAllCounters()) {
+                    if (entry.getValue().length > 0) {
+                        values.put(entry.getKey(), Util.byteArray2Long(entry.getValue()));
+                    }
+                }
+                return values;
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to load counters from database", e);
+            }
+        }
+
+        @Override
+        public void set(String name, long value) {
+            try {
+                statisticsDB.setCounter(name, value);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to set counter in database", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            statisticsDB.close();
+        }
+    }
+}
@@ -17,15 +17,27 @@
 
 package edu.uci.ics.crawler4j.frontier;
 
-import java.sql.SQLException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
-import edu.uci.ics.crawler4j.db.DerbyDatabase;
 import edu.uci.ics.crawler4j.db.DerbyEnvironment;
-import edu.uci.ics.crawler4j.util.Util;
+import edu.uci.ics.crawler4j.util.ScalableBloomFilter;
 
 /**
  * @author Yasser Ganjisaffar
@@ -34,28 +46,133 @@ import edu.uci.ics.crawler4j.util.Util;
 public class DocIDServer {
     private static final Logger logger = LoggerFactory.getLogger(DocIDServer.class);
 
-    private final DerbyDatabase docIDsDB;
+    private final DocIdStore docIDsDB;
     private static final String DATABASE_NAME = "DocIDs";
+    private static final String BLOOM_FILTER_FILE_NAME = DATABASE_NAME + ".bloom";
+    private static final String HIGH_WATER_COUNTER = "lastDocID";
+    /** Docids reserved at a time by a write of the high-water mark */
+    private static final int DOC_ID_RESERVATION_BLOCK = 1000;
 
     private final Object mutex = new Object();
 
     private CrawlConfig config;
     private int lastDocID;
 
+    /**
+     * Persisted high-water mark of the docids, so that a restart does not have to
+     * count the seen URLs. It is written ahead of the docids in blocks of
+     * {@link #DOC_ID_RESERVATION_BLOCK}, so after a crash a block of docids may
+     * be skipped but none is assigned twice. Null unless the crawl is resumable.
+     */
+    private final CounterStore highWater;
+    private int reservedDocID;
+
+    /**
+     * Answers most lookups of unseen URLs without reading the store. Every URL is
+     * added to the filter before it is written to the store, so the filter never
+     * misses a seen URL. Null if the filter is disabled.
+     */
+    private final ScalableBloomFilter seenUrls;
+    private final File bloomFilterFile;
+    private final LongAdder bloomFilterNegatives = new LongAdder();
+    private final LongAdder bloomFilterFalsePositives = new LongAdder();
+
     public DocIDServer(DerbyEnvironment env, CrawlConfig config) {
+        this(new DerbyFrontierStore(env, config), config);
+    }
+
+    public DocIDServer(FrontierStore store, CrawlConfig config) {
         this.config = config;
-        DerbyEnvironment.DerbyDatabaseConfig dbConfig = new DerbyEnvironment.DerbyDatabaseConfig();
-        dbConfig.setAllowCreate(true);
-        dbConfig.setTransactional(config.isResumableCrawling());
-        dbConfig.setDeferredWrite(!config.isResumableCrawling());
         lastDocID = 0;
-        docIDsDB = env.openDatabase(DATABASE_NAME, dbConfig);
+        docIDsDB = store.openDocIds(DATABASE_NAME);
         if (config.isResumableCrawling()) {
-            int docCount = getDocCount();
-            if (docCount > 0) {
-                logger.info("Loaded {} URLs that had been detected in previous crawl.", docCount);
-                lastDocID = docCount;
+            long start = System.currentTimeMillis();
+            highWater = store.openCounters(DATABASE_NAME);
+            Long savedDocID = highWater.load().get(HIGH_WATER_COUNTER);
+            if (savedDocID != null) {
+                lastDocID = savedDocID.intValue();
+            } else {
+                // Crawl storage of an earlier version, count the URLs once
+                lastDocID = Math.max(0, getDocCount());
+            }
+            if (lastDocID > 0) {
+                logger.info("Loaded {} URLs that had been detected in previous crawl in {} ms.", lastDocID,
+                            System.currentTimeMillis() - start);
             }
+        } else {
+            highWater = null;
+        }
+        reservedDocID = lastDocID;
+
+        if (config.isSeenUrlsBloomFilter()) {
+            bloomFilterFile = store.isPersistent() ?
+                              new File(config.getCrawlStorageFolder() + "/frontier", BLOOM_FILTER_FILE_NAME) :
+                              null;
+            seenUrls = openBloomFilter();
+        } else {
+            bloomFilterFile = null;
+            seenUrls = null;
+        }
+    }
+
+    /**
+     * Loads the bloom filter saved by the previous run. The file records the last
+     * docid it was saved with; if the crawl got further than that (the crawler was
+     * not shut down cleanly) the file is stale and the filter is rebuilt from the store.
+     *
+     * @return null if the filter can not be rebuilt because the store does not keep the urls
+     */
+    private ScalableBloomFilter openBloomFilter() {
+        long docCount = lastDocID;
+        if (bloomFilterFile != null && bloomFilterFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(bloomFilterFile)))) {
+                long savedDocID = in.readLong();
+                if (savedDocID == lastDocID) {
+                    ScalableBloomFilter filter = ScalableBloomFilter.readFrom(in);
+                    logger.info("Loaded the seen URLs bloom filter of {} URLs", savedDocID);
+                    return filter;
+                }
+                logger.info("Seen URLs bloom filter was saved at docid {} but the crawl is at {}, rebuilding it",
+                            savedDocID, lastDocID);
+            } catch (IOException e) {
+                logger.warn("Could not load the seen URLs bloom filter, rebuilding it: {}", e.getMessage());
+            }
+        }
+
+        ScalableBloomFilter filter = new ScalableBloomFilter(
+            Math.max(config.getSeenUrlsBloomFilterExpectedUrls(), docCount),
+            config.getSeenUrlsBloomFilterFalsePositiveRate());
+        if (docCount > 0) {
+            long start = System.currentTimeMillis();
+            try {
+                docIDsDB.forEachUrl(filter::put);
+            } catch (UnsupportedOperationException e) {
+                // Without the urls the filter would miss every url seen so far
+                logger.warn("Seen URLs bloom filter can not be rebuilt from the DocIDs store, disabling it: {}",
+                            e.getMessage());
+                return null;
+            }
+            logger.info("Rebuilt the seen URLs bloom filter from {} URLs in {} ms", docCount,
+                        System.currentTimeMillis() - start);
+        }
+        return filter;
+    }
+
+    private void saveBloomFilter() {
+        File tmpFile = new File(bloomFilterFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                synchronized (mutex) {
+                    out.writeLong(lastDocID);
+                }
+                seenUrls.writeTo(out);
+            }
+            Files.move(tmpFile.toPath(), bloomFilterFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Exception thrown while saving the seen URLs bloom filter", e);
         }
     }
 
@@ -66,20 +183,24 @@ public class DocIDServer {
      * @return the docid of the url if it is seen before. Otherwise -1 is returned.
      */
     public int getDocId(String url) {
-        synchronized (mutex) {
-            try {
-                byte[] value = docIDsDB.get(url);
-                if (value != null && value.length > 0) {
-                    return Util.byteArray2Int(value);
-                }
+        // Lookups do not take the mutex: the stores are safe for concurrent readers,
+        // only the assignment of new docids has to be serialized.
+        if (seenUrls != null && !seenUrls.mightContain(url)) {
+            bloomFilterNegatives.increment();
+            return -1;
+        }
+        try {
+            int docId = docIDsDB.get(url);
+            if (docId < 0 && seenUrls != null) {
+                bloomFilterFalsePositives.increment();
+            }
+            return docId;
+        } catch (RuntimeException e) {
+            if (config.isHaltOnError()) {
+                throw new RuntimeException(e);
+            } else {
+                logger.error("Exception thrown while getting DocID", e);
                 return -1;
-            } catch (SQLException e) {
-                if (config.isHaltOnError()) {
-                    throw new RuntimeException(e);
-                } else {
-                    logger.error("Exception thrown while getting DocID", e);
-                    return -1;
-                }
             }
         }
     }
@@ -94,9 +215,11 @@ public class DocIDServer {
                 }
 
                 ++lastDocID;
-                docIDsDB.put(url, Util.int2ByteArray(lastDocID));
+                reserveDocIds(lastDocID);
+                addToBloomFilter(url);
+                docIDsDB.put(url, lastDocID);
                 return lastDocID;
-            } catch (SQLException e) {
+            } catch (RuntimeException e) {
                 if (config.isHaltOnError()) {
                     throw new RuntimeException(e);
                 } else {
@@ -107,6 +230,52 @@ public class DocIDServer {
         }
     }
 
+    /**
+     * Returns the docids of the given urls, assigning new docids to the urls that
+     * have not been seen before. The new docids are written to the store as one batch.
+     *
+     * @param urls the canonical URLs, duplicates get the same docid.
+     * @return the docids in the order of {@code urls}; -1 for urls that could not be assigned one.
+     */
+    public int[] assignDocIds(List<String> urls) {
+        synchronized (mutex) {
+            int[] docIds = new int[urls.size()];
+            Map<String, Integer> newDocIds = new LinkedHashMap<>();
+            for (int i = 0; i < docIds.length; i++) {
+                String url = urls.get(i);
+                Integer docId = newDocIds.get(url);
+                if (docId == null) {
+                    docId = getDocId(url);
+                    if (docId <= 0) {
+                        docId = ++lastDocID;
+                        newDocIds.put(url, docId);
+                    }
+                }
+                docIds[i] = docId;
+            }
+
+            try {
+                reserveDocIds(lastDocID);
+                for (String url : newDocIds.keySet()) {
+                    addToBloomFilter(url);
+                }
+                docIDsDB.putAll(newDocIds);
+            } catch (RuntimeException e) {
+                if (config.isHaltOnError()) {
+                    throw new RuntimeException(e);
+                } else {
+                    logger.error("Exception thrown while assigning DocIDs", e);
+                    for (int i = 0; i < docIds.length; i++) {
+                        if (newDocIds.containsKey(urls.get(i))) {
+                            docIds[i] = -1;
+                        }
+                    }
+                }
+            }
+            return docIds;
+        }
+    }
+
     public void addUrlAndDocId(String url, int docId) {
         synchronized (mutex) {
             if (docId <= lastDocID) {
@@ -124,9 +293,11 @@ public class DocIDServer {
             }
 
             try {
-                docIDsDB.put(url, Util.int2ByteArray(docId));
+                reserveDocIds(docId);
+                addToBloomFilter(url);
+                docIDsDB.put(url, docId);
                 lastDocID = docId;
-            } catch (SQLException e) {
+            } catch (RuntimeException e) {
                 if (config.isHaltOnError()) {
                     throw new RuntimeException(e);
                 } else {
@@ -136,6 +307,22 @@ public class DocIDServer {
         }
     }
 
+    /**
+     * Moves the persisted high-water mark past {@code docId} before a docid up to it is written.
+     */
+    private void reserveDocIds(int docId) {
+        if (highWater != null && docId > reservedDocID) {
+            highWater.set(HIGH_WATER_COUNTER, (long) docId + DOC_ID_RESERVATION_BLOCK);
+            reservedDocID = docId + DOC_ID_RESERVATION_BLOCK;
+        }
+    }
+
+    private void addToBloomFilter(String url) {
+        if (seenUrls != null) {
+            seenUrls.put(url);
+        }
+    }
+
     public boolean isSeenBefore(String url) {
         return getDocId(url) != -1;
     }
@@ -143,14 +330,53 @@ public class DocIDServer {
     public final int getDocCount() {
         try {
             return (int) docIDsDB.count();
-        } catch (SQLException e) {
+        } catch (RuntimeException e) {
             logger.error("Exception thrown while getting DOC Count", e);
             return -1;
         }
     }
 
+    /**
+     * @return the number of lookups the bloom filter answered without reading the store.
+     */
+    public long getBloomFilterNegatives() {
+        return bloomFilterNegatives.sum();
+    }
+
+    /**
+     * @return the number of lookups of unseen URLs the bloom filter let through to the store.
+     */
+    public long getBloomFilterFalsePositives() {
+        return bloomFilterFalsePositives.sum();
+    }
+
+    /**
+     * Observed false positive rate of the seen URLs bloom filter: the share of lookups
+     * of unseen URLs which still had to read the store. 0 if the filter is disabled.
+     */
+    public double getBloomFilterFalsePositiveRate() {
+        long falsePositives = bloomFilterFalsePositives.sum();
+        long lookups = falsePositives + bloomFilterNegatives.sum();
+        return lookups == 0 ? 0 : (double) falsePositives / lookups;
+    }
+
     public void close() {
+        if (seenUrls != null) {
+            logger.info("Seen URLs bloom filter: {} lookups skipped the database, " +
+                        "observed false positive rate {} (expected {})", getBloomFilterNegatives(),
+                        String.format("%.5f", getBloomFilterFalsePositiveRate()),
+                        String.format("%.5f", seenUrls.expectedFpp()));
+            if (bloomFilterFile != null) {
+                saveBloomFilter();
+            }
+        }
         try {
+            if (highWater != null) {
+                synchronized (mutex) {
+                    highWater.set(HIGH_WATER_COUNTER, lastDocID);
+                }
+                highWater.close();
+            }
             docIDsDB.close();
         } catch (Exception e) {
             logger.error("Exception thrown while closing DocIDServer", e);
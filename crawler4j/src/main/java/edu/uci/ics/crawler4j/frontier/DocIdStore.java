@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The set of seen URLs, mapping each canonical URL to its docid.
+ * Assigning new docids is left to the {@link DocIDServer}.
+ */
+public interface DocIdStore {
+
+    /**
+     * @return the docid of the url, or -1 if the url has not been seen.
+     */
+    int get(String url);
+
+    void put(String url, int docId);
+
+    /**
+     * Records the docids of URLs which have not been seen before. Stores backed by
+     * a database should write them as a single batch.
+     */
+    default void putAll(Map<String, Integer> docIds) {
+        for (Map.Entry<String, Integer> entry : docIds.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    long count();
+
+    /**
+     * Passes every seen url to {@code action}. Used to rebuild indexes derived from
+     * the set, such as the bloom filter of the {@link DocIDServer}.
+     *
+     * @throws UnsupportedOperationException if the store keeps fingerprints instead of the urls
+     */
+    void forEachUrl(Consumer<String> action);
+
+    void close();
+}
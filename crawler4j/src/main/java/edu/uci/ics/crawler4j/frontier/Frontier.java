@@ -17,13 +17,23 @@
 
 package edu.uci.ics.crawler4j.frontier;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
 import edu.uci.ics.crawler4j.db.DerbyEnvironment;
+import edu.uci.ics.crawler4j.fetcher.HostRateLimiter;
+import edu.uci.ics.crawler4j.frontier.priority.UrlPrioritizer;
 import edu.uci.ics.crawler4j.url.WebURL;
 
 /**
@@ -34,46 +44,112 @@ public class Frontier {
     protected static final Logger logger = LoggerFactory.getLogger(Frontier.class);
 
     private static final String DATABASE_NAME = "PendingURLsDB";
-    private static final int IN_PROCESS_RESCHEDULE_BATCH_SIZE = 100;
+    private static final String SEGMENTED_QUEUE_FOLDER = "PendingURLsQueue";
+    private static final int IN_PROCESS_RESCHEDULE_BATCH_SIZE = 1000;
     private final CrawlConfig config;
     protected WorkQueues workQueues;
 
     protected InProcessPagesDB inProcessPages;
 
-    protected final Object mutex = new Object();
-    protected final Object waitingList = new Object();
+    /** Per-host queues of the URLs taken from the work queues, null if there is no politeness delay */
+    protected PolitenessScheduler politenessScheduler;
 
-    protected boolean isFinished = false;
+    /** Buffer of URLs taken off the work queues in the background, null if prefetching is off */
+    protected UrlPrefetcher prefetcher;
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchMisses = new AtomicLong();
+
+    /** Local deques of the crawler threads, null if work stealing is off */
+    protected WorkStealingQueues workStealingQueues;
+
+    /** Scores the scheduled URLs, null if their priority is left alone */
+    protected final UrlPrioritizer urlPrioritizer;
+
+    /** The queue of the work queues if it is kept in priority buckets, else null */
+    protected BucketedPriorityQueueStore priorityQueue;
+
+    /** URLs handed out to the crawlers, counted against maxPagesToFetch if there is a prioritizer */
+    private final AtomicLong handedOutPages = new AtomicLong();
+
+    /**
+     * Guards the queues; crawler threads without URLs wait on {@link #urlsAvailable},
+     * which is signalled whenever URLs are scheduled and when the crawl finishes.
+     */
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition urlsAvailable = lock.newCondition();
+
+    protected volatile boolean isFinished = false;
 
     protected long scheduledPages;
 
     protected Counters counters;
 
     public Frontier(DerbyEnvironment env, CrawlConfig config) {
+        this(new DerbyFrontierStore(env, config.isResumableCrawling()), config);
+    }
+
+    public Frontier(FrontierStore store, CrawlConfig config) {
+        this(store, config, null);
+    }
+
+    /**
+     * @param hostRateLimiter supplies the politeness delay of each host, including the
+     *            Crawl-delay of its robots.txt; null gives every host the politeness
+     *            delay of the configuration.
+     */
+    public Frontier(FrontierStore store, CrawlConfig config, HostRateLimiter hostRateLimiter) {
         this.config = config;
-        this.counters = new Counters(env, config);
+        this.counters = new Counters(store, config);
+        this.urlPrioritizer = config.getUrlPrioritizer();
         try {
-            workQueues = new WorkQueues(env, DATABASE_NAME, config.isResumableCrawling());
+            if (config.isSegmentedQueue()) {
+                File queueFolder = new File(config.getCrawlStorageFolder() + "/frontier", SEGMENTED_QUEUE_FOLDER);
+                workQueues = new WorkQueues(new SegmentedQueueStore(
+                    queueFolder, config.getSegmentedQueueSegmentSize(),
+                    new WebURLDerbyBinding(config.isFrontierParentUrls(), config.isFrontierAnchors())));
+            } else if (config.isTieredFrontier()) {
+                workQueues = new WorkQueues(new TieredQueueStore(
+                    store.openQueue(DATABASE_NAME), config.getTieredFrontierHeadSize(),
+                    config.getTieredFrontierSpillBatchSize()));
+            } else if (urlPrioritizer != null) {
+                priorityQueue = new BucketedPriorityQueueStore(
+                    config.isResumableCrawling() ? store.openQueue(DATABASE_NAME) : null);
+                workQueues = new WorkQueues(priorityQueue);
+            } else {
+                workQueues = new WorkQueues(store, DATABASE_NAME);
+            }
+            if (config.getHostQueuesCapacity() > 0) {
+                if (hostRateLimiter != null) {
+                    politenessScheduler = new PolitenessScheduler(hostRateLimiter::getDelay);
+                } else if (config.getPolitenessDelay() > 0) {
+                    politenessScheduler = new PolitenessScheduler(config.getPolitenessDelay());
+                }
+            }
             if (config.isResumableCrawling()) {
                 scheduledPages = counters.getValue(Counters.ReservedCounterNames.SCHEDULED_PAGES);
-                inProcessPages = new InProcessPagesDB(env);
-                long numPreviouslyInProcessPages = inProcessPages.getLength();
-                if (numPreviouslyInProcessPages > 0) {
-                    logger.info("Rescheduling {} URLs from previous crawl.",
-                                numPreviouslyInProcessPages);
-                    scheduledPages -= numPreviouslyInProcessPages;
-
-                    List<WebURL> urls = inProcessPages.get(IN_PROCESS_RESCHEDULE_BATCH_SIZE);
-                    while (!urls.isEmpty()) {
-                        scheduleAll(urls);
-                        inProcessPages.delete(urls.size());
-                        urls = inProcessPages.get(IN_PROCESS_RESCHEDULE_BATCH_SIZE);
-                    }
+                handedOutPages.set(counters.getValue(Counters.ReservedCounterNames.PROCESSED_PAGES));
+                inProcessPages = new InProcessPagesDB(store);
+                // The in-process URLs are already counted as scheduled, they only go back to the queue
+                long start = System.currentTimeMillis();
+                long rescheduled = inProcessPages.moveAllTo(workQueues, IN_PROCESS_RESCHEDULE_BATCH_SIZE);
+                if (rescheduled > 0) {
+                    logger.info("Rescheduled {} URLs from previous crawl in {} ms.", rescheduled,
+                                System.currentTimeMillis() - start);
                 }
             } else {
                 inProcessPages = null;
                 scheduledPages = 0;
             }
+            if (config.getFrontierPrefetchSize() > 0) {
+                int lowWaterMark = config.getFrontierPrefetchLowWaterMark() > 0 ?
+                                   config.getFrontierPrefetchLowWaterMark() : config.getFrontierPrefetchSize() / 2;
+                prefetcher = new UrlPrefetcher(lock, urlsAvailable, this::takeFromWorkQueues,
+                                               config.getFrontierPrefetchSize(), Math.max(1, lowWaterMark));
+                prefetcher.start();
+            }
+            if (config.isWorkStealing()) {
+                workStealingQueues = new WorkStealingQueues(config.getLocalQueueCapacity());
+            }
         } catch (Exception e) {
             logger.error("Error while initializing the Frontier", e);
             workQueues = null;
@@ -81,80 +157,314 @@ public class Frontier {
     }
 
     public void scheduleAll(List<WebURL> urls) {
-        int maxPagesToFetch = config.getMaxPagesToFetch();
-        synchronized (mutex) {
-            int newScheduledPage = 0;
+        int newScheduledPage = reserveScheduledPages(urls.size());
+        if (newScheduledPage > 0) {
+            List<WebURL> scheduled = urls.subList(0, newScheduledPage);
+            prioritize(scheduled);
+            // Written outside of the lock, so that other threads can take their next URLs meanwhile
+            workQueues.putAll(scheduled);
+            counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES, newScheduledPage);
+            signalScheduled(true);
+        }
+    }
+
+    /**
+     * Schedules URLs which the calling crawler thread keeps in its local deque of the
+     * {@link WorkStealingQueues} instead of the work queues. They count as scheduled
+     * and, for resumable crawls, as in process right away.
+     *
+     * @return the leading URLs which fit in maxPagesToFetch.
+     */
+    public List<WebURL> assign(List<WebURL> urls) {
+        int newScheduledPage = reserveHandedOutPages(reserveScheduledPages(urls.size()));
+        List<WebURL> assigned = urls.subList(0, newScheduledPage);
+        if (newScheduledPage > 0) {
+            prioritize(assigned);
+            counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES, newScheduledPage);
+            if (inProcessPages != null) {
+                inProcessPages.putAll(assigned);
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Puts URLs which were handed out or assigned, but not processed, back on the
+     * work queues; they were counted as scheduled already.
+     */
+    public void reschedule(List<WebURL> urls) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        workQueues.putAll(urls);
+        if (inProcessPages != null) {
             for (WebURL url : urls) {
-                if ((maxPagesToFetch > 0) &&
-                    ((scheduledPages + newScheduledPage) >= maxPagesToFetch)) {
-                    break;
+                inProcessPages.removeURL(url);
+            }
+        }
+        signalScheduled(true);
+    }
+
+    /**
+     * @return how many of {@code count} new URLs fit in maxPagesToFetch, which are
+     *         counted as scheduled.
+     */
+    private int reserveScheduledPages(int count) {
+        int maxPagesToFetch = config.getMaxPagesToFetch();
+        lock.lock();
+        try {
+            int newScheduledPage = count;
+            if (urlPrioritizer != null) {
+                // The budget is spent on the URLs handed out, see takeFromWorkQueues
+                if (isBudgetSpent()) {
+                    newScheduledPage = 0;
                 }
+            } else if (maxPagesToFetch > 0) {
+                newScheduledPage = (int) Math.max(0, Math.min(newScheduledPage, maxPagesToFetch - scheduledPages));
+            }
+            scheduledPages += newScheduledPage;
+            return newScheduledPage;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                try {
-                    workQueues.put(url);
-                    newScheduledPage++;
-                } catch (Exception e) {
-                    logger.error("Error while putting the url in the work queue", e);
+    /**
+     * With a prioritizer and maxPagesToFetch, counts up to {@code count} URLs as
+     * handed out, as far as the budget allows.
+     *
+     * @return the number of URLs which may be handed out.
+     */
+    private int reserveHandedOutPages(int count) {
+        if (!isBudgetOnHandOut()) {
+            return count;
+        }
+        int maxPagesToFetch = config.getMaxPagesToFetch();
+        while (true) {
+            long handedOut = handedOutPages.get();
+            int allowed = (int) Math.max(0, Math.min(count, maxPagesToFetch - handedOut));
+            if (allowed == 0 || handedOutPages.compareAndSet(handedOut, handedOut + allowed)) {
+                return allowed;
+            }
+        }
+    }
+
+    private boolean isBudgetOnHandOut() {
+        return urlPrioritizer != null && config.getMaxPagesToFetch() > 0;
+    }
+
+    private boolean isBudgetSpent() {
+        int maxPagesToFetch = config.getMaxPagesToFetch();
+        return maxPagesToFetch > 0 && handedOutPages.get() >= maxPagesToFetch;
+    }
+
+    /**
+     * Sets the priority of URLs about to be scheduled from their score.
+     */
+    private void prioritize(List<WebURL> urls) {
+        if (urlPrioritizer != null) {
+            for (WebURL url : urls) {
+                url.setPriority(priorityOf(url));
+                urlPrioritizer.onScheduled(url);
+            }
+        }
+    }
+
+    private byte priorityOf(WebURL url) {
+        return (byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, urlPrioritizer.score(url)));
+    }
+
+    /**
+     * Passes the outgoing links of a crawled page which are still to be crawled to the
+     * prioritizer, before its new links are scheduled. If the queue is kept in priority
+     * buckets, the queued URLs among the links move to their new priority.
+     *
+     * @param newLinks the links about to be scheduled, without a docid yet
+     * @param seenLinks the links to URLs seen before; only the ones the priority
+     *            buckets still hold are passed on, the others were crawled already
+     */
+    public void linksFound(WebURL page, Collection<WebURL> newLinks, Collection<WebURL> seenLinks) {
+        if (urlPrioritizer == null) {
+            return;
+        }
+        List<WebURL> links = new ArrayList<>(newLinks);
+        if (priorityQueue != null) {
+            for (WebURL link : seenLinks) {
+                if (priorityQueue.contains(link.getURL())) {
+                    links.add(link);
                 }
             }
-            if (newScheduledPage > 0) {
-                scheduledPages += newScheduledPage;
-                counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES, newScheduledPage);
+        }
+        urlPrioritizer.onLinks(page, links);
+        if (priorityQueue != null) {
+            List<String> queued = new ArrayList<>();
+            for (WebURL link : links) {
+                if (link.getDocid() > 0) {
+                    queued.add(link.getURL());
+                }
             }
-            synchronized (waitingList) {
-                waitingList.notifyAll();
+            if (!queued.isEmpty()) {
+                priorityQueue.reprioritizeAll(queued, this::priorityOf);
+            }
+        }
+    }
+
+    private void signalScheduled(boolean all) {
+        lock.lock();
+        try {
+            if (prefetcher != null) {
+                prefetcher.scheduled();
+            } else if (all) {
+                urlsAvailable.signalAll();
+            } else {
+                urlsAvailable.signal();
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     public void schedule(WebURL url) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
-        synchronized (mutex) {
-            try {
-                if (maxPagesToFetch < 0 || scheduledPages < maxPagesToFetch) {
-                    workQueues.put(url);
-                    scheduledPages++;
-                    counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES);
-                }
-            } catch (Exception e) {
-                logger.error("Error while putting the url in the work queue", e);
+        lock.lock();
+        try {
+            boolean budgetSpent = urlPrioritizer != null ? isBudgetSpent() :
+                                  maxPagesToFetch >= 0 && scheduledPages >= maxPagesToFetch;
+            if (budgetSpent) {
+                return;
             }
+            scheduledPages++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            prioritize(Collections.singletonList(url));
+            workQueues.put(url);
+            counters.increment(Counters.ReservedCounterNames.SCHEDULED_PAGES);
+            signalScheduled(false);
+        } catch (Exception e) {
+            logger.error("Error while putting the url in the work queue", e);
         }
     }
 
+    /**
+     * Adds up to {@code max} URLs to {@code result}, waiting until there are some.
+     * Returns without URLs once the crawl is finished, or if the calling thread is
+     * interrupted (with its interrupt status set).
+     */
     public void getNextURLs(int max, List<WebURL> result) {
-        while (true) {
-            synchronized (mutex) {
-                if (isFinished) {
-                    return;
-                }
+        getNextURLs(max, result, -1);
+    }
+
+    /**
+     * Like {@link #getNextURLs(int, List)}, but also returns without URLs after
+     * waiting for {@code timeoutMillis}, unless it is negative.
+     */
+    public void getNextURLs(int max, List<WebURL> result, long timeoutMillis) {
+        boolean missed = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        lock.lock();
+        try {
+            while (!isFinished) {
+                long waitMillis = -1;
                 try {
-                    List<WebURL> curResults = workQueues.get(max);
-                    workQueues.delete(curResults.size());
-                    if (inProcessPages != null) {
-                        for (WebURL curPage : curResults) {
-                            inProcessPages.put(curPage);
+                    if (politenessScheduler == null) {
+                        takeNextURLs(max, result);
+                    } else {
+                        int capacity = config.getHostQueuesCapacity();
+                        if (politenessScheduler.size() <= capacity / 2) {
+                            List<WebURL> urls = new ArrayList<>();
+                            takeNextURLs(capacity - politenessScheduler.size(), urls);
+                            politenessScheduler.addAll(urls);
                         }
+                        politenessScheduler.poll(max, result);
+                        // Wake up when the next host is due, unless new URLs arrive before
+                        waitMillis = politenessScheduler.getDelayMillis();
                     }
-                    result.addAll(curResults);
                 } catch (Exception e) {
                     logger.error("Error while getting next urls", e);
                 }
 
                 if (result.size() > 0) {
+                    if (prefetcher != null && !missed) {
+                        prefetchHits.incrementAndGet();
+                    }
                     return;
                 }
+                if (prefetcher != null && !missed && waitMillis < 0 && prefetcher.isBehind()) {
+                    // Nothing to hand out only because the prefetcher has not caught up
+                    missed = true;
+                    prefetchMisses.incrementAndGet();
+                }
+                if (timeoutMillis >= 0) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    waitMillis = waitMillis < 0 ? remaining : Math.min(waitMillis, remaining);
+                }
+                if (waitMillis < 0) {
+                    urlsAvailable.await();
+                } else if (waitMillis > 0) {
+                    urlsAvailable.await(waitMillis, TimeUnit.MILLISECONDS);
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            try {
-                synchronized (waitingList) {
-                    waitingList.wait();
-                }
-            } catch (InterruptedException ignored) {
-                // Do nothing
+    /**
+     * Takes URLs from the prefetch buffer if there is one, or else straight off the work queues.
+     */
+    private void takeNextURLs(int max, List<WebURL> result) {
+        if (prefetcher != null) {
+            prefetcher.take(max, result);
+        } else {
+            result.addAll(takeFromWorkQueues(max));
+        }
+    }
+
+    /**
+     * Takes URLs off the work queues; from then on they count as in process, so
+     * that a resumed crawl schedules them again.
+     */
+    private List<WebURL> takeFromWorkQueues(int max) {
+        int allowed = reserveHandedOutPages(max);
+        if (allowed == 0) {
+            if (max > 0) {
+                dropQueue();
             }
-            if (isFinished) {
-                return;
+            return new ArrayList<>();
+        }
+        List<WebURL> urls = workQueues.poll(allowed);
+        if (urls.size() < allowed && isBudgetOnHandOut()) {
+            // Give back what the budget reserved for URLs that were not there
+            handedOutPages.addAndGet(urls.size() - allowed);
+        }
+        if (inProcessPages != null) {
+            for (WebURL url : urls) {
+                inProcessPages.put(url);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Drops the queued URLs once the budget of pages to hand out is spent, so that
+     * the crawl ends.
+     */
+    private void dropQueue() {
+        long length = workQueues.getLength();
+        if (length > 0) {
+            logger.info("Dropping {} queued URLs, maxPagesToFetch ({}) URLs were handed out", length,
+                        config.getMaxPagesToFetch());
+            try {
+                workQueues.clear();
+            } catch (RuntimeException e) {
+                logger.error("Failed to drop the queued URLs", e);
             }
         }
     }
@@ -168,13 +478,36 @@ public class Frontier {
         }
     }
 
+    /**
+     * @return the number of URLs waiting to be handed out, including the ones in the
+     *         prefetch buffer, the per-host queues and the local deques of the crawler threads.
+     */
     public long getQueueLength() {
-        return workQueues.getLength();
+        return workQueues.getLength() + getNumberOfBufferedPages();
+    }
+
+    /**
+     * @return the number of URLs taken off the work queues, or assigned to a crawler
+     *         thread, but not handed out yet.
+     */
+    private long getNumberOfBufferedPages() {
+        long buffered = 0;
+        if (prefetcher != null) {
+            buffered += prefetcher.size();
+        }
+        if (politenessScheduler != null) {
+            buffered += politenessScheduler.size();
+        }
+        if (workStealingQueues != null) {
+            buffered += workStealingQueues.size();
+        }
+        return buffered;
     }
 
     public long getNumberOfAssignedPages() {
         if (inProcessPages != null) {
-            return inProcessPages.getLength();
+            // The buffered URLs are kept as in process but were not handed out yet
+            return Math.max(0, inProcessPages.getLength() - getNumberOfBufferedPages());
         } else {
             return 0;
         }
@@ -188,11 +521,42 @@ public class Frontier {
         return counters.getValue(Counters.ReservedCounterNames.SCHEDULED_PAGES);
     }
 
+    /**
+     * @return the number of times crawler threads got their next URLs from memory
+     *         right away, with prefetching on.
+     */
+    public long getPrefetchHits() {
+        return prefetchHits.get();
+    }
+
+    /**
+     * @return the number of times crawler threads had to wait for the prefetcher to
+     *         read the work queues, with prefetching on. A high count compared to the
+     *         hits calls for a bigger prefetch buffer or low-water mark.
+     */
+    public long getPrefetchMisses() {
+        return prefetchMisses.get();
+    }
+
+    /**
+     * @return the local deques of the crawler threads, or null if work stealing is off.
+     */
+    public WorkStealingQueues getWorkStealingQueues() {
+        return workStealingQueues;
+    }
+
     public boolean isFinished() {
         return isFinished;
     }
 
     public void close() {
+        if (prefetcher != null) {
+            prefetcher.close();
+            logger.info("Prefetch buffer: {} hits, {} misses", prefetchHits.get(), prefetchMisses.get());
+        }
+        if (workStealingQueues != null) {
+            logger.info("Work stealing: {} URLs stolen", workStealingQueues.getStolen());
+        }
         workQueues.close();
         counters.close();
         if (inProcessPages != null) {
@@ -200,10 +564,17 @@ public class Frontier {
         }
     }
 
+    /**
+     * Makes every thread waiting in {@link #getNextURLs(int, List)}, and every later
+     * call of it, return without URLs.
+     */
     public void finish() {
-        isFinished = true;
-        synchronized (waitingList) {
-            waitingList.notifyAll();
+        lock.lock();
+        try {
+            isFinished = true;
+            urlsAvailable.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 }
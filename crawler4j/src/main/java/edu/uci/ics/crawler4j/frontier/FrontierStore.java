@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+/**
+ * Storage SPI behind the {@link Frontier}, {@link DocIDServer} and {@link Counters}.
+ *
+ * A store hands out named URL queues, the seen-URL set and the counters table.
+ * Opening the same name twice returns a view on the same data. The returned
+ * stores are used by all crawler threads and must be safe for concurrent use.
+ * Implementations report failures as unchecked exceptions; the callers decide
+ * whether to log them or to halt the crawl.
+ *
+ * @see DerbyFrontierStore
+ * @see InMemoryFrontierStore
+ */
+public interface FrontierStore {
+
+    UrlQueueStore openQueue(String name);
+
+    DocIdStore openDocIds(String name);
+
+    CounterStore openCounters(String name);
+
+    /**
+     * @return true if the data written to this store survives a restart of the crawler.
+     */
+    boolean isPersistent();
+
+    void close();
+}
@@ -0,0 +1,382 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.db.DerbyDatabase;
+
+/**
+ * Runs the operations on a set of Derby databases on a single thread, inside
+ * transactions which are committed together every {@code intervalMillis} or every
+ * {@code maxOperations} operations, whichever comes first. Crawler threads no
+ * longer wait for a disk sync per URL move; a crash loses at most the operations
+ * of the last open group.
+ *
+ * Reads go through the same thread, so they see the writes queued before them.
+ * Writes return as soon as they are queued; a failed write is logged. When a
+ * group touched several databases, the ones passed to {@link #commitFirst(DerbyDatabase)}
+ * are committed before the others, so a URL moved from the queue to the in-process
+ * database is committed as in-process before its removal from the queue.
+ *
+ * The callers of detached writes were told they succeeded, so a group whose commit
+ * fails is not just dropped: its operations are run again in a new transaction.
+ * The same happens when an operation fails with a transaction severity error, such
+ * as a deadlock, on which Derby rolls back the whole transaction. If running the
+ * group again fails as well the committer is marked failed and every later
+ * operation throws, instead of the frontier carrying on with tables that lost some
+ * changes.
+ */
+class GroupCommitter {
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+
+    @FunctionalInterface
+    interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final long intervalMillis;
+    private final int maxOperations;
+    private final BlockingQueue<Operation<?>> operations;
+    private final Thread writer;
+    private final Set<DerbyDatabase> committedFirst = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+    /** Set once a group could not be committed even when run again */
+    private volatile Exception failure;
+
+    GroupCommitter(long intervalMillis, int maxOperations) {
+        this.intervalMillis = intervalMillis;
+        this.maxOperations = maxOperations;
+        // Bounded, so that crawler threads are held back when the disk can not keep up
+        this.operations = new LinkedBlockingQueue<>(Math.max(maxOperations, 1) * 4);
+        this.writer = new Thread(this::run, "Frontier group commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Makes every group which touched {@code db} commit it before the other databases.
+     */
+    void commitFirst(DerbyDatabase db) {
+        committedFirst.add(db);
+    }
+
+    /**
+     * @return the reason the committer stopped taking operations, or null while it works.
+     */
+    Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Queues a write and returns without waiting for it.
+     */
+    void submit(DerbyDatabase db, SqlCall<?> call) {
+        Operation<?> operation = new Operation<>(db, call, false);
+        operation.detached = true;
+        enqueue(operation);
+    }
+
+    /**
+     * Runs {@code call} after every operation queued before it and waits for its result.
+     */
+    <T> T call(DerbyDatabase db, SqlCall<T> call) throws SQLException {
+        return await(enqueue(new Operation<>(db, call, false)));
+    }
+
+    /**
+     * Commits every operation queued so far and waits for the commit.
+     */
+    void flush() {
+        try {
+            await(enqueue(new Operation<>(null, () -> null, true)));
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to commit frontier changes", e);
+        }
+    }
+
+    /**
+     * Commits every operation queued so far and stops the writer thread.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        Operation<?> stop = new Operation<>(null, () -> null, true);
+        stop.stop = true;
+        enqueue(stop);
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Nothing runs the operations that raced with close any more
+        for (Operation<?> operation = operations.poll(); operation != null; operation = operations.poll()) {
+            operation.result.completeExceptionally(new IllegalStateException("Frontier group commit is closed"));
+        }
+    }
+
+    private <T> CompletableFuture<T> enqueue(Operation<T> operation) {
+        if (failure != null && !operation.stop) {
+            throw new IllegalStateException("Frontier group commit failed, earlier changes were lost", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Frontier group commit is closed");
+        }
+        try {
+            operations.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing a frontier change", e);
+        }
+        return operation.result;
+    }
+
+    private static <T> T await(CompletableFuture<T> result) throws SQLException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a frontier operation", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void run() {
+        Map<DerbyDatabase, Group> groups = new LinkedHashMap<>();
+        int pending = 0;
+        long deadline = 0;
+        while (true) {
+            Operation<?> operation;
+            try {
+                if (groups.isEmpty()) {
+                    operation = operations.take();
+                } else {
+                    operation = operations.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (operation != null && operation.db != null && failure != null) {
+                operation.result.completeExceptionally(failure);
+            } else if (operation != null && operation.db != null) {
+                Group group = groups.get(operation.db);
+                if (group == null) {
+                    if (groups.isEmpty()) {
+                        deadline = System.currentTimeMillis() + intervalMillis;
+                    }
+                    group = new Group(operation.db.beginTransaction());
+                    groups.put(operation.db, group);
+                }
+                boolean rolledBack = !operation.run(group.transaction != null);
+                if (group.transaction != null) {
+                    group.operations.add(operation);
+                }
+                if (rolledBack) {
+                    logger.warn("Frontier transaction was rolled back, running its operations again");
+                    group.transaction.rollback();
+                    reapply(operation.db, group);
+                }
+                pending++;
+            }
+
+            if (operation == null || operation.flush || pending >= maxOperations ||
+                System.currentTimeMillis() >= deadline) {
+                commit(groups);
+                pending = 0;
+                if (operation != null && operation.flush) {
+                    if (failure != null) {
+                        operation.result.completeExceptionally(failure);
+                    } else {
+                        operation.run(false);
+                    }
+                    if (operation.stop) {
+                        return;
+                    }
+                }
+            }
+        }
+        commit(groups);
+    }
+
+    private void commit(Map<DerbyDatabase, Group> groups) {
+        List<DerbyDatabase> inOrder = new ArrayList<>(groups.size());
+        for (DerbyDatabase db : groups.keySet()) {
+            if (committedFirst.contains(db)) {
+                inOrder.add(db);
+            }
+        }
+        for (DerbyDatabase db : groups.keySet()) {
+            if (!committedFirst.contains(db)) {
+                inOrder.add(db);
+            }
+        }
+        for (DerbyDatabase db : inOrder) {
+            Group group = groups.get(db);
+            if (group.transaction == null) {
+                continue;
+            }
+            if (failure != null) {
+                // Committing the rest of the group would not make up for the changes lost
+                group.transaction.rollback();
+                continue;
+            }
+            try {
+                group.transaction.commit();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to commit frontier changes, running them again", e);
+                group.transaction.rollback();
+                if (reapply(db, group)) {
+                    try {
+                        group.transaction.commit();
+                    } catch (RuntimeException commitFailure) {
+                        fail(group, commitFailure);
+                    }
+                }
+            }
+        }
+        groups.clear();
+    }
+
+    /**
+     * Runs the operations of a rolled back group again, in the same order and so
+     * on the same state, in a new transaction which is left open.
+     *
+     * @return false if they failed again, which marks the committer failed
+     */
+    private boolean reapply(DerbyDatabase db, Group group) {
+        group.transaction = db.beginTransaction();
+        try {
+            for (Operation<?> operation : group.operations) {
+                if (!operation.result.isDone()) {
+                    // The one whose failure rolled the group back gets the result of its second run
+                    operation.complete();
+                } else if (!operation.result.isCompletedExceptionally()) {
+                    // The ones which failed the first time did not change anything then either
+                    operation.call.call();
+                }
+            }
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            fail(group, e);
+            return false;
+        }
+    }
+
+    private void fail(Group group, Exception e) {
+        logger.error("Failed to commit frontier changes, the frontier no longer matches the crawl", e);
+        try {
+            group.transaction.rollback();
+        } catch (RuntimeException rollbackFailure) {
+            e.addSuppressed(rollbackFailure);
+        }
+        for (Operation<?> operation : group.operations) {
+            operation.result.completeExceptionally(e);
+        }
+        failure = e;
+    }
+
+    /**
+     * The open transaction on one database and the operations run in it.
+     */
+    private static class Group {
+        private DerbyDatabase.DerbyTransaction transaction;
+        private final List<Operation<?>> operations = new ArrayList<>();
+
+        Group(DerbyDatabase.DerbyTransaction transaction) {
+            this.transaction = transaction;
+        }
+    }
+
+    private static class Operation<T> {
+        private final DerbyDatabase db;
+        private final SqlCall<T> call;
+        private final boolean flush;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        /** Nobody waits for the result, so failures are only logged */
+        private boolean detached = false;
+        private boolean stop = false;
+
+        Operation(DerbyDatabase db, SqlCall<T> call, boolean flush) {
+            this.db = db;
+            this.call = call;
+            this.flush = flush;
+        }
+
+        /**
+         * @param inTransaction whether the operation runs in a transaction which a
+         *            failure may have rolled back
+         * @return false if the failure rolled back the transaction, in which case the
+         *         result is left open for the operation to be run again
+         */
+        boolean run(boolean inTransaction) {
+            try {
+                complete();
+            } catch (SQLException | RuntimeException e) {
+                if (inTransaction && rolledBackTransaction(e)) {
+                    return false;
+                }
+                if (detached) {
+                    logger.error("Frontier operation failed", e);
+                }
+                result.completeExceptionally(e);
+            }
+            return true;
+        }
+
+        void complete() throws SQLException {
+            result.complete(call.call());
+        }
+
+        /**
+         * Derby rolls back the whole transaction on errors of transaction severity,
+         * whose SQLState is of class 40, such as a deadlock or a lock timeout.
+         */
+        private static boolean rolledBackTransaction(Throwable e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("40")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
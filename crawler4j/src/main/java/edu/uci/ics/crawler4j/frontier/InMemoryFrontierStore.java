@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Heap based {@link FrontierStore}. Nothing is written to disk, so this store is
+ * only suitable for crawls which are not resumable; in exchange schedule, dequeue
+ * and seen-URL lookups never leave the JVM.
+ */
+public class InMemoryFrontierStore implements FrontierStore {
+
+    private final ConcurrentMap<String, QueueStore> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DocIdStore> docIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CounterTable> counters = new ConcurrentHashMap<>();
+    private final boolean offHeapDocIds;
+    private final long expectedUrls;
+
+    public InMemoryFrontierStore() {
+        this(false, 0);
+    }
+
+    /**
+     * @param offHeapDocIds keep the seen URLs as fingerprints in an {@link OffHeapDocIdStore}
+     *            instead of a map of URL strings.
+     * @param expectedUrls the number of URLs the off-heap seen-URL set is initially sized for.
+     */
+    public InMemoryFrontierStore(boolean offHeapDocIds, long expectedUrls) {
+        this.offHeapDocIds = offHeapDocIds;
+        this.expectedUrls = expectedUrls;
+    }
+
+    @Override
+    public UrlQueueStore openQueue(String name) {
+        return queues.computeIfAbsent(name, n -> new QueueStore());
+    }
+
+    @Override
+    public DocIdStore openDocIds(String name) {
+        return docIds.computeIfAbsent(name, n -> offHeapDocIds ? new OffHeapDocIdStore(expectedUrls) : new DocIds());
+    }
+
+    @Override
+    public CounterStore openCounters(String name) {
+        return counters.computeIfAbsent(name, n -> new CounterTable());
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        queues.clear();
+        docIds.values().forEach(DocIdStore::close);
+        docIds.clear();
+        counters.clear();
+    }
+
+    static class QueueStore implements UrlQueueStore {
+        private final ConcurrentSkipListMap<Long, WebURL> urls = new ConcurrentSkipListMap<>();
+        private final AtomicLong length = new AtomicLong();
+
+        @Override
+        public void put(WebURL url) {
+            if (urls.put(QueueKey.of(url), url) == null) {
+                length.incrementAndGet();
+            }
+        }
+
+        @Override
+        public List<WebURL> get(int max) {
+            List<WebURL> results = new ArrayList<>(max);
+            Iterator<WebURL> it = urls.values().iterator();
+            while (results.size() < max && it.hasNext()) {
+                results.add(it.next());
+            }
+            return results;
+        }
+
+        @Override
+        public void delete(int count) {
+            for (int i = 0; i < count; i++) {
+                if (urls.pollFirstEntry() == null) {
+                    break;
+                }
+                length.decrementAndGet();
+            }
+        }
+
+        @Override
+        public List<WebURL> poll(int max) {
+            List<WebURL> results = new ArrayList<>(max);
+            while (results.size() < max) {
+                Map.Entry<Long, WebURL> entry = urls.pollFirstEntry();
+                if (entry == null) {
+                    break;
+                }
+                length.decrementAndGet();
+                results.add(entry.getValue());
+            }
+            return results;
+        }
+
+        @Override
+        public boolean remove(WebURL url) {
+            return remove(QueueKey.of(url));
+        }
+
+        /**
+         * Removes the URL with the given {@link QueueKey}.
+         */
+        boolean remove(long key) {
+            if (urls.remove(key) != null) {
+                length.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+            List<WebURL> batch = new ArrayList<>(batchSize);
+            for (WebURL url : urls.values()) {
+                batch.add(url);
+                if (batch.size() == batchSize) {
+                    action.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                action.accept(batch);
+            }
+        }
+
+        @Override
+        public void clear() {
+            for (Long key : urls.keySet()) {
+                if (urls.remove(key) != null) {
+                    length.decrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public long getLength() {
+            return length.get();
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the queue lives as long as its store
+        }
+    }
+
+    static class DocIds implements DocIdStore {
+        private final ConcurrentMap<String, Integer> docIDs = new ConcurrentHashMap<>();
+
+        @Override
+        public int get(String url) {
+            Integer docId = docIDs.get(url);
+            return docId == null ? -1 : docId;
+        }
+
+        @Override
+        public void put(String url, int docId) {
+            docIDs.put(url, docId);
+        }
+
+        @Override
+        public long count() {
+            return docIDs.size();
+        }
+
+        @Override
+        public void forEachUrl(Consumer<String> action) {
+            docIDs.keySet().forEach(action);
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the set lives as long as its store
+        }
+    }
+
+    static class CounterTable implements CounterStore {
+        private final ConcurrentMap<String, Long> values = new ConcurrentHashMap<>();
+
+        @Override
+        public Map<String, Long> load() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public void set(String name, long value) {
+            values.put(name, value);
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the counters live as long as their store
+        }
+    }
+}
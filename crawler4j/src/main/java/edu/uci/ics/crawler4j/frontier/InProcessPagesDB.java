@@ -17,8 +17,6 @@
 
 package edu.uci.ics.crawler4j.frontier;
 
-import java.sql.SQLException;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,10 +33,14 @@ import edu.uci.ics.crawler4j.url.WebURL;
 public class InProcessPagesDB extends WorkQueues {
     private static final Logger logger = LoggerFactory.getLogger(InProcessPagesDB.class);
 
-    private static final String DATABASE_NAME = "InProcessPagesDB";
+    static final String DATABASE_NAME = "InProcessPagesDB";
 
     public InProcessPagesDB(DerbyEnvironment env) {
-        super(env, DATABASE_NAME, true);
+        this(new DerbyFrontierStore(env, true));
+    }
+
+    public InProcessPagesDB(FrontierStore store) {
+        super(store, DATABASE_NAME);
         long docCount = getLength();
         if (docCount > 0) {
             logger.info("Loaded {} URLs that have been in process in the previous crawl.",
@@ -49,12 +51,8 @@ public class InProcessPagesDB extends WorkQueues {
     public boolean removeURL(WebURL webUrl) {
         synchronized (mutex) {
             try {
-                String key = getDatabaseEntryKey(webUrl);
-                if (urlsDB.contains(key)) {
-                    urlsDB.delete(key);
-                    return true;
-                }
-            } catch (SQLException e) {
+                return urlsDB.remove(webUrl);
+            } catch (RuntimeException e) {
                 logger.error("Failed to remove URL from database", e);
             }
         }
@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig;
+import edu.uci.ics.crawler4j.db.LogDatabase;
+import edu.uci.ics.crawler4j.db.LogEnvironment;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.util.Util;
+
+/**
+ * {@link FrontierStore} that keeps every queue, the seen-URL set and the counters
+ * in their own {@link LogDatabase} under a {@link LogEnvironment}. An alternative
+ * to {@link DerbyFrontierStore} for resumable crawls: the frontier operations map
+ * directly onto the ordered key-value operations of the log, without SQL.
+ */
+public class LogFrontierStore implements FrontierStore {
+
+    private final LogEnvironment env;
+    private final boolean storeParentUrls;
+    private final boolean storeAnchors;
+
+    public LogFrontierStore(LogEnvironment env) {
+        this.env = env;
+        this.storeParentUrls = true;
+        this.storeAnchors = true;
+    }
+
+    /**
+     * Store which keeps the fields of the queued URLs that the given configuration asks for.
+     */
+    public LogFrontierStore(LogEnvironment env, CrawlConfig config) {
+        this.env = env;
+        this.storeParentUrls = config.isFrontierParentUrls();
+        this.storeAnchors = config.isFrontierAnchors();
+    }
+
+    public LogEnvironment getEnvironment() {
+        return env;
+    }
+
+    @Override
+    public UrlQueueStore openQueue(String name) {
+        return new QueueStore(env.openDatabase(name), new WebURLDerbyBinding(storeParentUrls, storeAnchors));
+    }
+
+    @Override
+    public DocIdStore openDocIds(String name) {
+        return new DocIds(env.openDatabase(name));
+    }
+
+    @Override
+    public CounterStore openCounters(String name) {
+        return new CounterTable(env.openDatabase(name));
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        env.close();
+    }
+
+    static class QueueStore implements UrlQueueStore {
+        private final LogDatabase urlsDB;
+        private final WebURLDerbyBinding webURLBinding;
+
+        QueueStore(LogDatabase urlsDB, WebURLDerbyBinding webURLBinding) {
+            this.urlsDB = urlsDB;
+            this.webURLBinding = webURLBinding;
+        }
+
+        private List<WebURL> toURLs(List<byte[]> values) {
+            List<WebURL> results = new ArrayList<>(values.size());
+            for (byte[] value : values) {
+                if (value.length > 0) {
+                    results.add(webURLBinding.entryToObject(value));
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public void put(WebURL url) {
+            try {
+                urlsDB.putQueueEntry(QueueKey.of(url), webURLBinding.objectToEntry(url));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to put URL in database", e);
+            }
+        }
+
+        @Override
+        public void putAll(List<WebURL> urls) {
+            try {
+                Map<Long, byte[]> entries = new LinkedHashMap<>();
+                for (WebURL url : urls) {
+                    entries.put(QueueKey.of(url), webURLBinding.objectToEntry(url));
+                }
+                urlsDB.putQueueEntries(entries);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to put URLs in database", e);
+            }
+        }
+
+        @Override
+        public List<WebURL> get(int max) {
+            try {
+                return toURLs(urlsDB.getFirstQueueEntries(max));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to get URLs from database", e);
+            }
+        }
+
+        @Override
+        public void delete(int count) {
+            try {
+                urlsDB.deleteFirstQueueEntries(count);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to delete URLs from database", e);
+            }
+        }
+
+        @Override
+        public List<WebURL> poll(int max) {
+            try {
+                return toURLs(urlsDB.pollFirstQueueEntries(max));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to poll URLs from database", e);
+            }
+        }
+
+        @Override
+        public boolean remove(WebURL url) {
+            try {
+                return urlsDB.deleteQueueEntry(QueueKey.of(url));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to remove URL from database", e);
+            }
+        }
+
+        @Override
+        public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            for (Iterator<byte[]> cursor = urlsDB.queueCursor(); cursor.hasNext(); ) {
+                batch.add(cursor.next());
+                if (batch.size() == batchSize) {
+                    action.accept(toURLs(batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                action.accept(toURLs(batch));
+            }
+        }
+
+        @Override
+        public void clear() {
+            try {
+                urlsDB.deleteAllQueueEntries();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to delete URLs from database", e);
+            }
+        }
+
+        @Override
+        public long getLength() {
+            return urlsDB.countQueueEntries();
+        }
+
+        @Override
+        public void close() {
+            urlsDB.close();
+        }
+    }
+
+    static class DocIds implements DocIdStore {
+        private final LogDatabase docIDsDB;
+
+        DocIds(LogDatabase docIDsDB) {
+            this.docIDsDB = docIDsDB;
+        }
+
+        @Override
+        public int get(String url) {
+            try {
+                byte[] value = docIDsDB.get(url);
+                if (value != null && value.length > 0) {
+                    return Util.byteArray2Int(value);
+                }
+                return -1;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to get DocID from database", e);
+            }
+        }
+
+        @Override
+        public void put(String url, int docId) {
+            try {
+                docIDsDB.put(url, Util.int2ByteArray(docId));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to put DocID in database", e);
+            }
+        }
+
+        @Override
+        public void putAll(Map<String, Integer> docIds) {
+            try {
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                for (Map.Entry<String, Integer> entry : docIds.entrySet()) {
+                    entries.put(entry.getKey(), Util.int2ByteArray(entry.getValue()));
+                }
+                docIDsDB.putAll(entries);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to put DocIDs in database", e);
+            }
+        }
+
+        @Override
+        public long count() {
+            return docIDsDB.count();
+        }
+
+        @Override
+        public void forEachUrl(Consumer<String> action) {
+            docIDsDB.keyCursor().forEachRemaining(action);
+        }
+
+        @Override
+        public void close() {
+            docIDsDB.close();
+        }
+    }
+
+    static class CounterTable implements CounterStore {
+        private final LogDatabase statisticsDB;
+
+        CounterTable(LogDatabase statisticsDB) {
+            this.statisticsDB = statisticsDB;
+        }
+
+        @Override
+        public Map<String, Long> load() {
+            return statisticsDB.getAllCounters();
+        }
+
+        @Override
+        public void set(String name, long value) {
+            try {
+                statisticsDB.setCounter(name, value);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to set counter in database", e);
+            }
+        }
+
+        @Override
+        public void setAll(Map<String, Long> values) {
+            try {
+                statisticsDB.setCounters(values);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to set counters in database", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            statisticsDB.close();
+        }
+    }
+}
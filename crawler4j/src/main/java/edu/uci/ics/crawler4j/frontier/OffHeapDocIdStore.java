@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Seen-URL set which keeps only the 64-bit {@link UrlFingerprint} of each URL and
+ * its docid, in open addressing hash tables outside of the Java heap. Every entry
+ * takes 12 bytes (16 on average at the maximum load factor), so hundreds of
+ * millions of URLs fit in a few GB and add nothing to garbage collection.
+ *
+ * The fingerprints are spread over a fixed number of segments; each segment is
+ * one direct buffer with its own lock and doubles in size when it fills up. The
+ * memory comes out of the direct memory budget of the JVM
+ * ({@code -XX:MaxDirectMemorySize}, by default the maximum heap size).
+ *
+ * URLs whose fingerprints collide are taken for the same URL. The URLs are not
+ * kept, so {@link #forEachUrl(Consumer)} is not supported.
+ */
+public class OffHeapDocIdStore implements DocIdStore {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SLOT_SIZE = 12;
+    private static final int MIN_SEGMENT_SLOTS = 1 << 10;
+    private static final int MAX_SEGMENT_SLOTS = 1 << 27;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /** Marks an empty slot; the fingerprint 0 is stored as 1 instead */
+    private static final long EMPTY = 0;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    /**
+     * @param expectedUrls the number of URLs the tables are initially sized for.
+     */
+    public OffHeapDocIdStore(long expectedUrls) {
+        long perSegment = (long) Math.ceil(expectedUrls / MAX_LOAD_FACTOR / segments.length);
+        int slots = MIN_SEGMENT_SLOTS;
+        while (slots < perSegment && slots < MAX_SEGMENT_SLOTS) {
+            slots <<= 1;
+        }
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(slots);
+        }
+    }
+
+    private static long fingerprint(String url) {
+        long fingerprint = UrlFingerprint.of(url).getFingerprint();
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    @Override
+    public int get(String url) {
+        long fingerprint = fingerprint(url);
+        return segmentFor(fingerprint).get(fingerprint);
+    }
+
+    @Override
+    public void put(String url, int docId) {
+        long fingerprint = fingerprint(url);
+        segmentFor(fingerprint).put(fingerprint, docId);
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of bytes of direct memory held by the tables.
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.capacityBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * The URLs themselves are not stored.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void forEachUrl(Consumer<String> action) {
+        throw new UnsupportedOperationException("Off-heap seen URL set does not keep the URLs");
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private static final class Segment {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private ByteBuffer table;
+        private int mask;
+        private int size;
+
+        Segment(int slots) {
+            allocate(slots);
+        }
+
+        private void allocate(int slots) {
+            table = ByteBuffer.allocateDirect(slots * SLOT_SIZE).order(ByteOrder.nativeOrder());
+            mask = slots - 1;
+        }
+
+        int get(long fingerprint) {
+            lock.readLock().lock();
+            try {
+                for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+                    long stored = table.getLong(slot * SLOT_SIZE);
+                    if (stored == EMPTY) {
+                        return -1;
+                    }
+                    if (stored == fingerprint) {
+                        return table.getInt(slot * SLOT_SIZE + 8);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(long fingerprint, int docId) {
+            lock.writeLock().lock();
+            try {
+                if (size >= (mask + 1) * MAX_LOAD_FACTOR) {
+                    grow();
+                }
+                if (insert(table, mask, fingerprint, docId)) {
+                    size++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return true if the fingerprint was not in the table yet.
+         */
+        private static boolean insert(ByteBuffer table, int mask, long fingerprint, int docId) {
+            for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+                long stored = table.getLong(slot * SLOT_SIZE);
+                if (stored == EMPTY || stored == fingerprint) {
+                    table.putLong(slot * SLOT_SIZE, fingerprint);
+                    table.putInt(slot * SLOT_SIZE + 8, docId);
+                    return stored == EMPTY;
+                }
+            }
+        }
+
+        private void grow() {
+            int slots = mask + 1;
+            if (slots >= MAX_SEGMENT_SLOTS) {
+                throw new IllegalStateException("Off-heap seen URL set is full");
+            }
+            ByteBuffer oldTable = table;
+            allocate(slots << 1);
+            for (int slot = 0; slot < slots; slot++) {
+                long stored = oldTable.getLong(slot * SLOT_SIZE);
+                if (stored != EMPTY) {
+                    insert(table, mask, stored, oldTable.getInt(slot * SLOT_SIZE + 8));
+                }
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long capacityBytes() {
+            lock.readLock().lock();
+            try {
+                return (long) (mask + 1) * SLOT_SIZE;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                allocate(MIN_SEGMENT_SLOTS);
+                size = 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Per-host queues of the URLs taken from the {@link WorkQueues}, and a delay queue
+ * of the hosts ordered by the time their next URL may be fetched. Only URLs of
+ * hosts which are due are handed out, at most one per host and politeness delay,
+ * so crawler threads fetch from different hosts in parallel instead of waiting in
+ * line for one global politeness delay. Within a host the URLs keep their crawl
+ * order, and hosts which are due at the same time are handed out in the order
+ * they were queued.
+ *
+ * Not thread safe; the {@link Frontier} calls it under its mutex.
+ */
+public class PolitenessScheduler {
+
+    /** Hosts without queued URLs are kept for a while, so that new URLs of them still wait for their turn */
+    private static final int IDLE_HOSTS_PRUNE_THRESHOLD = 10000;
+    private static final long PRUNE_INTERVAL_MILLIS = 1000;
+
+    private final ToLongFunction<String> hostDelay;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final DelayQueue<HostQueue> dueHosts = new DelayQueue<>();
+    private volatile int size;
+    private long lastPruneTime;
+    /** Breaks ties between hosts which are due at the same time */
+    private long nextSequence;
+
+    /**
+     * @param politenessDelay the minimum time in milliseconds between two URLs of the same host.
+     */
+    public PolitenessScheduler(long politenessDelay) {
+        this(host -> politenessDelay);
+    }
+
+    /**
+     * @param hostDelay the minimum time in milliseconds between two URLs of a host,
+     *            for example {@link edu.uci.ics.crawler4j.fetcher.HostRateLimiter#getDelay(String)}.
+     */
+    public PolitenessScheduler(ToLongFunction<String> hostDelay) {
+        this.hostDelay = hostDelay;
+    }
+
+    public void add(WebURL url) {
+        HostQueue host = hosts.computeIfAbsent(url.getHost(), HostQueue::new);
+        if (host.urls.isEmpty()) {
+            enqueue(host);
+        }
+        host.urls.add(url);
+        size++;
+    }
+
+    public void addAll(List<WebURL> urls) {
+        for (WebURL url : urls) {
+            add(url);
+        }
+    }
+
+    /**
+     * Moves the next URL of up to {@code max} hosts which are due to {@code result}.
+     *
+     * @return the number of URLs added to {@code result}.
+     */
+    public int poll(int max, List<WebURL> result) {
+        long now = System.currentTimeMillis();
+        int polled = 0;
+        HostQueue host;
+        while (polled < max && (host = dueHosts.poll()) != null) {
+            result.add(host.urls.poll());
+            host.nextFetchTime = now + hostDelay.applyAsLong(host.host);
+            if (!host.urls.isEmpty()) {
+                enqueue(host);
+            }
+            polled++;
+        }
+        size -= polled;
+        if (hosts.size() > IDLE_HOSTS_PRUNE_THRESHOLD && hosts.size() > 2 * dueHosts.size() &&
+            now - lastPruneTime > PRUNE_INTERVAL_MILLIS) {
+            pruneIdleHosts(now);
+            lastPruneTime = now;
+        }
+        return polled;
+    }
+
+    private void enqueue(HostQueue host) {
+        host.sequence = nextSequence++;
+        dueHosts.add(host);
+    }
+
+    /**
+     * Forgets the hosts which have no queued URLs and could be fetched from right away.
+     */
+    private void pruneIdleHosts(long now) {
+        Iterator<HostQueue> it = hosts.values().iterator();
+        while (it.hasNext()) {
+            HostQueue host = it.next();
+            if (host.urls.isEmpty() && host.nextFetchTime <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the milliseconds until the next host is due, 0 if one is due now, or
+     *         -1 if no URLs are queued.
+     */
+    public long getDelayMillis() {
+        HostQueue next = dueHosts.peek();
+        return next == null ? -1 : Math.max(0, next.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return the number of queued URLs. May be read without holding the mutex.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of hosts with queued URLs.
+     */
+    public int getHostCount() {
+        return dueHosts.size();
+    }
+
+    private static final class HostQueue implements Delayed {
+        private final String host;
+        private final ArrayDeque<WebURL> urls = new ArrayDeque<>();
+        /** Only changed while the host is not in the delay queue */
+        private long nextFetchTime;
+        private long sequence;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextFetchTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            HostQueue otherHost = (HostQueue) other;
+            int byTime = Long.compare(nextFetchTime, otherHost.nextFetchTime);
+            return byTime != 0 ? byTime : Long.compare(sequence, otherHost.sequence);
+        }
+
+        @Override
+        public String toString() {
+            return host;
+        }
+    }
+}
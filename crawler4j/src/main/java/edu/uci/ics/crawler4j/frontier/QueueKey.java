@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * The key under which a URL is queued. The key determines the order in which
+ * URLs are crawled: lower keys are crawled earlier.
+ *
+ * Priority, depth and docid are packed into a single non-negative long: 8 bits
+ * of priority (offset so that -128 comes first), 8 bits of the depth at which
+ * the URL was first found (capped at 127) and the 32 bits of the docid. As a
+ * result, URLs with lower priority numbers are crawled earlier. If priority
+ * numbers are the same, those found at lower depths are crawled earlier. If depth
+ * is also equal, those found earlier (therefore, smaller docid) are crawled
+ * earlier. Stores keep the keys in their natural order (a BIGINT primary key
+ * index in Derby), so dequeuing never sorts.
+ */
+public final class QueueKey {
+
+    private QueueKey() {
+    }
+
+    public static long of(WebURL url) {
+        long priority = url.getPriority() - Byte.MIN_VALUE;
+        long depth = Math.max(0, Math.min(url.getDepth(), Byte.MAX_VALUE));
+        return (priority << 40) | (depth << 32) | (url.getDocid() & 0xFFFFFFFFL);
+    }
+}
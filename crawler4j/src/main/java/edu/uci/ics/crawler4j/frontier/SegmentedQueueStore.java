@@ -0,0 +1,393 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Disk backed queue made of fixed size, memory-mapped segment files. Every
+ * priority level has its own directory of segments; scheduling appends to the
+ * last segment and dequeuing reads the first one sequentially, so the queue
+ * never does random updates no matter how much larger than the memory it grows.
+ * Segments which have been read completely are deleted.
+ *
+ * The read and write offsets of every priority level are kept in a small
+ * memory-mapped state file, which is all that is needed to resume the queue.
+ * They are written to the page cache on every operation and forced to disk on
+ * {@link #close()}.
+ *
+ * URLs of the same priority come out in the order they were scheduled (which is
+ * breadth first, as URLs are scheduled while pages are processed) rather than
+ * sorted by depth and docid. Single URLs can not be removed from the middle of
+ * the queue, so this store is only used for the queue of pending URLs.
+ */
+public class SegmentedQueueStore implements UrlQueueStore {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedQueueStore.class);
+
+    private static final String LEVEL_DIRECTORY_PREFIX = "priority-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String STATE_FILE_NAME = "state";
+    private static final int STATE_VERSION = 1;
+    private static final int STATE_SIZE = 64;
+
+    /** Size of the length prefix of a record; a length of 0 ends a segment */
+    private static final int LENGTH_SIZE = 4;
+
+    private final File directory;
+    private final int segmentSize;
+    private final WebURLDerbyBinding webURLBinding;
+
+    /** Guarded by this */
+    private final TreeMap<Byte, Level> levels = new TreeMap<>();
+
+    public SegmentedQueueStore(File directory, int segmentSize, WebURLDerbyBinding webURLBinding) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.webURLBinding = webURLBinding;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new RuntimeException("Failed to create queue directory: " + directory.getAbsolutePath());
+        }
+        File[] levelDirectories = directory.listFiles(
+            file -> file.isDirectory() && file.getName().startsWith(LEVEL_DIRECTORY_PREFIX));
+        if (levelDirectories != null) {
+            for (File levelDirectory : levelDirectories) {
+                int offset = Integer.parseInt(levelDirectory.getName().substring(LEVEL_DIRECTORY_PREFIX.length()));
+                byte priority = (byte) (offset + Byte.MIN_VALUE);
+                levels.put(priority, new Level(levelDirectory));
+            }
+        }
+        long length = getLength();
+        if (length > 0) {
+            logger.info("Resumed queue of {} URLs in {} priority levels", length, levels.size());
+        }
+    }
+
+    private Level level(byte priority) {
+        Level level = levels.get(priority);
+        if (level == null) {
+            String name = String.format("%s%03d", LEVEL_DIRECTORY_PREFIX, priority - Byte.MIN_VALUE);
+            level = new Level(new File(directory, name));
+            levels.put(priority, level);
+        }
+        return level;
+    }
+
+    @Override
+    public synchronized void put(WebURL url) {
+        byte[] record = webURLBinding.objectToEntry(url);
+        if (record.length + 2 * LENGTH_SIZE > segmentSize) {
+            logger.warn("Skipping URL whose queue entry of {} bytes does not fit in a segment: {}",
+                        record.length, url.getURL());
+            return;
+        }
+        level(url.getPriority()).append(record);
+    }
+
+    @Override
+    public synchronized void putAll(List<WebURL> urls) {
+        for (WebURL url : urls) {
+            put(url);
+        }
+    }
+
+    @Override
+    public synchronized List<WebURL> get(int max) {
+        List<WebURL> results = new ArrayList<>(max);
+        for (Level level : levels.values()) {
+            if (results.size() >= max) {
+                break;
+            }
+            level.read(max - results.size(), false, results);
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized void delete(int count) {
+        int remaining = count;
+        for (Level level : levels.values()) {
+            if (remaining <= 0) {
+                break;
+            }
+            remaining -= level.read(remaining, true, null);
+        }
+    }
+
+    @Override
+    public synchronized List<WebURL> poll(int max) {
+        List<WebURL> results = new ArrayList<>(max);
+        for (Level level : levels.values()) {
+            if (results.size() >= max) {
+                break;
+            }
+            level.read(max - results.size(), true, results);
+        }
+        return results;
+    }
+
+    /**
+     * Lists the levels in priority order, each from its read offset to its write
+     * offset; the offsets do not move.
+     */
+    @Override
+    public synchronized void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+        List<WebURL> batch = new ArrayList<>(batchSize);
+        for (Level level : levels.values()) {
+            batch = level.list(batchSize, batch, action);
+        }
+        if (!batch.isEmpty()) {
+            action.accept(batch);
+        }
+    }
+
+    /**
+     * Single URLs can not be taken out of the middle of a segment.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(WebURL url) {
+        throw new UnsupportedOperationException("Segmented queue does not support removing single URLs");
+    }
+
+    @Override
+    public synchronized long getLength() {
+        long length = 0;
+        for (Level level : levels.values()) {
+            length += level.appended - level.consumed;
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Level level : levels.values()) {
+            level.close();
+        }
+        levels.clear();
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * The segments of one priority level, with its offsets mirrored in the state file.
+     */
+    private final class Level {
+        private final File levelDirectory;
+        private final MappedByteBuffer state;
+        private final Map<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+        private long writeSegment;
+        private int writePosition;
+        private long readSegment;
+        private int readPosition;
+        private long appended;
+        private long consumed;
+
+        Level(File levelDirectory) {
+            this.levelDirectory = levelDirectory;
+            try {
+                if (!levelDirectory.exists() && !levelDirectory.mkdirs()) {
+                    throw new IOException("Failed to create " + levelDirectory.getAbsolutePath());
+                }
+                state = map(new File(levelDirectory, STATE_FILE_NAME), STATE_SIZE);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open queue level " + levelDirectory, e);
+            }
+            if (state.getInt(0) == STATE_VERSION) {
+                writeSegment = state.getLong(8);
+                writePosition = state.getInt(16);
+                readSegment = state.getLong(24);
+                readPosition = state.getInt(32);
+                appended = state.getLong(40);
+                consumed = state.getLong(48);
+            } else {
+                saveState();
+                state.putInt(0, STATE_VERSION);
+            }
+        }
+
+        private void saveState() {
+            state.putLong(8, writeSegment);
+            state.putInt(16, writePosition);
+            state.putLong(24, readSegment);
+            state.putInt(32, readPosition);
+            state.putLong(40, appended);
+            state.putLong(48, consumed);
+        }
+
+        private File segmentFile(long segment) {
+            return new File(levelDirectory, String.format("%012d%s", segment, SEGMENT_SUFFIX));
+        }
+
+        private MappedByteBuffer segment(long segment) {
+            MappedByteBuffer buffer = segments.get(segment);
+            if (buffer == null) {
+                try {
+                    buffer = map(segmentFile(segment), segmentSize);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to map queue segment " + segmentFile(segment), e);
+                }
+                segments.put(segment, buffer);
+            }
+            return buffer;
+        }
+
+        void append(byte[] record) {
+            if (writePosition + LENGTH_SIZE + record.length > segmentSize - LENGTH_SIZE) {
+                // Close the segment with an empty record and continue in a new one
+                segment(writeSegment).putInt(writePosition, 0);
+                releaseUnlessReading(writeSegment);
+                writeSegment++;
+                writePosition = 0;
+            }
+            MappedByteBuffer buffer = segment(writeSegment);
+            buffer.put(writePosition + LENGTH_SIZE, record);
+            buffer.putInt(writePosition, record.length);
+            writePosition += LENGTH_SIZE + record.length;
+            appended++;
+            saveState();
+        }
+
+        /**
+         * Reads up to {@code max} records from the head of the level.
+         *
+         * @param advance consume the records read, deleting the segments left behind.
+         * @param results where the decoded URLs are added; null to skip the records.
+         * @return the number of records read
+         */
+        int read(int max, boolean advance, List<WebURL> results) {
+            long segment = readSegment;
+            int position = readPosition;
+            int count = 0;
+            while (count < max && consumed + count < appended) {
+                MappedByteBuffer buffer = segment(segment);
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    if (advance) {
+                        deleteSegment(segment);
+                    }
+                    segment++;
+                    position = 0;
+                    continue;
+                }
+                if (results != null) {
+                    byte[] record = new byte[length];
+                    buffer.get(position + LENGTH_SIZE, record);
+                    results.add(webURLBinding.entryToObject(record));
+                }
+                position += LENGTH_SIZE + length;
+                count++;
+            }
+            if (advance) {
+                readSegment = segment;
+                readPosition = position;
+                consumed += count;
+                saveState();
+            }
+            return count;
+        }
+
+        /**
+         * Adds the records of the level to {@code batch}, passing it on to
+         * {@code action} whenever it holds {@code batchSize} URLs.
+         *
+         * @return the batch which is not full yet
+         */
+        List<WebURL> list(int batchSize, List<WebURL> batch, Consumer<List<WebURL>> action) {
+            long segment = readSegment;
+            int position = readPosition;
+            for (long index = consumed; index < appended; ) {
+                MappedByteBuffer buffer = segment(segment);
+                int length = buffer.getInt(position);
+                if (length == 0) {
+                    releaseListed(segment);
+                    segment++;
+                    position = 0;
+                    continue;
+                }
+                byte[] record = new byte[length];
+                buffer.get(position + LENGTH_SIZE, record);
+                batch.add(webURLBinding.entryToObject(record));
+                position += LENGTH_SIZE + length;
+                index++;
+                if (batch.size() == batchSize) {
+                    action.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            releaseListed(segment);
+            return batch;
+        }
+
+        /**
+         * Unmaps a segment which was only mapped to be listed.
+         */
+        private void releaseListed(long segment) {
+            if (segment != readSegment && segment != writeSegment) {
+                segments.remove(segment);
+            }
+        }
+
+        private void releaseUnlessReading(long segment) {
+            if (segment != readSegment) {
+                segments.remove(segment);
+            }
+        }
+
+        private void deleteSegment(long segment) {
+            segments.remove(segment);
+            File file = segmentFile(segment);
+            if (!file.delete()) {
+                // Mapped files can not be deleted on some platforms until the mapping is collected
+                logger.debug("Could not delete consumed queue segment {}", file);
+            }
+        }
+
+        void close() {
+            for (MappedByteBuffer buffer : segments.values()) {
+                buffer.force();
+            }
+            state.force();
+            segments.clear();
+        }
+    }
+}
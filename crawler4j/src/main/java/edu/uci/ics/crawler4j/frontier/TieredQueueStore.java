@@ -0,0 +1,497 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Queue with a bounded in-memory head in front of a backing {@link UrlQueueStore}.
+ *
+ * The head holds the URLs which come next in crawl order, so dequeuing is served
+ * from memory. URLs which do not belong in the head are collected in a spill
+ * buffer and written to the backing store in large batches by a background
+ * thread, which also refills the head from the backing store when it runs below
+ * half of its capacity. Every URL in the head sorts before every URL outside of
+ * it, so URLs still come out in crawl order over all priorities.
+ *
+ * The head and the spill buffer are written to the backing store on
+ * {@link #close()}. After a crash the URLs held in memory at that moment (at most
+ * the head capacity plus about two spill batches) are lost, which is why the
+ * crawl configuration does not allow the tiered queue for resumable crawls.
+ */
+public class TieredQueueStore implements UrlQueueStore {
+    private static final Logger logger = LoggerFactory.getLogger(TieredQueueStore.class);
+
+    private static final long REFILL_RETRY_DELAY_MILLIS = 1000;
+
+    private final UrlQueueStore backing;
+    private final int headCapacity;
+    private final int spillBatchSize;
+
+    /** Guards the in-memory state below */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    /** Serializes the access to the backing store */
+    private final ReentrantLock backingLock = new ReentrantLock();
+
+    private final TreeMap<Long, WebURL> head = new TreeMap<>();
+    private List<WebURL> spill = new ArrayList<>();
+    /** Every URL outside of the head has a key of at least this */
+    private long lowestSpilledKey;
+    private long inFlight;
+    private long backingLength;
+
+    private final LongAdder headPolls = new LongAdder();
+    private final LongAdder synchronousRefills = new LongAdder();
+
+    private final Thread refiller;
+    private volatile boolean closed = false;
+
+    public TieredQueueStore(UrlQueueStore backing, int headCapacity, int spillBatchSize) {
+        this.backing = backing;
+        this.headCapacity = headCapacity;
+        this.spillBatchSize = spillBatchSize;
+        this.backingLength = backing.getLength();
+        // Until the first refill nothing is known about the keys in the backing store
+        this.lowestSpilledKey = backingLength > 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+
+        refiller = new Thread(this::runRefiller, "Frontier refill");
+        refiller.setDaemon(true);
+        refiller.start();
+    }
+
+    @Override
+    public void put(WebURL url) {
+        boolean flushNow;
+        lock.lock();
+        try {
+            addLocked(url);
+            flushNow = spill.size() >= 2 * spillBatchSize;
+        } finally {
+            lock.unlock();
+        }
+        if (flushNow) {
+            // The refill thread can not keep up, so the producer writes the batch itself
+            refill(0);
+        }
+    }
+
+    @Override
+    public void putAll(List<WebURL> urls) {
+        boolean flushNow;
+        lock.lock();
+        try {
+            for (WebURL url : urls) {
+                addLocked(url);
+            }
+            flushNow = spill.size() >= 2 * spillBatchSize;
+        } finally {
+            lock.unlock();
+        }
+        if (flushNow) {
+            refill(0);
+        }
+    }
+
+    private void addLocked(WebURL url) {
+        long key = QueueKey.of(url);
+        if (key < lowestSpilledKey) {
+            head.put(key, url);
+            if (head.size() > headCapacity) {
+                Map.Entry<Long, WebURL> last = head.pollLastEntry();
+                spillLocked(last.getKey(), last.getValue());
+            }
+        } else {
+            spillLocked(key, url);
+        }
+    }
+
+    private void spillLocked(long key, WebURL url) {
+        spill.add(url);
+        lowestSpilledKey = Math.min(lowestSpilledKey, key);
+        if (spill.size() >= spillBatchSize) {
+            workAvailable.signal();
+        }
+    }
+
+    private boolean hasSpilledLocked() {
+        return !spill.isEmpty() || inFlight > 0 || backingLength > 0;
+    }
+
+    private boolean needsWorkLocked() {
+        return spill.size() >= spillBatchSize || (head.size() < headCapacity / 2 && hasSpilledLocked());
+    }
+
+    @Override
+    public List<WebURL> get(int max) {
+        lock.lock();
+        try {
+            ensureHeadLocked(max);
+            List<WebURL> results = new ArrayList<>(Math.min(max, head.size()));
+            Iterator<WebURL> it = head.values().iterator();
+            while (results.size() < max && it.hasNext()) {
+                results.add(it.next());
+            }
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(int count) {
+        lock.lock();
+        try {
+            ensureHeadLocked(count);
+            for (int i = 0; i < count && !head.isEmpty(); i++) {
+                head.pollFirstEntry();
+            }
+            signalIfLowLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<WebURL> poll(int max) {
+        lock.lock();
+        try {
+            ensureHeadLocked(max);
+            List<WebURL> results = new ArrayList<>(Math.min(max, head.size()));
+            while (results.size() < max && !head.isEmpty()) {
+                results.add(head.pollFirstEntry().getValue());
+            }
+            signalIfLowLocked();
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Refills the head on the calling thread if it holds fewer than {@code count}
+     * URLs while more are spilled. This only happens when the refill thread falls behind.
+     */
+    private void ensureHeadLocked(int count) {
+        if (head.size() >= count || !hasSpilledLocked()) {
+            headPolls.increment();
+            return;
+        }
+        synchronousRefills.increment();
+        lock.unlock();
+        try {
+            refill(count);
+        } finally {
+            lock.lock();
+        }
+    }
+
+    private void signalIfLowLocked() {
+        if (needsWorkLocked()) {
+            workAvailable.signal();
+        }
+    }
+
+    /**
+     * Writes the spill buffer to the backing store and moves the next URLs of the
+     * backing store into the head, at least {@code minimum} of them if there are.
+     */
+    private void refill(int minimum) {
+        backingLock.lock();
+        try {
+            flushSpill();
+
+            int wanted;
+            lock.lock();
+            try {
+                wanted = Math.max(minimum, headCapacity - head.size());
+                if (wanted <= 0 || backingLength == 0) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            List<WebURL> polled = backing.poll(wanted);
+
+            lock.lock();
+            try {
+                backingLength = polled.size() < wanted ? 0 : Math.max(0, backingLength - polled.size());
+                long bound = Long.MAX_VALUE;
+                for (WebURL url : polled) {
+                    long key = QueueKey.of(url);
+                    head.put(key, url);
+                    bound = key + 1;
+                }
+                if (backingLength == 0) {
+                    bound = Long.MAX_VALUE;
+                }
+                // URLs spilled while the backing store was read may sort before the ones just read
+                long lowestRemaining = Long.MAX_VALUE;
+                List<WebURL> remaining = new ArrayList<>(spill.size());
+                for (WebURL url : spill) {
+                    long key = QueueKey.of(url);
+                    if (key < bound) {
+                        head.put(key, url);
+                    } else {
+                        remaining.add(url);
+                        lowestRemaining = Math.min(lowestRemaining, key);
+                    }
+                }
+                // Those may also push the head over its capacity; the last ones go back to the spill buffer
+                int capacity = Math.max(headCapacity, minimum);
+                while (head.size() > capacity) {
+                    Map.Entry<Long, WebURL> last = head.pollLastEntry();
+                    remaining.add(last.getValue());
+                    lowestRemaining = Math.min(lowestRemaining, last.getKey());
+                }
+                spill = remaining;
+                lowestSpilledKey = Math.min(bound, lowestRemaining);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            backingLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the spill buffer to the backing store. Called with the backing lock held.
+     */
+    private void flushSpill() {
+        List<WebURL> batch;
+        lock.lock();
+        try {
+            batch = spill;
+            spill = new ArrayList<>();
+            inFlight = batch.size();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (!batch.isEmpty()) {
+                backing.putAll(batch);
+            }
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                // Keep the batch for the next attempt
+                batch.addAll(spill);
+                spill = batch;
+                inFlight = 0;
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            backingLength += inFlight;
+            inFlight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runRefiller() {
+        while (!closed) {
+            lock.lock();
+            try {
+                while (!closed && !needsWorkLocked()) {
+                    workAvailable.await();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+            if (closed) {
+                break;
+            }
+            try {
+                refill(0);
+            } catch (RuntimeException e) {
+                logger.error("Failed to refill the frontier head", e);
+                try {
+                    Thread.sleep(REFILL_RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(WebURL url) {
+        lock.lock();
+        try {
+            long key = QueueKey.of(url);
+            if (head.remove(key) != null) {
+                return true;
+            }
+            for (Iterator<WebURL> it = spill.iterator(); it.hasNext(); ) {
+                if (QueueKey.of(it.next()) == key) {
+                    it.remove();
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        backingLock.lock();
+        try {
+            boolean removed = backing.remove(url);
+            if (removed) {
+                lock.lock();
+                try {
+                    backingLength = Math.max(0, backingLength - 1);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return removed;
+        } finally {
+            backingLock.unlock();
+        }
+    }
+
+    /**
+     * Lists the head, then the backing store once the spill buffer has been written
+     * to it; every URL in the head sorts before the ones in the backing store. The
+     * backing store is not refilled from while the URLs are listed, and it has to
+     * be able to list its URLs itself.
+     */
+    @Override
+    public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+        backingLock.lock();
+        try {
+            flushSpill();
+            List<WebURL> inHead;
+            lock.lock();
+            try {
+                inHead = new ArrayList<>(head.values());
+            } finally {
+                lock.unlock();
+            }
+            List<WebURL> batch = new ArrayList<>(batchSize);
+            for (WebURL url : inHead) {
+                batch.add(url);
+                if (batch.size() == batchSize) {
+                    action.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                action.accept(batch);
+            }
+            backing.forEachBatch(batchSize, action);
+        } finally {
+            backingLock.unlock();
+        }
+    }
+
+    @Override
+    public long getLength() {
+        lock.lock();
+        try {
+            return head.size() + spill.size() + inFlight + backingLength;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of URLs held in the head.
+     */
+    public int getHeadSize() {
+        lock.lock();
+        try {
+            return head.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of dequeues which were served from the head without waiting for the backing store.
+     */
+    public long getHeadPolls() {
+        return headPolls.sum();
+    }
+
+    /**
+     * @return the number of dequeues which had to read the backing store themselves.
+     */
+    public long getSynchronousRefills() {
+        return synchronousRefills.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        lock.lock();
+        try {
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            refiller.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        logger.info("Frontier head served {} dequeues from memory, {} had to read the backing store",
+                    getHeadPolls(), getSynchronousRefills());
+        backingLock.lock();
+        try {
+            List<WebURL> rest;
+            lock.lock();
+            try {
+                rest = new ArrayList<>(head.values());
+                rest.addAll(spill);
+                head.clear();
+                spill = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+            if (!rest.isEmpty()) {
+                backing.putAll(rest);
+            }
+        } finally {
+            backingLock.unlock();
+            backing.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * 128-bit murmur3 hash of a canonical URL, split into a 64-bit fingerprint used
+ * as the key of the seen-URL set and 32 further bits which tell apart the rare
+ * URLs whose fingerprints collide.
+ */
+public final class UrlFingerprint {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final long fingerprint;
+    private final int checkHash;
+
+    private UrlFingerprint(long fingerprint, int checkHash) {
+        this.fingerprint = fingerprint;
+        this.checkHash = checkHash;
+    }
+
+    public static UrlFingerprint of(String url) {
+        HashCode hash = HASH_FUNCTION.hashString(url, StandardCharsets.UTF_8);
+        byte[] bytes = hash.asBytes();
+        int checkHash = (bytes[8] & 0xFF) | (bytes[9] & 0xFF) << 8 | (bytes[10] & 0xFF) << 16 |
+                        (bytes[11] & 0xFF) << 24;
+        return new UrlFingerprint(hash.asLong(), checkHash);
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getCheckHash() {
+        return checkHash;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Keeps a buffer of URLs taken off the work queues ahead of time, so that crawler
+ * threads get their next batch from memory while a background thread does the
+ * storage I/O. The buffer is refilled to its size whenever it drops below the
+ * low-water mark.
+ *
+ * The buffer is guarded by the lock of the {@link Frontier}; every method but
+ * {@link #start()}, {@link #close()} and {@link #size()} has to be called holding it.
+ * New URLs in the buffer are announced through the condition crawler threads wait on.
+ */
+public class UrlPrefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(UrlPrefetcher.class);
+
+    private final ReentrantLock lock;
+    private final Condition urlsAvailable;
+    private final Condition refillNeeded;
+    private final IntFunction<List<WebURL>> source;
+    private final int bufferSize;
+    private final int lowWaterMark;
+    private final Thread thread;
+
+    private final ArrayDeque<WebURL> buffer = new ArrayDeque<>();
+    private volatile int size;
+    /** The last refill found the work queues empty, and nothing was scheduled since */
+    private boolean exhausted;
+    /** Incremented whenever URLs are scheduled, so that a refill can tell whether it missed some */
+    private long scheduleGeneration;
+    private boolean closed;
+
+    /**
+     * @param lock the lock of the frontier.
+     * @param urlsAvailable signalled when URLs were added to the buffer.
+     * @param source takes up to the given number of URLs off the work queues.
+     */
+    public UrlPrefetcher(ReentrantLock lock, Condition urlsAvailable, IntFunction<List<WebURL>> source,
+                         int bufferSize, int lowWaterMark) {
+        this.lock = lock;
+        this.urlsAvailable = urlsAvailable;
+        this.refillNeeded = lock.newCondition();
+        this.source = source;
+        this.bufferSize = bufferSize;
+        this.lowWaterMark = lowWaterMark;
+        this.thread = new Thread(this::run, "Frontier prefetch");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Moves up to {@code max} buffered URLs to {@code result}.
+     *
+     * @return the number of URLs added to {@code result}.
+     */
+    public int take(int max, List<WebURL> result) {
+        int taken = 0;
+        while (taken < max && !buffer.isEmpty()) {
+            result.add(buffer.poll());
+            taken++;
+        }
+        size = buffer.size();
+        if (size < lowWaterMark) {
+            refillNeeded.signal();
+        }
+        return taken;
+    }
+
+    /**
+     * @return true if the buffer is empty although the work queues may still hold URLs.
+     */
+    public boolean isBehind() {
+        return buffer.isEmpty() && !exhausted;
+    }
+
+    /**
+     * Tells the prefetcher that URLs were added to the work queues.
+     */
+    public void scheduled() {
+        scheduleGeneration++;
+        exhausted = false;
+        if (size < lowWaterMark) {
+            refillNeeded.signal();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            int wanted;
+            long generation;
+            lock.lock();
+            try {
+                while (!closed && (size >= lowWaterMark || exhausted)) {
+                    refillNeeded.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                wanted = bufferSize - size;
+                generation = scheduleGeneration;
+            } finally {
+                lock.unlock();
+            }
+
+            List<WebURL> urls;
+            try {
+                urls = source.apply(wanted);
+            } catch (RuntimeException e) {
+                // Wait for the next scheduled URLs before trying again
+                logger.error("Error while prefetching urls", e);
+                urls = Collections.emptyList();
+            }
+
+            lock.lock();
+            try {
+                if (!urls.isEmpty()) {
+                    buffer.addAll(urls);
+                    size = buffer.size();
+                    urlsAvailable.signalAll();
+                } else if (generation == scheduleGeneration) {
+                    exhausted = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of buffered URLs. May be read without holding the lock.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stops the background thread. The buffered URLs are dropped; they are still in
+     * process for resumable crawls, which schedule them again.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            refillNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
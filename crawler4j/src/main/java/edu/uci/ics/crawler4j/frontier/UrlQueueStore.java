@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * An ordered queue of URLs. Entries are returned in crawl order: lower priority
+ * values first, then lower depth, then lower docid.
+ */
+public interface UrlQueueStore {
+
+    void put(WebURL url);
+
+    /**
+     * Adds all URLs in one go. Stores backed by a database should write them as a
+     * single batch.
+     */
+    default void putAll(List<WebURL> urls) {
+        for (WebURL url : urls) {
+            put(url);
+        }
+    }
+
+    /**
+     * Returns (without removing) the first {@code max} URLs of the queue.
+     */
+    List<WebURL> get(int max);
+
+    /**
+     * Removes the first {@code count} URLs of the queue.
+     */
+    void delete(int count);
+
+    /**
+     * Removes and returns the first {@code max} URLs of the queue.
+     */
+    default List<WebURL> poll(int max) {
+        List<WebURL> results = get(max);
+        delete(results.size());
+        return results;
+    }
+
+    /**
+     * Removes the given URL from the queue.
+     *
+     * @return true if the URL was in the queue
+     */
+    boolean remove(WebURL url);
+
+    /**
+     * Removes the given URLs from the queue. Stores backed by a database should
+     * delete them as a single batch.
+     *
+     * @return the number of URLs which were in the queue
+     */
+    default int removeAll(List<WebURL> urls) {
+        int removed = 0;
+        for (WebURL url : urls) {
+            if (remove(url)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Passes all URLs of the queue in crawl order to {@code action}, at most
+     * {@code batchSize} at a time, without removing them. Stores backed by a
+     * database read the queue with one cursor, so the memory used does not depend
+     * on the length of the queue.
+     *
+     * @throws UnsupportedOperationException if the store can not list its URLs
+     */
+    default void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+        throw new UnsupportedOperationException("This queue can not list its URLs");
+    }
+
+    /**
+     * Moves all URLs of this queue to {@code target}, {@code batchSize} at a time.
+     * This queue is only cleared once every URL has been written to the target, so
+     * a move which fails half way leaves the URLs in both queues and can be repeated.
+     *
+     * @return the number of moved URLs
+     */
+    default long moveAllTo(UrlQueueStore target, int batchSize) {
+        long[] moved = {0};
+        forEachBatch(batchSize, batch -> {
+            target.putAll(batch);
+            moved[0] += batch.size();
+        });
+        clear();
+        return moved[0];
+    }
+
+    /**
+     * Removes all URLs of the queue.
+     */
+    default void clear() {
+        while (!poll(1000).isEmpty()) {
+            // Keep polling until the queue is empty
+        }
+    }
+
+    long getLength();
+
+    void close();
+}
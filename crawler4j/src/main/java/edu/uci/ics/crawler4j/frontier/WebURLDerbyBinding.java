@@ -1,23 +1,69 @@
 package edu.uci.ics.crawler4j.frontier;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 import edu.uci.ics.crawler4j.url.WebURL;
 
 /**
  * Derby binding for WebURL to replace Berkeley DB TupleBinding
+ *
+ * Entries are written in a compact format: a marker byte and a version, a flag
+ * byte, the numbers as varints, the URL with its scheme (and "www.") replaced by
+ * a one byte code, the parent URL as the length of the prefix it shares with the
+ * URL plus the rest, and the anchor. The parent URL and the anchor can be left
+ * out, in which case the parent is only referenced by its docid. Entries written
+ * by earlier versions (plain {@code writeUTF} fields) are still read.
+ *
+ * The encoder and decoder work on per thread buffers, so a put allocates little
+ * more than the returned entry.
  */
 public class WebURLDerbyBinding {
 
+    /**
+     * Never the first byte of an entry in the old format, whose first two bytes
+     * are the length of the URL; URLs of 65280 characters or more are not crawled.
+     */
+    private static final int COMPACT_FORMAT_MARKER = 0xFF;
+    private static final int VERSION = 1;
+
+    private static final int FLAG_PARENT_URL = 1;
+    private static final int FLAG_ANCHOR = 1 << 1;
+
+    /** Prefixes replaced by their index; the longest matching one is used */
+    private static final String[] URL_PREFIXES = {"", "http://", "https://", "http://www.", "https://www."};
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private final boolean storeParentUrl;
+    private final boolean storeAnchor;
+
+    public WebURLDerbyBinding() {
+        this(true, true);
+    }
+
+    /**
+     * @param storeParentUrl write the parent URL; otherwise only the parent docid is kept.
+     * @param storeAnchor write the anchor text of the link.
+     */
+    public WebURLDerbyBinding(boolean storeParentUrl, boolean storeAnchor) {
+        this.storeParentUrl = storeParentUrl;
+        this.storeAnchor = storeAnchor;
+    }
+
     public WebURL entryToObject(byte[] data) {
         if (data == null || data.length == 0) {
             return null;
         }
+        if ((data[0] & 0xFF) == COMPACT_FORMAT_MARKER) {
+            return BUFFERS.get().decode(data);
+        }
+        return legacyEntryToObject(data);
+    }
 
+    private static WebURL legacyEntryToObject(byte[] data) {
         try (ByteArrayInputStream bais = new ByteArrayInputStream(data);
              DataInputStream dis = new DataInputStream(bais)) {
 
@@ -40,22 +86,182 @@ public class WebURLDerbyBinding {
         if (url == null) {
             return new byte[0];
         }
+        return BUFFERS.get().encode(url, storeParentUrl, storeAnchor);
+    }
 
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             DataOutputStream dos = new DataOutputStream(baos)) {
+    private static int prefixCode(String url) {
+        int code = 0;
+        for (int i = 1; i < URL_PREFIXES.length; i++) {
+            if (url.startsWith(URL_PREFIXES[i]) && URL_PREFIXES[i].length() > URL_PREFIXES[code].length()) {
+                code = i;
+            }
+        }
+        return code;
+    }
 
-            dos.writeUTF(url.getURL() != null ? url.getURL() : "");
-            dos.writeInt(url.getDocid());
-            dos.writeInt(url.getParentDocid());
-            dos.writeUTF(url.getParentUrl() != null ? url.getParentUrl() : "");
-            dos.writeShort(url.getDepth());
-            dos.writeByte(url.getPriority());
-            dos.writeUTF(url.getAnchor() != null ? url.getAnchor() : "");
+    private static int commonPrefixLength(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
 
-            return baos.toByteArray();
+    private static final class Buffers {
+        private byte[] bytes = new byte[256];
+        private int position;
+        private byte[] input;
+        private int inputPosition;
+        private char[] chars = new char[256];
 
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to serialize WebURL", e);
+        byte[] encode(WebURL url, boolean storeParentUrl, boolean storeAnchor) {
+            String urlString = url.getURL() != null ? url.getURL() : "";
+            String parentUrl = storeParentUrl ? url.getParentUrl() : null;
+            String anchor = storeAnchor ? url.getAnchor() : null;
+
+            position = 0;
+            writeByte(COMPACT_FORMAT_MARKER);
+            writeByte(VERSION);
+            writeByte((parentUrl != null ? FLAG_PARENT_URL : 0) | (anchor != null ? FLAG_ANCHOR : 0));
+            writeVarInt(url.getDocid());
+            writeVarInt(url.getParentDocid());
+            writeVarInt(url.getDepth());
+            writeByte(url.getPriority());
+
+            int code = prefixCode(urlString);
+            writeByte(code);
+            writeString(urlString, URL_PREFIXES[code].length());
+            if (parentUrl != null) {
+                int shared = commonPrefixLength(urlString, parentUrl);
+                writeVarInt(shared);
+                writeString(parentUrl, shared);
+            }
+            if (anchor != null) {
+                writeString(anchor, 0);
+            }
+            return Arrays.copyOf(bytes, position);
+        }
+
+        WebURL decode(byte[] data) {
+            input = data;
+            inputPosition = 1;
+            try {
+                int version = readByte();
+                if (version != VERSION) {
+                    throw new IllegalArgumentException("Unsupported WebURL entry version: " + version);
+                }
+                int flags = readByte();
+                WebURL webURL = new WebURL();
+                webURL.setDocid(readVarInt());
+                webURL.setParentDocid(readVarInt());
+                webURL.setDepth((short) readVarInt());
+                webURL.setPriority((byte) readByte());
+
+                String urlString = readString(URL_PREFIXES[readByte()], -1);
+                webURL.setURL(urlString);
+                if ((flags & FLAG_PARENT_URL) != 0) {
+                    int shared = readVarInt();
+                    webURL.setParentUrl(readString(urlString, shared));
+                }
+                if ((flags & FLAG_ANCHOR) != 0) {
+                    webURL.setAnchor(readString("", 0));
+                }
+                return webURL;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new RuntimeException("Failed to deserialize WebURL", e);
+            } finally {
+                input = null;
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[position++] = (byte) value;
+        }
+
+        /** Zigzag encoded, so that the occasional negative number stays short */
+        private void writeVarInt(int value) {
+            ensureCapacity(5);
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[position++] = (byte) zigzag;
+        }
+
+        /**
+         * Writes the characters of {@code value} from {@code start} on as a varint
+         * length followed by the characters in modified UTF-8 (as {@code writeUTF} does).
+         */
+        private void writeString(String value, int start) {
+            int length = value.length() - start;
+            writeVarInt(length);
+            ensureCapacity(length * 3);
+            for (int i = start; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x0001 && c <= 0x007F) {
+                    bytes[position++] = (byte) c;
+                } else if (c <= 0x07FF) {
+                    bytes[position++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    bytes[position++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                    bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private int readByte() {
+            return input[inputPosition++] & 0xFF;
+        }
+
+        private int readVarInt() {
+            int zigzag = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = input[inputPosition++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        /**
+         * Reads a string written by {@link #writeString(String, int)} and prepends the
+         * first {@code prefixLength} characters of {@code prefix} (all of them if -1).
+         */
+        private String readString(String prefix, int prefixLength) {
+            if (prefixLength < 0) {
+                prefixLength = prefix.length();
+            }
+            int length = readVarInt();
+            int total = prefixLength + length;
+            if (chars.length < total) {
+                chars = new char[Math.max(chars.length * 2, total)];
+            }
+            prefix.getChars(0, prefixLength, chars, 0);
+            for (int i = prefixLength; i < total; i++) {
+                int b = input[inputPosition++] & 0xFF;
+                if (b < 0x80) {
+                    chars[i] = (char) b;
+                } else if ((b & 0xE0) == 0xC0) {
+                    chars[i] = (char) (((b & 0x1F) << 6) | (input[inputPosition++] & 0x3F));
+                } else {
+                    chars[i] = (char) (((b & 0x0F) << 12) | ((input[inputPosition++] & 0x3F) << 6) |
+                                       (input[inputPosition++] & 0x3F));
+                }
+            }
+            return new String(chars, 0, total);
         }
     }
 }
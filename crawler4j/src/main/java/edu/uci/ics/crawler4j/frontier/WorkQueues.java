@@ -17,117 +17,125 @@
 
 package edu.uci.ics.crawler4j.frontier;
 
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.uci.ics.crawler4j.db.DerbyDatabase;
 import edu.uci.ics.crawler4j.db.DerbyEnvironment;
 import edu.uci.ics.crawler4j.url.WebURL;
-import edu.uci.ics.crawler4j.util.Util;
 
 /**
  * @author Yasser Ganjisaffar
  */
 public class WorkQueues {
     private static final Logger logger = LoggerFactory.getLogger(WorkQueues.class);
-    protected final DerbyDatabase urlsDB;
-    private final DerbyEnvironment env;
-
-    private final boolean resumable;
-
-    private final WebURLDerbyBinding webURLBinding;
+    protected final UrlQueueStore urlsDB;
 
     protected final Object mutex = new Object();
 
     public WorkQueues(DerbyEnvironment env, String dbName, boolean resumable) {
-        this.env = env;
-        this.resumable = resumable;
-        DerbyEnvironment.DerbyDatabaseConfig dbConfig = new DerbyEnvironment.DerbyDatabaseConfig();
-        dbConfig.setAllowCreate(true);
-        dbConfig.setTransactional(resumable);
-        dbConfig.setDeferredWrite(!resumable);
-        urlsDB = env.openDatabase(dbName, dbConfig);
-        webURLBinding = new WebURLDerbyBinding();
+        this(new DerbyFrontierStore(env, resumable), dbName);
     }
 
-    protected DerbyDatabase.DerbyTransaction beginTransaction() {
-        return resumable ? urlsDB.beginTransaction() : null;
+    public WorkQueues(FrontierStore store, String dbName) {
+        this(store.openQueue(dbName));
     }
 
-    protected static void commit(DerbyDatabase.DerbyTransaction tnx) {
-        if (tnx != null) {
-            tnx.commit();
-        }
+    public WorkQueues(UrlQueueStore urlsDB) {
+        this.urlsDB = urlsDB;
     }
 
     public List<WebURL> get(int max) {
         synchronized (mutex) {
-            List<WebURL> results = new ArrayList<>(max);
             try {
-                List<DerbyDatabase.DerbyCursorEntry> entries = urlsDB.getFirstNEntries(max);
-                for (DerbyDatabase.DerbyCursorEntry entry : entries) {
-                    if (entry.getValue().length > 0) {
-                        results.add(webURLBinding.entryToObject(entry.getValue()));
-                    }
-                }
-            } catch (SQLException e) {
+                return urlsDB.get(max);
+            } catch (RuntimeException e) {
                 logger.error("Failed to get URLs from database", e);
+                return new ArrayList<>();
             }
-            return results;
         }
     }
 
     public void delete(int count) {
         synchronized (mutex) {
             try {
-                urlsDB.deleteFirstNEntries(count);
-            } catch (SQLException e) {
+                urlsDB.delete(count);
+            } catch (RuntimeException e) {
                 logger.error("Failed to delete URLs from database", e);
             }
         }
     }
 
-    /*
-     * The key that is used for storing URLs determines the order
-     * they are crawled. Lower key values results in earlier crawling.
-     * Here our keys are 6 bytes. The first byte comes from the URL priority.
-     * The second byte comes from depth of crawl at which this URL is first found.
-     * The rest of the 4 bytes come from the docid of the URL. As a result,
-     * URLs with lower priority numbers will be crawled earlier. If priority
-     * numbers are the same, those found at lower depths will be crawled earlier.
-     * If depth is also equal, those found earlier (therefore, smaller docid) will
-     * be crawled earlier.
+    /**
+     * Removes and returns the next {@code max} URLs in crawl order.
      */
-    protected static String getDatabaseEntryKey(WebURL url) {
-        byte[] keyData = new byte[6];
-        keyData[0] = url.getPriority();
-        keyData[1] = ((url.getDepth() > Byte.MAX_VALUE) ? Byte.MAX_VALUE : (byte) url.getDepth());
-        Util.putIntInByteArray(url.getDocid(), keyData, 2);
-        return new String(keyData);
+    public List<WebURL> poll(int max) {
+        synchronized (mutex) {
+            try {
+                return urlsDB.poll(max);
+            } catch (RuntimeException e) {
+                logger.error("Failed to poll URLs from database", e);
+                return new ArrayList<>();
+            }
+        }
     }
 
     public void put(WebURL url) {
         try {
-            byte[] value = webURLBinding.objectToEntry(url);
-            urlsDB.put(getDatabaseEntryKey(url), value);
-        } catch (SQLException e) {
+            urlsDB.put(url);
+        } catch (RuntimeException e) {
             logger.error("Failed to put URL in database", e);
         }
     }
 
+    public void putAll(List<WebURL> urls) {
+        try {
+            urlsDB.putAll(urls);
+        } catch (RuntimeException e) {
+            logger.error("Failed to put URLs in database", e);
+        }
+    }
+
     public long getLength() {
         try {
-            return urlsDB.count();
-        } catch (SQLException e) {
+            return urlsDB.getLength();
+        } catch (RuntimeException e) {
             logger.error("Failed to get database count", e);
             return 0;
         }
     }
 
+    /**
+     * Passes all URLs in crawl order to {@code action}, {@code batchSize} at a time,
+     * without removing them. Unlike the other methods, failures are not logged but
+     * thrown, so that a caller never acts on a partial pass.
+     */
+    public void forEachBatch(int batchSize, Consumer<List<WebURL>> action) {
+        // Not under the mutex: the action may well lock other queues
+        urlsDB.forEachBatch(batchSize, action);
+    }
+
+    /**
+     * Moves all URLs to {@code target}. Failures are thrown, see {@link #forEachBatch(int, Consumer)}.
+     *
+     * @return the number of moved URLs
+     */
+    public long moveAllTo(WorkQueues target, int batchSize) {
+        return urlsDB.moveAllTo(target.urlsDB, batchSize);
+    }
+
+    /**
+     * Removes all URLs. Failures are thrown, see {@link #forEachBatch(int, Consumer)}.
+     */
+    public void clear() {
+        synchronized (mutex) {
+            urlsDB.clear();
+        }
+    }
+
     public void close() {
         urlsDB.close();
     }
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * One local deque of URLs per crawler thread. A thread fills its deque in bulk from
+ * the {@link Frontier}, adds the links it finds on the host it is crawling, and
+ * takes its next URL from the head, without touching the lock of the frontier.
+ * Threads which run out of work steal from the tail of the fullest deque of the
+ * others before they wait for the frontier.
+ */
+public class WorkStealingQueues {
+
+    private final List<LocalQueue> queues = new CopyOnWriteArrayList<>();
+    private final int capacity;
+    private final AtomicLong stolen = new AtomicLong();
+
+    /**
+     * @param capacity the number of discovered links a local deque takes; the rest go to the frontier.
+     */
+    public WorkStealingQueues(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return a new deque for the calling crawler thread.
+     */
+    public LocalQueue register() {
+        LocalQueue queue = new LocalQueue();
+        queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * Removes the deque of a crawler thread which stops.
+     *
+     * @return the URLs which were left in it.
+     */
+    public List<WebURL> unregister(LocalQueue queue) {
+        queues.remove(queue);
+        List<WebURL> left = new ArrayList<>();
+        WebURL url;
+        while ((url = queue.pollFirst()) != null) {
+            left.add(url);
+        }
+        return left;
+    }
+
+    /**
+     * Moves up to {@code max} URLs, and at most half of them, from the tail of the
+     * fullest deque other than the thief's to {@code result}.
+     *
+     * @return the number of stolen URLs.
+     */
+    public int steal(LocalQueue thief, int max, List<WebURL> result) {
+        LocalQueue victim = null;
+        for (LocalQueue queue : queues) {
+            if (queue != thief && (victim == null || queue.size() > victim.size())) {
+                victim = queue;
+            }
+        }
+        if (victim == null) {
+            return 0;
+        }
+        int wanted = Math.min(max, (victim.size() + 1) / 2);
+        int taken = 0;
+        WebURL url;
+        while (taken < wanted && (url = victim.pollLast()) != null) {
+            result.add(url);
+            taken++;
+        }
+        stolen.addAndGet(taken);
+        return taken;
+    }
+
+    /**
+     * @return the number of URLs in all deques.
+     */
+    public long size() {
+        long size = 0;
+        for (LocalQueue queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of URLs threads took from the deques of others.
+     */
+    public long getStolen() {
+        return stolen.get();
+    }
+
+    public class LocalQueue {
+        private final ConcurrentLinkedDeque<WebURL> deque = new ConcurrentLinkedDeque<>();
+        /** ConcurrentLinkedDeque.size() walks the deque */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * Adds URLs taken from the frontier, regardless of the capacity.
+         */
+        public void addAll(List<WebURL> urls) {
+            for (WebURL url : urls) {
+                deque.addLast(url);
+                size.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return the number of discovered links this deque still takes.
+         */
+        public int remainingCapacity() {
+            return Math.max(0, capacity - size.get());
+        }
+
+        public WebURL pollFirst() {
+            WebURL url = deque.pollFirst();
+            if (url != null) {
+                size.decrementAndGet();
+            }
+            return url;
+        }
+
+        WebURL pollLast() {
+            WebURL url = deque.pollLast();
+            if (url != null) {
+                size.decrementAndGet();
+            }
+            return url;
+        }
+
+        public int size() {
+            return size.get();
+        }
+    }
+}
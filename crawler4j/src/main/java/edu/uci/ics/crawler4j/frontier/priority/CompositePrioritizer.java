@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier.priority;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Adds up the scores of several prioritizers, e.g. the in-link count with a
+ * penalty for hosts which already have many URLs scheduled.
+ */
+public class CompositePrioritizer implements UrlPrioritizer {
+
+    private final List<UrlPrioritizer> prioritizers;
+
+    public CompositePrioritizer(UrlPrioritizer... prioritizers) {
+        this.prioritizers = Arrays.asList(prioritizers);
+    }
+
+    @Override
+    public int score(WebURL url) {
+        int score = 0;
+        for (UrlPrioritizer prioritizer : prioritizers) {
+            score += prioritizer.score(url);
+        }
+        return score;
+    }
+
+    @Override
+    public void onLinks(WebURL page, Collection<WebURL> links) {
+        for (UrlPrioritizer prioritizer : prioritizers) {
+            prioritizer.onLinks(page, links);
+        }
+    }
+
+    @Override
+    public void onScheduled(WebURL url) {
+        for (UrlPrioritizer prioritizer : prioritizers) {
+            prioritizer.onScheduled(url);
+        }
+    }
+}
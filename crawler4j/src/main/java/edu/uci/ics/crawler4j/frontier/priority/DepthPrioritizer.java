@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier.priority;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Crawls shallow URLs first: the score grows with the depth at which a URL was found.
+ */
+public class DepthPrioritizer implements UrlPrioritizer {
+
+    private final int weight;
+
+    public DepthPrioritizer() {
+        this(1);
+    }
+
+    /**
+     * @param weight the score of each level of depth
+     */
+    public DepthPrioritizer(int weight) {
+        this.weight = weight;
+    }
+
+    @Override
+    public int score(WebURL url) {
+        return Math.max(0, url.getDepth()) * weight;
+    }
+}
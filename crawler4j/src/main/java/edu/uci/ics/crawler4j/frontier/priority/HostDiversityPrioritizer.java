@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier.priority;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Spreads the crawl over many hosts: the score of a URL grows with the number of
+ * URLs of its host which were scheduled before it, so a single large site does
+ * not use up the budget of a crawl.
+ */
+public class HostDiversityPrioritizer implements UrlPrioritizer {
+
+    private final int urlsPerStep;
+    private final ConcurrentMap<String, AtomicInteger> scheduled = new ConcurrentHashMap<>();
+
+    public HostDiversityPrioritizer() {
+        this(100);
+    }
+
+    /**
+     * @param urlsPerStep the number of scheduled URLs of a host which add one to the
+     *            score of its next URLs
+     */
+    public HostDiversityPrioritizer(int urlsPerStep) {
+        this.urlsPerStep = urlsPerStep;
+    }
+
+    @Override
+    public int score(WebURL url) {
+        AtomicInteger count = scheduled.get(url.getHost());
+        return count == null ? 0 : count.get() / urlsPerStep;
+    }
+
+    @Override
+    public void onScheduled(WebURL url) {
+        scheduled.computeIfAbsent(url.getHost(), host -> new AtomicInteger()).incrementAndGet();
+    }
+}
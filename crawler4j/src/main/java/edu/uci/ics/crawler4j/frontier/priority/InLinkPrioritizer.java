@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier.priority;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Crawls the URLs with the most in-links first, weighted the way OPIC (Online Page
+ * Importance Computation) does: every page starts with one unit of cash, plus the
+ * cash its in-links brought it before it was crawled, and divides it equally among
+ * its outgoing links which are still to be crawled (see
+ * {@link UrlPrioritizer#onLinks(WebURL, Collection)}). The score is the negated
+ * base-2 logarithm of the cash of a URL, times the resolution, so every doubling
+ * of cash moves a URL that many priorities ahead.
+ */
+public class InLinkPrioritizer implements UrlPrioritizer {
+
+    private static final double INITIAL_CASH = 1.0;
+
+    private final int resolution;
+    private final int maxTrackedUrls;
+    /** Cash of the URLs which have not been crawled yet */
+    private final ConcurrentMap<String, Double> cash = new ConcurrentHashMap<>();
+
+    public InLinkPrioritizer() {
+        this(4, 1000000);
+    }
+
+    /**
+     * @param resolution the score of each halving of cash
+     * @param maxTrackedUrls the number of URLs whose cash is tracked at most; further
+     *            URLs are scored like seeds
+     */
+    public InLinkPrioritizer(int resolution, int maxTrackedUrls) {
+        this.resolution = resolution;
+        this.maxTrackedUrls = maxTrackedUrls;
+    }
+
+    @Override
+    public void onLinks(WebURL page, Collection<WebURL> links) {
+        Double pageCash = cash.remove(page.getURL());
+        if (links.isEmpty()) {
+            return;
+        }
+        double share = (pageCash == null ? INITIAL_CASH : pageCash) / links.size();
+        for (WebURL link : links) {
+            if (cash.size() < maxTrackedUrls || cash.containsKey(link.getURL())) {
+                cash.merge(link.getURL(), share, Double::sum);
+            }
+        }
+    }
+
+    @Override
+    public int score(WebURL url) {
+        double urlCash = getCash(url.getURL());
+        return (int) Math.round(-Math.log(urlCash) / Math.log(2) * resolution);
+    }
+
+    /**
+     * @return the cash a URL got from the pages linking to it so far, or the initial
+     *         cash if it is not tracked (such as a seed).
+     */
+    public double getCash(String url) {
+        return cash.getOrDefault(url, INITIAL_CASH);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.frontier.priority;
+
+import java.util.Collection;
+
+import edu.uci.ics.crawler4j.url.WebURL;
+
+/**
+ * Scores the URLs the frontier schedules; the score, clamped to a byte, becomes
+ * the {@link WebURL#getPriority() priority} of the URL, so lower scores are
+ * crawled earlier. Implementations are called by all crawler threads at once.
+ */
+public interface UrlPrioritizer {
+
+    /**
+     * @return the score of a URL which is scheduled, or of a queued URL which is
+     *         linked to again (see {@link #onLinks(WebURL, Collection)}).
+     */
+    int score(WebURL url);
+
+    /**
+     * Called with the outgoing links of a crawled page which are still to be crawled,
+     * before its new links are scored: the ones about to be scheduled and the ones to
+     * queued URLs. Links to URLs which were crawled already, or which will never be
+     * (turned down by shouldVisit, robots.txt or the maximum depth), are left out.
+     * Queued URLs among them are scored again if the frontier can move them to
+     * another priority.
+     */
+    default void onLinks(WebURL page, Collection<WebURL> links) {
+    }
+
+    /**
+     * Called for each URL which is scheduled, after it was scored.
+     */
+    default void onScheduled(WebURL url) {
+    }
+}
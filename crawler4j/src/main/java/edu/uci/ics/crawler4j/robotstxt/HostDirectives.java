@@ -145,6 +145,27 @@ public class HostDirectives {
         rules.add(directives);
     }
 
+    /**
+     * The Crawl-delay of the rule set which most specifically matches the configured
+     * user agent, the same one whose path rules are obeyed.
+     *
+     * @return the crawl delay in milliseconds, or -1 if that rule set has none.
+     */
+    public long getCrawlDelay() {
+        String myUA = config.getUserAgentName();
+        for (UserAgentDirectives ua : rules) {
+            if (ua.match(myUA) == 0) {
+                break;
+            }
+            Double crawlDelay = ua.getCrawlDelay();
+            if (crawlDelay != null && crawlDelay >= 0) {
+                return Math.round(crawlDelay * 1000);
+            }
+            break;
+        }
+        return -1;
+    }
+
     public long getLastAccessTime() {
         return timeLastAccessed;
     }
@@ -46,6 +46,16 @@ public class RobotstxtConfig {
      */
     private int cacheSize = 500;
 
+    /**
+     * Whether the Crawl-delay of a robots.txt replaces the politeness delay for its host.
+     */
+    private boolean honorCrawlDelay = true;
+
+    /**
+     * The longest Crawl-delay in milliseconds which is honored; longer ones are cut down to it.
+     */
+    private long maxCrawlDelay = 30000;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -77,4 +87,30 @@ public class RobotstxtConfig {
     public boolean getIgnoreUADiscrimination() {
         return ignoreUADiscrimination;
     }
+
+    public boolean isHonorCrawlDelay() {
+        return honorCrawlDelay;
+    }
+
+    /**
+     * Use the Crawl-delay a host asks for in its robots.txt as the delay between two
+     * requests to it, instead of the politeness delay of the crawl; shorter and longer
+     * ones alike. Hosts without one keep the politeness delay.
+     */
+    public void setHonorCrawlDelay(boolean honorCrawlDelay) {
+        this.honorCrawlDelay = honorCrawlDelay;
+    }
+
+    public long getMaxCrawlDelay() {
+        return maxCrawlDelay;
+    }
+
+    /**
+     * Upper bound in milliseconds for an honored Crawl-delay, so that a robots.txt
+     * asking for hours between two requests does not hold on to its host queue
+     * (and the URLs in it) for the rest of the crawl.
+     */
+    public void setMaxCrawlDelay(long maxCrawlDelay) {
+        this.maxCrawlDelay = maxCrawlDelay;
+    }
 }
@@ -93,6 +93,9 @@ public class RobotstxtServer {
             }
             if (directives == null) {
                 directives = fetchDirectives(url);
+            } else {
+                // The rate limiter may have dropped the delay of a host it has not fetched from in a while
+                applyCrawlDelay(host, directives);
             }
             return directives.allows(path);
         } catch (MalformedURLException e) {
@@ -186,6 +189,11 @@ public class RobotstxtServer {
             // We still need to have this object to keep track of the time we fetched it
             directives = new HostDirectives(config);
         }
+        if (config.isHonorCrawlDelay() && directives.getCrawlDelay() > config.getMaxCrawlDelay()) {
+            logger.info("robots.txt of {} asks for a Crawl-delay of {} ms, using the maximum of {} ms", host,
+                        directives.getCrawlDelay(), config.getMaxCrawlDelay());
+        }
+        applyCrawlDelay(host, directives);
         synchronized (host2directivesCache) {
             if (host2directivesCache.size() == config.getCacheSize()) {
                 String minHost = null;
@@ -204,6 +212,33 @@ public class RobotstxtServer {
         return directives;
     }
 
+    /**
+     * Passes the Crawl-delay of a host, capped at the maximum, on to the rate limiter of the fetcher.
+     */
+    private void applyCrawlDelay(String host, HostDirectives directives) {
+        if (config.isHonorCrawlDelay()) {
+            long crawlDelay = Math.min(directives.getCrawlDelay(), config.getMaxCrawlDelay());
+            pageFetcher.getHostRateLimiter().setCrawlDelay(host, crawlDelay);
+        }
+    }
+
+    /**
+     * @return the Crawl-delay in milliseconds the host of the URL asks for in its
+     *         cached robots.txt, or -1 if it asks for none or its robots.txt was not
+     *         fetched yet.
+     */
+    public long getCrawlDelay(WebURL webURL) {
+        try {
+            HostDirectives directives;
+            synchronized (host2directivesCache) {
+                directives = host2directivesCache.get(getHost(new URL(webURL.getURL())));
+            }
+            return directives == null ? -1 : directives.getCrawlDelay();
+        } catch (MalformedURLException e) {
+            return -1;
+        }
+    }
+
     public void setCrawlConfig(CrawlConfig crawlConfig) {
         this.crawlConfig = crawlConfig;
     }
@@ -183,6 +183,27 @@ public class WebURL implements Serializable {
         return subDomain;
     }
 
+    /**
+     * @return
+     *      host of this Url in lower case, without user info and port. For
+     *      'http://www.Example.com:8080/sample.htm' the host is 'www.example.com'.
+     */
+    public String getHost() {
+        int start = url.indexOf("//");
+        start = start < 0 ? 0 : start + 2;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = url.substring(start, end);
+        authority = authority.substring(authority.lastIndexOf('@') + 1);
+        int portIdx = authority.startsWith("[") ? authority.indexOf(']') + 1 : authority.indexOf(':');
+        if (portIdx > 0 && portIdx < authority.length()) {
+            authority = authority.substring(0, portIdx);
+        }
+        return authority.toLowerCase();
+    }
+
     /**
      * @return
      *      path of this Url. For 'http://www.example.com/sample.htm', registeredDomain will be 'sample.htm'
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.uci.ics.crawler4j.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+/**
+ * A Bloom filter of strings which grows with the number of insertions.
+ *
+ * It is a chain of Guava {@link BloomFilter}s: once a stage holds its expected
+ * number of elements a new stage with twice the capacity and half the false
+ * positive probability is added, which keeps the false positive probability of
+ * the whole chain below the configured one (Almeida et al., "Scalable Bloom Filters").
+ *
+ * {@link #mightContain(String)} and {@link #put(String)} are thread safe, but
+ * concurrent calls to {@link #put(String)} may let a stage overfill slightly.
+ */
+public class ScalableBloomFilter {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final Funnel<CharSequence> FUNNEL = Funnels.unencodedCharsFunnel();
+
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+    private final long initialCapacity;
+    private final double falsePositiveProbability;
+
+    /**
+     * @param initialCapacity the number of insertions the first stage is sized for.
+     * @param falsePositiveProbability the false positive probability of the whole filter.
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveProbability) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid initial capacity: " + initialCapacity);
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException(
+                "Invalid false positive probability: " + falsePositiveProbability);
+        }
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveProbability = falsePositiveProbability;
+        addStage();
+    }
+
+    private Stage addStage() {
+        int index = stages.size();
+        long capacity = initialCapacity << Math.min(index, 20);
+        double fpp = falsePositiveProbability * (1 - TIGHTENING_RATIO) * Math.pow(TIGHTENING_RATIO, index);
+        Stage stage = new Stage(capacity, BloomFilter.create(FUNNEL, capacity, fpp));
+        stages.add(stage);
+        return stage;
+    }
+
+    public boolean mightContain(String value) {
+        for (Stage stage : stages) {
+            if (stage.filter.mightContain(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(String value) {
+        Stage current = stages.get(stages.size() - 1);
+        if (current.filter.approximateElementCount() >= current.capacity) {
+            synchronized (stages) {
+                current = stages.get(stages.size() - 1);
+                if (current.filter.approximateElementCount() >= current.capacity) {
+                    current = addStage();
+                }
+            }
+        }
+        current.filter.put(value);
+    }
+
+    /**
+     * @return the false positive probability expected from the current fill level.
+     */
+    public double expectedFpp() {
+        double notFalsePositive = 1;
+        for (Stage stage : stages) {
+            notFalsePositive *= 1 - stage.filter.expectedFpp();
+        }
+        return 1 - notFalsePositive;
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(FORMAT_VERSION);
+        dos.writeLong(initialCapacity);
+        dos.writeDouble(falsePositiveProbability);
+        dos.writeInt(stages.size());
+        for (Stage stage : stages) {
+            dos.writeLong(stage.capacity);
+            stage.filter.writeTo(dos);
+        }
+        dos.flush();
+    }
+
+    public static ScalableBloomFilter readFrom(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        int version = dis.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported bloom filter format: " + version);
+        }
+        ScalableBloomFilter bloomFilter = new ScalableBloomFilter(dis.readLong(), dis.readDouble());
+        bloomFilter.stages.clear();
+        int stageCount = dis.readInt();
+        for (int i = 0; i < stageCount; i++) {
+            long capacity = dis.readLong();
+            bloomFilter.stages.add(new Stage(capacity, BloomFilter.readFrom(dis, FUNNEL)));
+        }
+        return bloomFilter;
+    }
+
+    private static class Stage {
+        private final long capacity;
+        private final BloomFilter<CharSequence> filter;
+
+        Stage(long capacity, BloomFilter<CharSequence> filter) {
+            this.capacity = capacity;
+            this.filter = filter;
+        }
+    }
+}
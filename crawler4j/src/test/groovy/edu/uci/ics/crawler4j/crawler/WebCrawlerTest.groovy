@@ -3,6 +3,7 @@ package edu.uci.ics.crawler4j.crawler
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration
 import com.github.tomakehurst.wiremock.junit.WireMockRule
 import edu.uci.ics.crawler4j.fetcher.PageFetcher
+import edu.uci.ics.crawler4j.frontier.priority.InLinkPrioritizer
 import edu.uci.ics.crawler4j.robotstxt.RobotstxtConfig
 import edu.uci.ics.crawler4j.robotstxt.RobotstxtServer
 import edu.uci.ics.crawler4j.url.WebURL
@@ -102,6 +103,54 @@ class WebCrawlerTest extends Specification {
         verify(exactly(1), getRequestedFor(urlEqualTo("/some/page3.html")))
         verify(exactly(0), getRequestedFor(urlEqualTo("/some/${pageUnvisited}")))
     }
+
+    def "gives no in-link cash to links turned down by shouldVisit"() {
+        given: "an index page with a link to visit and one to turn down"
+        stubFor(get(urlEqualTo("/some/index.html"))
+                .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "text/html")
+                .withBody(
+                $/<html>
+                    <body>
+                        <a href="/some/page1.html">a link</a>
+                        <a href="/some/page4.html">a link turned down</a>
+                    </body>
+                   </html>/$
+        )))
+        stubFor(get(urlPathMatching("/some/page1.html"))
+                .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "text/html")
+                .withBody("<html><body><h1>title</h1></body></html>")))
+        stubFor(get(urlPathMatching("/robots.txt"))
+                .willReturn(aResponse()
+                .withStatus(404)))
+
+        when:
+        def prioritizer = new InLinkPrioritizer()
+        CrawlConfig config = new CrawlConfig(
+                crawlStorageFolder: temp.getRoot().getAbsolutePath()
+                , politenessDelay: 100
+                , maxConnectionsPerHost: 1
+                , threadShutdownDelaySeconds: 1
+                , threadMonitoringDelaySeconds: 1
+                , cleanupDelaySeconds: 1
+                , urlPrioritizer: prioritizer
+        )
+
+        PageFetcher pageFetcher = new PageFetcher(config)
+        RobotstxtServer robotstxtServer = new RobotstxtServer(new RobotstxtConfig(), pageFetcher)
+        CrawlController controller = new CrawlController(config, pageFetcher, robotstxtServer)
+        controller.addSeed "http://localhost:" + wireMockRule.port() + "/some/index.html"
+
+        controller.start(TurnDownPageWebCrawler.class, 1)
+
+        then: "the turned down link is not tracked, so the whole cash of the index went to page1"
+        verify(exactly(1), getRequestedFor(urlEqualTo("/some/page1.html")))
+        verify(exactly(0), getRequestedFor(urlEqualTo("/some/${pageUnvisited}")))
+        prioritizer.getCash("http://localhost:" + wireMockRule.port() + "/some/${pageUnvisited}") == 1.0d
+    }
 }
 
 class ShouldNotVisitPageWebCrawler extends WebCrawler {
@@ -112,3 +161,11 @@ class ShouldNotVisitPageWebCrawler extends WebCrawler {
         return true
     }
 }
+
+class TurnDownPageWebCrawler extends WebCrawler {
+
+    @Override
+    boolean shouldVisit(Page referringPage, WebURL url) {
+        return !url.path.endsWith("page4.html")
+    }
+}
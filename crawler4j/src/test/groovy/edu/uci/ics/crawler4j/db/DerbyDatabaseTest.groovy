@@ -0,0 +1,232 @@
+package edu.uci.ics.crawler4j.db
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class DerbyDatabaseTest extends Specification {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder()
+
+    def databases = []
+
+    def cleanup() {
+        databases.each { it.close() }
+    }
+
+    def "writes new entries as one batch"() {
+        given:
+        def db = open("DocIDs")
+
+        when:
+        db.putAll((1..500).collect { entry("key${it}", it) })
+
+        then:
+        db.count() == 500
+        db.get("key1") == [1] as byte[]
+        db.get("key500") == [500 as byte] as byte[]
+    }
+
+    def "falls back to update-or-insert per entry when a key of the batch exists"() {
+        given:
+        def db = open("DocIDs")
+        db.put("key2", [0] as byte[])
+
+        when:
+        db.putAll([entry("key1", 1), entry("key2", 2), entry("key3", 3)])
+
+        then:
+        db.count() == 3
+        db.get("key1") == [1] as byte[]
+        db.get("key2") == [2] as byte[]
+        db.get("key3") == [3] as byte[]
+    }
+
+    def "counts a queue batch once when it falls back to update-or-insert"() {
+        given:
+        def db = open("PendingURLsDB")
+        db.putQueueEntry(2L, [0] as byte[])
+
+        when:
+        db.putQueueEntries([queueEntry(1L), queueEntry(2L), queueEntry(3L)])
+
+        then:
+        db.countQueueEntries() == 3
+        db.getFirstQueueEntries(10)*.value == [[1], [2], [3]].collect { it as byte[] }
+    }
+
+    def "deletes queue entries by key as one batch"() {
+        given:
+        def db = open("PendingURLsDB")
+        db.putQueueEntries((1L..5L).collect { queueEntry(it) })
+
+        when:
+        def deleted = db.deleteQueueKeys([2L, 4L, 9L])
+
+        then:
+        deleted == 2
+        db.countQueueEntries() == 3
+        db.getFirstQueueEntries(10)*.key == [1L, 3L, 5L]
+    }
+
+    def "reports a duplicate fingerprint of a batch without overwriting it"() {
+        given:
+        def db = open("DocIDs")
+        db.insertFingerprint(new DerbyDatabase.FingerprintEntry(2L, 0, 20))
+
+        when:
+        def inserted = db.insertFingerprints([new DerbyDatabase.FingerprintEntry(1L, 0, 10),
+                                              new DerbyDatabase.FingerprintEntry(2L, 0, 21)])
+
+        then:
+        !inserted
+        db.getFingerprint(2L).docId == 20
+    }
+
+    def "releases the connection of a thread once it died"() {
+        given:
+        def db = open("DocIDs")
+        db.put("key", [1] as byte[])
+
+        when:
+        Thread.start { db.get("key") }.join()
+        def afterFirst = db.threadConnectionCount
+        Thread.start { db.get("key") }.join()
+
+        then: "the connection of the first thread made way for the one of the second"
+        afterFirst == 2
+        db.threadConnectionCount == 2
+    }
+
+    def "reads from many threads at once"() {
+        given:
+        def db = open("DocIDs")
+        db.putAll((1..100).collect { entry("key${it}", it) })
+        def found = Collections.synchronizedList([])
+
+        when:
+        (1..8).collect { Thread.start { (1..100).each { found << db.get("key${it}")[0] } } }*.join()
+
+        then:
+        found.size() == 800
+        found.sum() == 8 * (1..100).sum { it as byte }
+    }
+
+    def "a transaction takes only the statements of the thread which began it"() {
+        given:
+        def db = open("DocIDs")
+        def txn = db.beginTransaction()
+        db.put("mine", [1] as byte[])
+
+        when:
+        Thread.start { db.put("theirs", [2] as byte[]) }.join()
+        txn.rollback()
+
+        then:
+        db.get("mine") == null
+        db.get("theirs") == [2] as byte[]
+    }
+
+    def "compresses the queue table in place and forgets the deleted rows"() {
+        given:
+        def db = open("PendingURLsDB")
+        db.putQueueEntries((1L..200L).collect { queueEntry(it) })
+        db.pollFirstQueueEntries(150)
+
+        expect:
+        db.deletedRowsSinceCompression == 150
+
+        when:
+        def reclaimed = db.compressInPlace()
+
+        then:
+        reclaimed >= 0
+        db.deletedRowsSinceCompression == 0
+        db.countQueueEntries() == 50
+        db.getFirstQueueEntries(1)[0].key == 151
+    }
+
+    def "saves the queue length on close and takes it back on the next open"() {
+        given:
+        def db = open("PendingURLsDB")
+        db.putQueueEntries((1L..3L).collect { queueEntry(it) })
+
+        when:
+        close(db)
+        def reopened = open("PendingURLsDB")
+
+        then:
+        reopened.countQueueEntries() == 3
+        reopened.getAllCounters().every { it.key != "queue_table.length" }
+    }
+
+    def "counts the queue rows again when the last run did not close the database"() {
+        given: "a length saved by a clean close, then entries added by a run which crashed"
+        def db = open("PendingURLsDB")
+        db.putQueueEntries((1L..3L).collect { queueEntry(it) })
+        close(db)
+        def crashed = open("PendingURLsDB")
+        crashed.putQueueEntries((4L..5L).collect { queueEntry(it) })
+
+        when:
+        def recovered = new DerbyDatabase(temp.root.absolutePath, "PendingURLsDB", true, true)
+        databases << recovered
+
+        then:
+        recovered.countQueueEntries() == 5
+    }
+
+    def "maintains the queue length through polls, deletes and transactions"() {
+        given:
+        def db = open("PendingURLsDB")
+        db.putQueueEntries((1L..10L).collect { queueEntry(it) })
+
+        when:
+        db.pollFirstQueueEntries(3)
+        db.deleteQueueEntry(10L)
+        db.deleteQueueEntry(42L)
+
+        then:
+        db.countQueueEntries() == 6
+
+        when:
+        def txn = db.beginTransaction()
+        db.deleteQueueEntriesUpTo(6L)
+        def seenByOthers = null
+        Thread.start { seenByOthers = db.countQueueEntries() }.join()
+        txn.rollback()
+
+        then: "the length changes only once a transaction commits"
+        seenByOthers == 6
+        db.countQueueEntries() == 6
+
+        when:
+        txn = db.beginTransaction()
+        db.putQueueEntry(11L, [11] as byte[])
+        txn.commit()
+
+        then:
+        db.countQueueEntries() == 7
+        db.countQueueEntries() == db.getFirstQueueEntries(100).size()
+    }
+
+    private DerbyDatabase open(String name) {
+        def db = new DerbyDatabase(temp.root.absolutePath, name, true, true)
+        databases << db
+        db
+    }
+
+    private void close(DerbyDatabase db) {
+        databases.remove(db)
+        db.close()
+    }
+
+    private static DerbyDatabase.DerbyCursorEntry entry(String key, int value) {
+        new DerbyDatabase.DerbyCursorEntry(key, [value as byte] as byte[])
+    }
+
+    private static DerbyDatabase.DerbyQueueEntry queueEntry(long key) {
+        new DerbyDatabase.DerbyQueueEntry(key, [key as byte] as byte[])
+    }
+}
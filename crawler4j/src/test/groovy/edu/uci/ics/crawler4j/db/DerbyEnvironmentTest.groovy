@@ -0,0 +1,89 @@
+package edu.uci.ics.crawler4j.db
+
+import java.util.concurrent.TimeUnit
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class DerbyEnvironmentTest extends Specification {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder()
+
+    DerbyEnvironment env
+
+    def setup() {
+        def config = new DerbyEnvironment.DerbyEnvironmentConfig()
+        config.allowCreate = true
+        config.transactional = true
+        config.locking = true
+        config.setLockTimeout(500, TimeUnit.MILLISECONDS)
+        env = new DerbyEnvironment(temp.root, config)
+    }
+
+    def cleanup() {
+        env.close()
+    }
+
+    def "compresses a database once enough rows were deleted from it"() {
+        given:
+        def db = queue()
+        db.putQueueEntries((1L..100L).collect { entry(it) })
+        db.pollFirstQueueEntries(100)
+
+        when:
+        env.startMaintenance(20, 50)
+        awaitCompression()
+
+        then:
+        env.compressionCount >= 1
+        env.compressionMillis >= 0
+        db.deletedRowsSinceCompression == 0
+    }
+
+    def "compresses an idle database below the threshold"() {
+        given:
+        def db = queue()
+        db.putQueueEntries((1L..10L).collect { entry(it) })
+        db.pollFirstQueueEntries(10)
+
+        when:
+        env.startMaintenance(20, 1_000_000)
+        awaitCompression()
+
+        then: "the second check found the database idle"
+        env.compressionCount >= 1
+        db.deletedRowsSinceCompression == 0
+    }
+
+    def "leaves a database alone while nothing was deleted from it"() {
+        given:
+        queue().putQueueEntries((1L..10L).collect { entry(it) })
+
+        when:
+        env.startMaintenance(20, 1)
+        Thread.sleep(200)
+
+        then:
+        env.compressionCount == 0
+    }
+
+    private DerbyDatabase queue() {
+        def config = new DerbyEnvironment.DerbyDatabaseConfig()
+        config.transactional = true
+        config.resumable = true
+        env.openDatabase("PendingURLsDB", config)
+    }
+
+    private void awaitCompression() {
+        def deadline = System.currentTimeMillis() + 10_000
+        while (env.compressionCount == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+
+    private static DerbyDatabase.DerbyQueueEntry entry(long key) {
+        new DerbyDatabase.DerbyQueueEntry(key, [key as byte] as byte[])
+    }
+}
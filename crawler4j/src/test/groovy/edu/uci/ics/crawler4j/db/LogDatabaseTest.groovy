@@ -0,0 +1,97 @@
+package edu.uci.ics.crawler4j.db
+
+import java.nio.file.Files
+
+import edu.uci.ics.crawler4j.util.IO
+import spock.lang.Specification
+
+class LogDatabaseTest extends Specification {
+
+    def folder = Files.createTempDirectory("log-database").toFile()
+    def file = new File(folder, "test.log")
+
+    def cleanup() {
+        IO.deleteFolder(folder)
+    }
+
+    def "pops queue entries in key order"() {
+        given:
+        def db = new LogDatabase(file)
+        [5L, 1L, 3L, 2L, 4L].each { db.putQueueEntry(it, [it as byte] as byte[]) }
+
+        expect:
+        db.pollFirstQueueEntries(3)*.getAt(0) == [1, 2, 3]
+        db.countQueueEntries() == 2
+        db.queueCursor().collect { it[0] } == [4, 5]
+
+        cleanup:
+        db.close()
+    }
+
+    def "rebuilds the index from the log and drops a torn record"() {
+        given:
+        def db = new LogDatabase(file)
+        db.put("a", [1] as byte[])
+        db.put("b", [2] as byte[])
+        db.delete("a")
+        db.putQueueEntry(7L, [7] as byte[])
+        db.setCounter("pages", 42)
+        db.close()
+        def size = file.length()
+        file << ([0, 0, 0, 40, 1, 2] as byte[])
+
+        when:
+        def reopened = new LogDatabase(file)
+
+        then:
+        reopened.get("a") == null
+        reopened.get("b") == [2] as byte[]
+        reopened.getFirstQueueEntries(10)*.getAt(0) == [7]
+        reopened.getAllCounters() == [pages: 42L]
+        file.length() == size
+
+        cleanup:
+        reopened.close()
+    }
+
+    def "compacts the log in the background without losing the writes made meanwhile"() {
+        given:
+        def db = new LogDatabase(file, 64 * 1024)
+
+        when:
+        (1..2000).each { i ->
+            db.put("key${i % 10}".toString(), value(i))
+            db.putQueueEntry(i, value(i))
+            if (i % 2 == 0) {
+                db.deleteQueueEntry(i)
+            }
+        }
+        while (db.compactor != null) {
+            Thread.sleep(10)
+        }
+
+        then:
+        db.generation > 0
+        db.size < 2000 * 2 * 1000
+        (0..9).every { db.get("key${it}".toString()) == value(it == 0 ? 2000 : 1990 + it) }
+        db.queueCursor().collect { it[0] } == (1..2000).findAll { it % 2 == 1 }.collect { value(it)[0] }
+
+        when:
+        db.close()
+        def reopened = new LogDatabase(file)
+
+        then:
+        reopened.count() == 10
+        reopened.get("key3") == value(1993)
+        reopened.countQueueEntries() == 1000
+
+        cleanup:
+        reopened.close()
+    }
+
+    static byte[] value(int i) {
+        def bytes = new byte[1000]
+        Arrays.fill(bytes, (byte) (i % 100))
+        bytes
+    }
+}
@@ -0,0 +1,52 @@
+package edu.uci.ics.crawler4j.fetcher
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import spock.lang.Specification
+
+class HostRateLimiterTest extends Specification {
+
+    def limiter = new HostRateLimiter(new CrawlConfig(politenessDelay: 1000))
+
+    def "spaces the fetches of a host by its delay without holding back other hosts"() {
+        when:
+        def first = limiter.reserve("a.com")
+        def second = limiter.reserve("a.com")
+        def third = limiter.reserve("a.com")
+        def otherHost = limiter.reserve("b.com")
+
+        then:
+        first == 0
+        second > 900 && second <= 1000
+        third > 1900 && third <= 2000
+        otherHost == 0
+    }
+
+    def "a crawl delay replaces the politeness delay of its host until it is reset"() {
+        when:
+        limiter.setCrawlDelay("a.com", 5000)
+
+        then:
+        limiter.getDelay("a.com") == 5000
+        limiter.getDelay("b.com") == 1000
+
+        when:
+        limiter.setCrawlDelay("a.com", -1)
+
+        then:
+        limiter.getDelay("a.com") == 1000
+    }
+
+    def "keeps the crawl delays of idle hosts when it drops their fetch times"() {
+        given:
+        limiter.setCrawlDelay("slow.com", 5000)
+        (0..10000).each { limiter.reserve("host${it}.com") }
+
+        when: "the fetch times of the idle hosts are dropped"
+        Thread.sleep(1100)
+        limiter.reserve("a.com")
+
+        then:
+        limiter.getDelay("slow.com") == 5000
+        limiter.fetchTimes.keySet() == ["a.com"] as Set
+    }
+}
@@ -0,0 +1,97 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class BucketedPriorityQueueStoreTest extends Specification {
+
+    private static int docid = 0
+
+    private static WebURL url(String url, int priority) {
+        def webURL = new WebURL()
+        webURL.URL = url
+        webURL.docid = ++docid
+        webURL.priority = (byte) priority
+        return webURL
+    }
+
+    def "hands out URLs by priority and in scheduling order within a priority"() {
+        given:
+        def queue = new BucketedPriorityQueueStore()
+        queue.putAll([url("http://a.com/1", 5), url("http://a.com/2", -3), url("http://a.com/3", 5),
+                      url("http://a.com/4", 127)])
+
+        expect:
+        queue.length == 4
+        queue.get(2)*.URL == ["http://a.com/2", "http://a.com/1"]
+        queue.poll(10)*.URL == ["http://a.com/2", "http://a.com/1", "http://a.com/3", "http://a.com/4"]
+        queue.length == 0
+    }
+
+    def "moves a queued URL to its new priority"() {
+        given:
+        def queue = new BucketedPriorityQueueStore()
+        queue.putAll([url("http://a.com/1", 0), url("http://a.com/2", 10)])
+
+        when:
+        def moved = queue.reprioritize("http://a.com/2", { -1 })
+
+        then:
+        moved
+        !queue.reprioritize("http://a.com/3", { -1 })
+        queue.poll(10)*.URL == ["http://a.com/2", "http://a.com/1"]
+    }
+
+    def "writes through to the backing store and loads from it"() {
+        given:
+        def backing = new InMemoryFrontierStore().openQueue("queue")
+        def queue = new BucketedPriorityQueueStore(backing)
+        queue.putAll([url("http://a.com/1", 1), url("http://a.com/2", 2), url("http://a.com/3", 3)])
+        queue.reprioritize("http://a.com/3", { 0 })
+        queue.poll(1)
+
+        expect:
+        backing.length == 2
+        new BucketedPriorityQueueStore(backing).poll(10)*.URL == ["http://a.com/1", "http://a.com/2"]
+    }
+
+    def "removes polled and moved URLs from the backing store in one batch each"() {
+        given:
+        def backing = new CountingQueue(queue: new InMemoryFrontierStore().openQueue("queue"))
+        def queue = new BucketedPriorityQueueStore(backing)
+        queue.putAll((1..100).collect { url("http://a.com/${it}".toString(), 0) })
+
+        when:
+        def polled = queue.poll(50)
+        def moved = queue.reprioritizeAll(["http://a.com/60", "http://a.com/70", "http://a.com/70"], { -1 })
+
+        then:
+        polled.size() == 50
+        moved == 2
+        backing.removes == 0
+        backing.removeAllSizes == [50, 2]
+        backing.length == 50
+        new BucketedPriorityQueueStore(backing).poll(3)*.URL == ["http://a.com/60", "http://a.com/70",
+                                                                 "http://a.com/51"]
+    }
+
+    /**
+     * Counts the single and the batched removes which reach the queue it wraps.
+     */
+    static class CountingQueue implements UrlQueueStore {
+        @Delegate(excludes = ["remove", "removeAll"])
+        UrlQueueStore queue
+        int removes = 0
+        List<Integer> removeAllSizes = []
+
+        boolean remove(WebURL url) {
+            removes++
+            queue.remove(url)
+        }
+
+        int removeAll(List<WebURL> urls) {
+            removeAllSizes << urls.size()
+            queue.removeAll(urls)
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package edu.uci.ics.crawler4j.frontier
+
+import java.nio.file.Files
+
+import edu.uci.ics.crawler4j.url.WebURL
+import edu.uci.ics.crawler4j.util.IO
+import spock.lang.Specification
+
+class CheckpointFrontierStoreTest extends Specification {
+
+    def folder = Files.createTempDirectory("frontier-checkpoints").toFile()
+
+    def cleanup() {
+        IO.deleteFolder(folder)
+    }
+
+    def "restores the frontier from the snapshot written on close"() {
+        given:
+        def store = new CheckpointFrontierStore(folder, 60000)
+        store.openQueue("PendingURLsDB").putAll((1..100).collect { url(it) })
+        store.openQueue("PendingURLsDB").poll(10)
+        (1..100).each { store.openDocIds("DocIDs").put("http://example.com/${it}".toString(), it) }
+        store.openCounters("Statistics").set("Scheduled-Pages", 100)
+
+        when:
+        store.close()
+        def restored = new CheckpointFrontierStore(folder, 60000)
+
+        then:
+        restored.openQueue("PendingURLsDB").length == 90
+        restored.openQueue("PendingURLsDB").get(1)*.docid == [11]
+        restored.openDocIds("DocIDs").get("http://example.com/42") == 42
+        restored.openCounters("Statistics").load() == ["Scheduled-Pages": 100L]
+        folder.list().count { it.startsWith("snapshot-") } == 1
+
+        cleanup:
+        restored.close()
+    }
+
+    def "replays the changes made after the newest snapshot"() {
+        given:
+        def store = new CheckpointFrontierStore(folder, 60000)
+        def queue = store.openQueue("PendingURLsDB")
+        queue.putAll((1..10).collect { url(it) })
+        store.checkpoint()
+        queue.poll(3)
+        queue.put(url(11))
+        store.openDocIds("DocIDs").put("http://example.com/11", 11)
+
+        when: "the journal reaches the disk and the crawler dies without closing the store"
+        Thread.sleep(1500)
+        def restored = new CheckpointFrontierStore(folder, 60000)
+
+        then:
+        restored.openQueue("PendingURLsDB").poll(100)*.docid == (4..11).toList()
+        restored.openDocIds("DocIDs").get("http://example.com/11") == 11
+
+        cleanup:
+        restored.close()
+    }
+
+    def "keeps the changes made while a snapshot is written"() {
+        given:
+        def store = new CheckpointFrontierStore(folder, 60000)
+        def queue = store.openQueue("PendingURLsDB")
+        queue.putAll((1..1000).collect { url(it) })
+        store.checkpoint()
+
+        when:
+        def writer = Thread.start { (1001..2000).each { queue.put(url(it)) } }
+        store.checkpoint()
+        writer.join()
+        store.close()
+        def restored = new CheckpointFrontierStore(folder, 60000)
+
+        then:
+        restored.openQueue("PendingURLsDB").length == 2000
+
+        cleanup:
+        restored.close()
+    }
+
+    def "keeps URLs longer than 64 KB in the snapshot and the journal"() {
+        given:
+        def longUrl = "http://example.com/" + "a" * 70000
+        def store = new CheckpointFrontierStore(folder, 60000)
+        store.openDocIds("DocIDs").put(longUrl, 1)
+        store.checkpoint()
+        store.openDocIds("DocIDs").put(longUrl + "b", 2)
+
+        when: "the journal reaches the disk and the crawler dies without closing the store"
+        Thread.sleep(1500)
+        def restored = new CheckpointFrontierStore(folder, 60000)
+
+        then:
+        restored.openDocIds("DocIDs").get(longUrl) == 1
+        restored.openDocIds("DocIDs").get(longUrl + "b") == 2
+
+        cleanup:
+        restored.close()
+    }
+
+    static WebURL url(int docid) {
+        def webUrl = new WebURL()
+        webUrl.URL = "http://example.com/${docid}".toString()
+        webUrl.docid = docid
+        webUrl
+    }
+}
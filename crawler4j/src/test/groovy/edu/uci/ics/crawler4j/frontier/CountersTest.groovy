@@ -0,0 +1,87 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import spock.lang.Specification
+
+import static edu.uci.ics.crawler4j.frontier.Counters.ReservedCounterNames.PROCESSED_PAGES
+
+class CountersTest extends Specification {
+
+    def store = new InMemoryFrontierStore()
+
+    def "adds up increments from many threads without writing each of them"() {
+        given:
+        def counters = new Counters(store, config(60_000))
+
+        when:
+        (1..8).collect { Thread.start { 10_000.times { counters.increment(PROCESSED_PAGES) } } }*.join()
+
+        then:
+        counters.getValue(PROCESSED_PAGES) == 80_000
+        stored().isEmpty()
+
+        when:
+        counters.checkpoint()
+
+        then:
+        stored()[PROCESSED_PAGES] == 80_000
+
+        cleanup:
+        counters.close()
+    }
+
+    def "writes the changed counters behind on the checkpoint interval"() {
+        given:
+        def counters = new Counters(store, config(20))
+
+        when:
+        counters.increment(PROCESSED_PAGES, 5)
+        def deadline = System.currentTimeMillis() + 5000
+        while (stored()[PROCESSED_PAGES] != 5L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        stored()[PROCESSED_PAGES] == 5
+
+        cleanup:
+        counters.close()
+    }
+
+    def "writes the last changes on close and loads them on the next start"() {
+        given:
+        def counters = new Counters(store, config(60_000))
+        counters.increment(PROCESSED_PAGES, 7)
+
+        when:
+        counters.close()
+        def resumed = new Counters(store, config(60_000))
+
+        then:
+        resumed.getValue(PROCESSED_PAGES) == 7
+
+        cleanup:
+        resumed.close()
+    }
+
+    def "keeps the counters of a crawl which is not resumable in memory only"() {
+        given:
+        def counters = new Counters(store, new CrawlConfig())
+
+        when:
+        counters.increment(PROCESSED_PAGES)
+        counters.close()
+
+        then:
+        counters.getValue(PROCESSED_PAGES) == 1
+        stored().isEmpty()
+    }
+
+    private Map<String, Long> stored() {
+        store.openCounters("Statistics").load()
+    }
+
+    private static CrawlConfig config(long checkpointIntervalMillis) {
+        new CrawlConfig(resumableCrawling: true, counterCheckpointIntervalMillis: checkpointIntervalMillis)
+    }
+}
@@ -0,0 +1,240 @@
+package edu.uci.ics.crawler4j.frontier
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import edu.uci.ics.crawler4j.db.DerbyDatabase
+import edu.uci.ics.crawler4j.db.DerbyEnvironment
+import edu.uci.ics.crawler4j.url.WebURL
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class DerbyFrontierStoreTest extends Specification {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder()
+
+    def folder
+    def stores = []
+
+    def setup() {
+        folder = temp.newFolder()
+    }
+
+    def cleanup() {
+        stores.each { it.close() }
+    }
+
+    def "no url is lost when urls are scheduled while the queue is polled"() {
+        given:
+        def queue = open().openQueue("PendingURLsDB")
+        def polled = new ConcurrentLinkedQueue()
+        def producers = (0..<4).collect { producer ->
+            // Descending docids, so that every put lands below the keys already queued
+            Thread.start { (250..1).each { queue.put(url(it * 4 - producer, 0)) } }
+        }
+        def consumers = (0..<2).collect {
+            Thread.start {
+                while (producers.any { it.alive }) {
+                    polled.addAll(queue.poll(10)*.docid)
+                }
+            }
+        }
+
+        when:
+        (producers + consumers)*.join()
+        polled.addAll(queue.poll(1000)*.docid)
+
+        then:
+        polled.size() == 1000
+        polled.toList().sort() == (1..1000).toList()
+        queue.length == 0
+    }
+
+    def "lists a queue in crawl order and in batches without removing anything"() {
+        given:
+        def queue = open().openQueue("InProcessPagesDB")
+        queue.putAll((2500..1).collect { url(it, it % 3) })
+        def batches = []
+
+        when:
+        queue.forEachBatch(1000) { batches << it*.docid }
+
+        then:
+        batches*.size() == [1000, 1000, 500]
+        batches.flatten() == (1..2500).sort(false) { QueueKey.of(url(it, it % 3)) }
+        queue.length == 2500
+    }
+
+    def "loads the counters through a cursor"() {
+        given:
+        def counters = open().openCounters("Statistics")
+        (1..1500).each { counters.set("counter${it}".toString(), it) }
+
+        when:
+        def values = counters.load()
+
+        then:
+        values.size() == 1500
+        values["counter1"] == 1
+        values["counter1500"] == 1500
+    }
+
+    def "moves the in-process urls back to the pending queue as they are"() {
+        given:
+        def store = open()
+        def inProcess = store.openQueue("InProcessPagesDB")
+        def pending = store.openQueue("PendingURLsDB")
+        inProcess.putAll((1..2500).collect { url(it, 0) })
+        pending.put(url(5000, 0))
+
+        when:
+        def moved = inProcess.moveAllTo(pending, 1000)
+
+        then:
+        moved == 2500
+        inProcess.length == 0
+        pending.length == 2501
+        pending.poll(3000)*.URL == (1..2500).collect { "http://example.com/${it}".toString() } +
+                                   ["http://example.com/5000"]
+    }
+
+    def "resumes docids above the high-water mark after an unclean shutdown"() {
+        given:
+        def config = new CrawlConfig(resumableCrawling: true, crawlStorageFolder: folder.absolutePath)
+        def crashed = new DocIDServer(open(config), config)
+        crashed.assignDocIds(["http://example.com/a", "http://example.com/b", "http://example.com/c"])
+        // Not closed: the high-water mark is left at the end of the reserved block
+
+        when:
+        def resumed = new DocIDServer(open(config), config)
+
+        then:
+        resumed.getDocId("http://example.com/b") == 2
+        resumed.getNewDocID("http://example.com/d") == 1004
+        resumed.getNewDocID("http://example.com/a") == 1
+    }
+
+    def "resumes docids right after the last one after a clean shutdown"() {
+        given:
+        def config = new CrawlConfig(resumableCrawling: true, crawlStorageFolder: folder.absolutePath)
+        def store = open(config)
+        def first = new DocIDServer(store, config)
+        first.assignDocIds(["http://example.com/a", "http://example.com/b", "http://example.com/c"])
+        first.close()
+        close(store)
+
+        when:
+        def resumed = new DocIDServer(open(config), config)
+
+        then:
+        resumed.getNewDocID("http://example.com/d") == 4
+        resumed.docCount == 4
+    }
+
+    def "creates only the tables of each role"() {
+        given:
+        def store = open(fingerprintConfig(true))
+        store.openQueue("PendingURLsDB")
+        store.openDocIds("DocIDs")
+        store.openCounters("Statistics")
+
+        expect:
+        tables(store, "PendingURLsDB") == ["counters_table", "queue_table"]
+        tables(store, "DocIDs") == ["collision_table", "counters_table", "fingerprint_table"]
+        tables(store, "Statistics") == ["counters_table"]
+    }
+
+    def "keeps the docid of a url whose fingerprint is taken by another url in the collision table"() {
+        given:
+        def store = open(fingerprintConfig(true))
+        def docIds = store.openDocIds("DocIDs")
+        def fingerprint = UrlFingerprint.of("http://example.com/b")
+        // Another URL with the same fingerprint, told apart by its check hash
+        database(store, "DocIDs").insertFingerprint(
+            new DerbyDatabase.FingerprintEntry(fingerprint.fingerprint, fingerprint.checkHash + 1, 1))
+
+        when:
+        docIds.putAll(["http://example.com/a": 2, "http://example.com/b": 3])
+
+        then:
+        docIds.get("http://example.com/a") == 2
+        docIds.get("http://example.com/b") == 3
+        docIds.get("http://example.com/c") == -1
+        docIds.count() == 3
+        database(store, "DocIDs").countCollisions() == 1
+    }
+
+    def "refuses to open docids kept with the other kind of keys"() {
+        given:
+        def store = open(fingerprintConfig(createdWithFingerprints))
+        store.openDocIds("DocIDs").put("http://example.com/a", 1)
+        close(store)
+
+        when:
+        open(fingerprintConfig(!createdWithFingerprints)).openDocIds("DocIDs")
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        createdWithFingerprints << [true, false]
+    }
+
+    def "reopens docids kept with the same kind of keys"() {
+        given:
+        def store = open(fingerprintConfig(true))
+        store.openDocIds("DocIDs").put("http://example.com/a", 1)
+        close(store)
+
+        expect:
+        open(fingerprintConfig(true)).openDocIds("DocIDs").get("http://example.com/a") == 1
+    }
+
+    private DerbyFrontierStore open(CrawlConfig config = null) {
+        def env = environment(folder)
+        def store = config == null ? new DerbyFrontierStore(env, true) : new DerbyFrontierStore(env, config)
+        stores << store
+        store
+    }
+
+    private void close(DerbyFrontierStore store) {
+        stores.remove(store)
+        store.close()
+    }
+
+    static CrawlConfig fingerprintConfig(boolean urlFingerprintKeys) {
+        new CrawlConfig(resumableCrawling: true, urlFingerprintKeys: urlFingerprintKeys)
+    }
+
+    static DerbyDatabase database(DerbyFrontierStore store, String name) {
+        // The environment hands out the database opened by the store
+        store.environment.openDatabase(name, new DerbyEnvironment.DerbyDatabaseConfig())
+    }
+
+    static List<String> tables(DerbyFrontierStore store, String name) {
+        def db = database(store, name)
+        ["collision_table", "counters_table", "data_table", "fingerprint_table", "queue_table"].findAll {
+            db.hasTable(it)
+        }
+    }
+
+    static DerbyEnvironment environment(File folder) {
+        def envConfig = new DerbyEnvironment.DerbyEnvironmentConfig()
+        envConfig.allowCreate = true
+        envConfig.transactional = true
+        envConfig.locking = true
+        envConfig.setLockTimeout(500, TimeUnit.MILLISECONDS)
+        new DerbyEnvironment(folder, envConfig)
+    }
+
+    static WebURL url(int docid, int depth) {
+        def url = new WebURL()
+        url.URL = "http://example.com/${docid}"
+        url.docid = docid
+        url.depth = depth as short
+        url
+    }
+}
@@ -0,0 +1,162 @@
+package edu.uci.ics.crawler4j.frontier
+
+import java.util.function.Consumer
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class DocIDServerTest extends Specification {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder()
+
+    def "answers lookups of unseen urls without reading the store"() {
+        given:
+        def store = new RestartableStore()
+        def server = new DocIDServer(store, config(false, 0.0001))
+        server.assignDocIds((1..10).collect { "http://example.com/${it}".toString() })
+
+        when:
+        def docIds = (11..110).collect { server.getDocId("http://example.com/${it}") }
+
+        then:
+        docIds.every { it == -1 }
+        // The lookups made while assigning the docids count as well
+        server.bloomFilterNegatives + server.bloomFilterFalsePositives == 110
+        server.bloomFilterNegatives >= 105
+        store.lookups == server.bloomFilterFalsePositives
+        server.getDocId("http://example.com/3") == 3
+    }
+
+    def "lets false positives through to the store"() {
+        given: "a filter so small that most unseen urls look seen"
+        def store = new RestartableStore()
+        def server = new DocIDServer(store, new CrawlConfig(seenUrlsBloomFilter: true,
+                                                            seenUrlsBloomFilterExpectedUrls: 1,
+                                                            seenUrlsBloomFilterFalsePositiveRate: 0.9))
+        server.getNewDocID("http://example.com/1")
+
+        when:
+        def docIds = (2..101).collect { server.getDocId("http://example.com/${it}") }
+
+        then:
+        docIds.every { it == -1 }
+        server.bloomFilterFalsePositives > 0
+        store.lookups == server.bloomFilterFalsePositives
+        // The lookup made by getNewDocID counts as well
+        server.bloomFilterNegatives + server.bloomFilterFalsePositives == 101
+    }
+
+    def "saves the filter on close and loads it on the next start"() {
+        given:
+        def store = new RestartableStore(persistent: true)
+        new File(temp.root, "frontier").mkdirs()
+        def first = new DocIDServer(store, config(true, 0.0001))
+        first.assignDocIds(["http://example.com/a", "http://example.com/b", "http://example.com/c"])
+        first.close()
+
+        when: "the store could not rebuild the filter"
+        store.keepsUrls = false
+        def second = new DocIDServer(store, config(true, 0.0001))
+
+        then:
+        new File(temp.root, "frontier/DocIDs.bloom").exists()
+        second.getDocId("http://example.com/unseen") == -1
+        second.bloomFilterNegatives == 1
+        store.lookups == 0
+        second.getDocId("http://example.com/b") == 2
+    }
+
+    def "rebuilds a filter saved before an unclean shutdown"() {
+        given:
+        def store = new RestartableStore(persistent: true)
+        new File(temp.root, "frontier").mkdirs()
+        def first = new DocIDServer(store, config(true, 0.0001))
+        first.assignDocIds(["http://example.com/a", "http://example.com/b", "http://example.com/c"])
+        first.close()
+        def second = new DocIDServer(store, config(true, 0.0001))
+        second.assignDocIds(["http://example.com/d", "http://example.com/e"])
+        // The second run is not closed, so the saved filter misses d and e
+
+        when:
+        def third = new DocIDServer(store, config(true, 0.0001))
+
+        then:
+        third.getDocId("http://example.com/d") == 4
+        third.getDocId("http://example.com/e") == 5
+        third.getDocId("http://example.com/a") == 1
+    }
+
+    def "disables the filter if the store can not list its urls to rebuild it"() {
+        given:
+        def store = new RestartableStore(keepsUrls: false)
+        def first = new DocIDServer(store, new CrawlConfig(resumableCrawling: true))
+        first.getNewDocID("http://example.com/a")
+        first.close()
+        store.lookups = 0
+
+        when:
+        def second = new DocIDServer(store, config(true, 0.0001))
+        def unseen = second.getDocId("http://example.com/unseen")
+
+        then:
+        unseen == -1
+        second.bloomFilterNegatives == 0
+        store.lookups == 1
+        second.getDocId("http://example.com/a") == 1
+    }
+
+    private CrawlConfig config(boolean resumable, double falsePositiveRate) {
+        new CrawlConfig(crawlStorageFolder: temp.root.absolutePath, resumableCrawling: resumable,
+                        seenUrlsBloomFilter: true, seenUrlsBloomFilterExpectedUrls: 1000,
+                        seenUrlsBloomFilterFalsePositiveRate: falsePositiveRate)
+    }
+
+    /**
+     * In-memory store which outlives the DocIDServers opened on it, like the files of a
+     * persistent one, and counts the docid lookups which reach it.
+     */
+    static class RestartableStore implements FrontierStore {
+        final InMemoryFrontierStore store = new InMemoryFrontierStore()
+        boolean persistent = false
+        boolean keepsUrls = true
+        int lookups = 0
+
+        UrlQueueStore openQueue(String name) { store.openQueue(name) }
+
+        DocIdStore openDocIds(String name) { new CountingDocIds(docIds: store.openDocIds(name), store: this) }
+
+        CounterStore openCounters(String name) { store.openCounters(name) }
+
+        boolean isPersistent() { persistent }
+
+        void close() { store.close() }
+    }
+
+    static class CountingDocIds implements DocIdStore {
+        DocIdStore docIds
+        RestartableStore store
+
+        int get(String url) {
+            store.lookups++
+            docIds.get(url)
+        }
+
+        void put(String url, int docId) { docIds.put(url, docId) }
+
+        void putAll(Map<String, Integer> values) { docIds.putAll(values) }
+
+        long count() { docIds.count() }
+
+        void forEachUrl(Consumer<String> action) {
+            if (!store.keepsUrls) {
+                throw new UnsupportedOperationException("The store does not keep the URLs")
+            }
+            docIds.forEachUrl(action)
+        }
+
+        void close() { docIds.close() }
+    }
+}
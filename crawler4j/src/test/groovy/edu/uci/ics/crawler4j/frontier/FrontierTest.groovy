@@ -0,0 +1,151 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import edu.uci.ics.crawler4j.frontier.priority.DepthPrioritizer
+import edu.uci.ics.crawler4j.frontier.priority.InLinkPrioritizer
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class FrontierTest extends Specification {
+
+    Frontier frontier
+
+    def cleanup() {
+        frontier.finish()
+        frontier.close()
+    }
+
+    def "hands a waiting crawler thread nothing once the crawl finishes"() {
+        given:
+        open(new CrawlConfig(politenessDelay: 0))
+        def urls = []
+        def waiting = Thread.start { frontier.getNextURLs(10, urls) }
+        awaitWaiting(waiting)
+
+        when:
+        frontier.finish()
+        waiting.join(5000)
+
+        then:
+        !waiting.alive
+        urls.isEmpty()
+
+        when: "a crawler thread asks after the crawl finished"
+        frontier.getNextURLs(10, urls)
+
+        then:
+        urls.isEmpty()
+    }
+
+    def "lets an interrupted crawler thread go with its interrupt status set"() {
+        given:
+        open(new CrawlConfig(politenessDelay: 0))
+        def urls = []
+        def interrupted = null
+        def waiting = Thread.start {
+            frontier.getNextURLs(10, urls)
+            interrupted = Thread.currentThread().isInterrupted()
+        }
+        awaitWaiting(waiting)
+
+        when:
+        waiting.interrupt()
+        waiting.join(5000)
+
+        then:
+        !waiting.alive
+        interrupted
+        urls.isEmpty()
+    }
+
+    def "wakes up a waiting crawler thread when a URL is scheduled"() {
+        given:
+        open(new CrawlConfig(politenessDelay: 0))
+        def urls = []
+        def waiting = Thread.start { frontier.getNextURLs(10, urls) }
+        awaitWaiting(waiting)
+
+        when:
+        frontier.schedule(url(1))
+        waiting.join(5000)
+
+        then:
+        !waiting.alive
+        urls*.docid == [1]
+    }
+
+    def "spends maxPagesToFetch of a prioritized crawl on the URLs handed out"() {
+        given:
+        open(new CrawlConfig(politenessDelay: 0, maxPagesToFetch: 3, urlPrioritizer: new DepthPrioritizer()))
+        frontier.scheduleAll([url(1, 4), url(2, 0), url(3, 3), url(4, 1), url(5, 2)])
+
+        expect: "all URLs are queued, the budget is spent on the best of them"
+        frontier.queueLength == 5
+
+        when:
+        def urls = []
+        frontier.getNextURLs(10, urls, 0)
+
+        then:
+        urls*.docid == [2, 4, 5]
+
+        when: "a crawler thread asks once the budget is spent"
+        def more = []
+        frontier.getNextURLs(10, more, 0)
+
+        then: "the rest of the queue is dropped so that the crawl ends"
+        more.isEmpty()
+        frontier.queueLength == 0
+
+        when:
+        frontier.schedule(url(6, 0))
+
+        then:
+        frontier.queueLength == 0
+    }
+
+    def "gives the cash of a crawled page only to its new and queued links"() {
+        given:
+        def prioritizer = new InLinkPrioritizer()
+        open(new CrawlConfig(politenessDelay: 0, urlPrioritizer: prioritizer))
+        frontier.scheduleAll([url(1, 0), url(2, 0), url(3, 0)])
+        def crawled = []
+        frontier.getNextURLs(1, crawled, 0)
+        def page = crawled[0]
+        def newLink = url(-1, 1, "http://example.com/new")
+
+        when:
+        frontier.linksFound(page, [newLink], [url(3, 1), url(1, 1)])
+
+        then: "the shares of the queued and the new link, but none for the crawled page itself"
+        prioritizer.getCash("http://example.com/3") == 0.5d
+        prioritizer.getCash(newLink.URL) == 0.5d
+        prioritizer.getCash(page.URL) == 1.0d
+
+        when:
+        def urls = []
+        frontier.getNextURLs(10, urls, 0)
+
+        then: "the queued link moved to its new priority"
+        urls*.docid == [2, 3]
+    }
+
+    private void open(CrawlConfig config) {
+        frontier = new Frontier(new InMemoryFrontierStore(), config)
+    }
+
+    private static void awaitWaiting(Thread thread) {
+        def deadline = System.currentTimeMillis() + 5000
+        while (thread.state != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+        }
+    }
+
+    private static WebURL url(int docid, int depth = 0, String address = "http://example.com/${docid}") {
+        def url = new WebURL()
+        url.URL = address
+        url.docid = docid
+        url.depth = depth as short
+        return url
+    }
+}
@@ -0,0 +1,196 @@
+package edu.uci.ics.crawler4j.frontier
+
+import java.sql.SQLException
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import edu.uci.ics.crawler4j.db.DerbyDatabase
+import edu.uci.ics.crawler4j.url.WebURL
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class GroupCommitterTest extends Specification {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder()
+
+    def commits = []
+    def committer = new GroupCommitter(60_000, 1000)
+
+    def cleanup() {
+        committer.close()
+    }
+
+    def "commits the in-process database before the pending one"() {
+        given:
+        def folder = temp.newFolder()
+        def pending = new RecordingDatabase(folder, "PendingURLsDB", commits)
+        def inProcess = new RecordingDatabase(folder, "InProcessPagesDB", commits)
+        committer.commitFirst(inProcess)
+
+        when: "the pending database is touched first"
+        committer.submit(pending) { pending.deleteQueueEntry(1L) }
+        committer.submit(inProcess) { inProcess.putQueueEntry(1L, [1] as byte[]) }
+        committer.flush()
+
+        then:
+        commits == ["InProcessPagesDB", "PendingURLsDB"]
+
+        cleanup:
+        pending.close()
+        inProcess.close()
+    }
+
+    def "reads see the queued writes, the committed length only after the flush"() {
+        given:
+        def db = new RecordingDatabase(temp.newFolder(), "PendingURLsDB", commits)
+
+        when:
+        (1..3).each { key -> committer.submit(db) { db.putQueueEntry(key, [key] as byte[]) } }
+        def read = committer.call(db) { db.getFirstQueueEntries(10)*.key }
+        def lengthBeforeFlush = db.countQueueEntries()
+        committer.flush()
+
+        then:
+        read == [1L, 2L, 3L]
+        lengthBeforeFlush == 0
+        db.countQueueEntries() == 3
+
+        cleanup:
+        db.close()
+    }
+
+    def "a queue lists the urls written by the open group"() {
+        given:
+        def config = new CrawlConfig()
+        config.resumableCrawling = true
+        config.frontierGroupCommitIntervalMillis = 60_000
+        def store = new DerbyFrontierStore(DerbyFrontierStoreTest.environment(temp.newFolder()), config)
+        def queue = store.openQueue("PendingURLsDB")
+        (1..3).each { queue.put(DerbyFrontierStoreTest.url(it, 0)) }
+        def listed = []
+
+        when:
+        queue.forEachBatch(10) { listed.addAll(it*.docid) }
+
+        then:
+        listed == [1, 2, 3]
+        queue.length == 3
+
+        cleanup:
+        store.close()
+    }
+
+    def "runs a rolled back group again"() {
+        given:
+        def db = new RecordingDatabase(temp.newFolder(), "PendingURLsDB", commits)
+        db.failingCommits = 1
+
+        when:
+        (1..3).each { key -> committer.submit(db) { db.putQueueEntry(key, [key] as byte[]) } }
+        committer.submit(db) { db.deleteQueueEntry(2L) }
+        committer.flush()
+
+        then:
+        committer.failure == null
+        commits == ["PendingURLsDB"]
+        db.getFirstQueueEntries(10)*.key == [1L, 3L]
+        db.countQueueEntries() == 2
+
+        cleanup:
+        db.close()
+    }
+
+    def "runs a group again after a deadlock rolled it back"() {
+        given:
+        def db = new RecordingDatabase(temp.newFolder(), "PendingURLsDB", commits)
+        def deadlocks = 1
+
+        when:
+        committer.submit(db) { db.putQueueEntry(1L, [1] as byte[]) }
+        def result = committer.call(db) {
+            if (deadlocks-- > 0) {
+                // What Derby does on a transaction severity error
+                db.openTransaction.rollback()
+                throw new SQLException("A lock could not be obtained due to a deadlock", "40001")
+            }
+            db.putQueueEntry(2L, [2] as byte[])
+            "stored"
+        }
+        committer.flush()
+
+        then:
+        result == "stored"
+        committer.failure == null
+        commits == ["PendingURLsDB"]
+        db.getFirstQueueEntries(10)*.key == [1L, 2L]
+
+        cleanup:
+        db.close()
+    }
+
+    def "stops taking operations once a group can not be committed"() {
+        given:
+        def db = new RecordingDatabase(temp.newFolder(), "PendingURLsDB", commits)
+        db.failingCommits = 2
+        committer.submit(db) { db.putQueueEntry(1L, [1] as byte[]) }
+
+        when:
+        committer.flush()
+
+        then:
+        thrown(RuntimeException)
+        committer.failure != null
+        db.getFirstQueueEntries(10).isEmpty()
+        db.countQueueEntries() == 0
+
+        when:
+        committer.submit(db) { db.putQueueEntry(2L, [2] as byte[]) }
+
+        then:
+        thrown(IllegalStateException)
+
+        cleanup:
+        db.close()
+    }
+
+    /**
+     * Records the order in which its transactions commit, and lets the first few of them fail.
+     */
+    static class RecordingDatabase extends DerbyDatabase {
+        final String name
+        final List<String> commits
+        int failingCommits
+        DerbyDatabase.DerbyTransaction openTransaction
+
+        RecordingDatabase(File folder, String name, List<String> commits) {
+            super(folder.path, name, true, true)
+            this.name = name
+            this.commits = commits
+        }
+
+        @Override
+        DerbyDatabase.DerbyTransaction beginTransaction() {
+            openTransaction = new RecordingTransaction(this)
+        }
+    }
+
+    static class RecordingTransaction extends DerbyDatabase.DerbyTransaction {
+        final RecordingDatabase recorder
+
+        RecordingTransaction(RecordingDatabase recorder) {
+            super(recorder)
+            this.recorder = recorder
+        }
+
+        @Override
+        void commit() {
+            if (recorder.failingCommits > 0) {
+                recorder.failingCommits--
+                throw new RuntimeException("Failed to commit transaction")
+            }
+            recorder.commits << recorder.name
+            super.commit()
+        }
+    }
+}
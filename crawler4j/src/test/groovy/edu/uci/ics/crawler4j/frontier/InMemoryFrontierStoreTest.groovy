@@ -0,0 +1,114 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class InMemoryFrontierStoreTest extends Specification {
+
+    def store = new InMemoryFrontierStore()
+
+    def "queue returns urls in crawl order"() {
+        given:
+        def queue = store.openQueue("PendingURLsDB")
+        queue.put(url(3, 1))
+        queue.put(url(1, 2))
+        queue.put(url(2, 1))
+
+        when:
+        def first = queue.get(2)
+        queue.delete(2)
+
+        then:
+        first*.docid == [2, 3]
+        queue.length == 1
+        queue.get(10)*.docid == [1]
+    }
+
+    def "queue lists its urls in batches without removing them"() {
+        given:
+        def queue = store.openQueue("InProcessPagesDB")
+        (1..5).each { queue.put(url(it, 0)) }
+        def batches = []
+
+        when:
+        queue.forEachBatch(2) { batches << it*.docid }
+
+        then:
+        batches == [[1, 2], [3, 4], [5]]
+        queue.length == 5
+
+        when:
+        queue.clear()
+
+        then:
+        queue.length == 0
+        queue.get(10).isEmpty()
+    }
+
+    def "frontier schedules and hands out urls without touching disk"() {
+        given:
+        def config = new CrawlConfig()
+        def docIdServer = new DocIDServer(store, config)
+        def frontier = new Frontier(store, config)
+        // One host per url, so that the politeness delay does not hold any of them back
+        def urls = (1..5).collect {
+            def webUrl = url(docIdServer.getNewDocID("http://example${it}.com/"), 0)
+            webUrl.URL = "http://example${it}.com/"
+            webUrl
+        }
+
+        when:
+        frontier.scheduleAll(urls)
+        def result = []
+        frontier.getNextURLs(3, result)
+
+        then:
+        result*.docid == [1, 2, 3]
+        frontier.queueLength == 2
+        frontier.numberOfScheduledPages == 5
+        docIdServer.getDocId("http://example4.com/") == 4
+        docIdServer.getDocId("http://example6.com/") == -1
+    }
+
+    def "resumed crawl continues from the persisted docid high-water mark"() {
+        given:
+        def config = new CrawlConfig()
+        config.resumableCrawling = true
+        def docIdServer = new DocIDServer(store, config)
+        (1..5).each { docIdServer.getNewDocID("http://example.com/${it}") }
+
+        expect:
+        store.openCounters("DocIDs").load()["lastDocID"] > 5
+
+        when:
+        docIdServer.close()
+        def resumed = new DocIDServer(store, config)
+
+        then:
+        store.openCounters("DocIDs").load()["lastDocID"] == 5
+        resumed.getNewDocID("http://example.com/6") == 6
+    }
+
+    def "resumed frontier moves the in-process urls back to the queue"() {
+        given:
+        def config = new CrawlConfig()
+        config.resumableCrawling = true
+        def inProcess = store.openQueue("InProcessPagesDB")
+        (1..3).each { inProcess.put(url(it, 0)) }
+
+        when:
+        def frontier = new Frontier(store, config)
+
+        then:
+        frontier.queueLength == 3
+        inProcess.length == 0
+    }
+
+    static WebURL url(int docid, int depth) {
+        def webUrl = new WebURL()
+        webUrl.docid = docid
+        webUrl.depth = depth as short
+        webUrl
+    }
+}
@@ -0,0 +1,36 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import spock.lang.Specification
+
+class OffHeapDocIdStoreTest extends Specification {
+
+    def "keeps docids while the tables grow"() {
+        given:
+        def store = new OffHeapDocIdStore(10)
+        def initialBytes = store.allocatedBytes
+
+        when:
+        (1..100000).each { store.put("http://example.com/${it}".toString(), it) }
+
+        then:
+        store.count() == 100000
+        store.allocatedBytes > initialBytes
+        (1..100000).every { store.get("http://example.com/${it}".toString()) == it }
+        store.get("http://example.org/") == -1
+    }
+
+    def "serves the docid server of an in-memory store"() {
+        given:
+        def config = new CrawlConfig()
+        def docIdServer = new DocIDServer(new InMemoryFrontierStore(true, 100), config)
+
+        when:
+        def docIds = docIdServer.assignDocIds(["http://a/", "http://b/", "http://a/"])
+
+        then:
+        docIds == [1, 2, 1] as int[]
+        docIdServer.getDocId("http://b/") == 2
+        docIdServer.docCount == 2
+    }
+}
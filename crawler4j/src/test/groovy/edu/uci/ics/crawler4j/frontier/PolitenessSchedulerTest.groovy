@@ -0,0 +1,63 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class PolitenessSchedulerTest extends Specification {
+
+    private static WebURL url(String url) {
+        def webURL = new WebURL()
+        webURL.URL = url
+        return webURL
+    }
+
+    def "hands out one URL per due host in crawl order"() {
+        given:
+        def scheduler = new PolitenessScheduler(60000)
+        ["http://a.com/1", "http://a.com/2", "http://B.com:8080/1", "http://a.com/3"].each { scheduler.add(url(it)) }
+
+        when:
+        def first = []
+        scheduler.poll(10, first)
+        def second = []
+        scheduler.poll(10, second)
+
+        then:
+        first*.URL == ["http://a.com/1", "http://B.com:8080/1"]
+        second.isEmpty()
+        scheduler.size() == 2
+        scheduler.hostCount == 1
+        scheduler.delayMillis > 0
+    }
+
+    def "hands out the next URL of a host once its delay is over"() {
+        given:
+        def scheduler = new PolitenessScheduler(50)
+        (1..3).each { scheduler.add(url("http://a.com/${it}".toString())) }
+
+        when:
+        def polled = []
+        while (polled.size() < 3) {
+            scheduler.poll(10, polled)
+            Thread.sleep(Math.max(1, scheduler.delayMillis))
+        }
+
+        then:
+        polled*.URL == ["http://a.com/1", "http://a.com/2", "http://a.com/3"]
+        scheduler.delayMillis == -1
+    }
+
+    def "hands out hosts which are due at the same time in crawl order"() {
+        given:
+        def scheduler = new PolitenessScheduler(60000)
+        def urls = (1..20).collect { url("http://host${it}.com/".toString()) }
+        scheduler.addAll(urls)
+
+        when:
+        def polled = []
+        scheduler.poll(20, polled)
+
+        then:
+        polled == urls
+    }
+}
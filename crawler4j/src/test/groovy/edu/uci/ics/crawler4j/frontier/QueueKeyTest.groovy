@@ -0,0 +1,33 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class QueueKeyTest extends Specification {
+
+    def "keys sort by priority, then depth, then docid"() {
+        given:
+        def urls = [url(0, 1, 5), url(0, 0, 9), url(-3, 4, 7), url(0, 0, 8), url(2, 0, 1), url(0, 1, Integer.MAX_VALUE)]
+
+        when:
+        def ordered = urls.sort(false) { QueueKey.of(it) }
+
+        then:
+        ordered.collect { [it.priority, it.depth, it.docid] } ==
+            [[-3, 4, 7], [0, 0, 8], [0, 0, 9], [0, 1, 5], [0, 1, Integer.MAX_VALUE], [2, 0, 1]]
+        urls.every { QueueKey.of(it) >= 0 }
+    }
+
+    def "depths beyond a byte share the last depth slot"() {
+        expect:
+        QueueKey.of(url(0, 127, 1)) == QueueKey.of(url(0, 1000, 1))
+    }
+
+    private static WebURL url(int priority, int depth, int docid) {
+        def url = new WebURL()
+        url.priority = priority as byte
+        url.depth = depth as short
+        url.docid = docid
+        return url
+    }
+}
@@ -0,0 +1,101 @@
+package edu.uci.ics.crawler4j.frontier
+
+import java.nio.file.Files
+
+import edu.uci.ics.crawler4j.url.WebURL
+import edu.uci.ics.crawler4j.util.IO
+import spock.lang.Specification
+
+class SegmentedQueueStoreTest extends Specification {
+
+    def folder = Files.createTempDirectory("segmented-queue").toFile()
+
+    def cleanup() {
+        IO.deleteFolder(folder)
+    }
+
+    def "hands out lower priorities first and keeps schedule order within a priority"() {
+        given:
+        def queue = open()
+        queue.putAll([url(1, 0), url(2, -1), url(3, 0), url(4, -1)])
+
+        expect:
+        queue.poll(3)*.docid == [2, 4, 1]
+        queue.length == 1
+
+        cleanup:
+        queue.close()
+    }
+
+    def "resumes from the persisted offsets and deletes consumed segments"() {
+        given:
+        def queue = open()
+        queue.putAll((1..5000).collect { url(it, 0) })
+        queue.poll(1000)
+        queue.close()
+
+        when:
+        def resumed = open()
+        def rest = resumed.poll(10000)
+
+        then:
+        rest.size() == 4000
+        rest.first().docid == 1001
+        rest.last().docid == 5000
+        resumed.length == 0
+        new File(folder, "priority-128").list().count { it.endsWith(".seg") } == 1
+
+        cleanup:
+        resumed.close()
+    }
+
+    def "lists the URLs of every level and segment without consuming them"() {
+        given:
+        def queue = open()
+        queue.putAll((1..3000).collect { url(it, 0) } + (3001..3010).collect { url(it, -1) })
+        queue.poll(5)
+        def batches = []
+
+        when:
+        queue.forEachBatch(500) { batches << it*.docid }
+
+        then:
+        batches*.size() == [500] * 6 + [5]
+        batches.flatten() == (3006..3010).toList() + (1..3000).toList()
+        queue.length == 3005
+        queue.poll(1)*.docid == [3006]
+
+        cleanup:
+        queue.close()
+    }
+
+    def "moves all URLs to another queue"() {
+        given:
+        def queue = open()
+        def target = new InMemoryFrontierStore().openQueue("target")
+        queue.putAll((1..2000).collect { url(it, 0) })
+
+        when:
+        def moved = queue.moveAllTo(target, 300)
+
+        then:
+        moved == 2000
+        queue.length == 0
+        target.poll(3000)*.docid == (1..2000).toList()
+
+        cleanup:
+        queue.close()
+    }
+
+    private SegmentedQueueStore open() {
+        new SegmentedQueueStore(folder, 64 * 1024, new WebURLDerbyBinding())
+    }
+
+    private static WebURL url(int docid, int priority) {
+        def url = new WebURL()
+        url.URL = "http://www.example.com/page/${docid}.html"
+        url.docid = docid
+        url.priority = priority as byte
+        return url
+    }
+}
@@ -0,0 +1,151 @@
+package edu.uci.ics.crawler4j.frontier
+
+import java.util.concurrent.CountDownLatch
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class TieredQueueStoreTest extends Specification {
+
+    private static WebURL url(int docid, int depth, int priority) {
+        def url = new WebURL()
+        url.URL = "http://example.com/${docid}".toString()
+        url.docid = docid
+        url.depth = (short) depth
+        url.priority = (byte) priority
+        return url
+    }
+
+    def "hands out URLs in crawl order across the head and the backing store"() {
+        given:
+        def backing = new InMemoryFrontierStore().openQueue("pending")
+        def store = new TieredQueueStore(backing, 10, 5)
+        def random = new Random(42)
+        def urls = (1..200).collect { url(it, random.nextInt(4), random.nextInt(3) - 1) }
+
+        when:
+        urls.collate(17).each { store.putAll(it) }
+        def polled = []
+        def batch
+        while (!(batch = store.poll(7)).isEmpty()) {
+            polled.addAll(batch)
+        }
+
+        then:
+        polled*.docid == urls.sort(false) { QueueKey.of(it) }*.docid
+        store.length == 0
+
+        cleanup:
+        store.close()
+    }
+
+    def "writes the head back to the backing store on close"() {
+        given:
+        def backing = new InMemoryFrontierStore().openQueue("pending")
+        def store = new TieredQueueStore(backing, 100, 1000)
+
+        when:
+        (1..30).each { store.put(url(it, 0, 0)) }
+        store.close()
+
+        then:
+        backing.length == 30
+        backing.poll(30)*.docid == (1..30).toList()
+    }
+
+    def "keeps the head within its capacity when URLs are spilled during a refill"() {
+        given: "a backing store which gets lower URLs scheduled while it is read"
+        def queue = new InMemoryFrontierStore().openQueue("pending")
+        queue.putAll((11..40).collect { url(it, 0, 0) })
+        def backing = new HookedQueue(queue: queue)
+        def stores = []
+        def ready = new CountDownLatch(1)
+        backing.onPoll = {
+            backing.onPoll = null
+            ready.await()
+            stores[0].putAll((1..5).collect { url(it, 0, 0) })
+        }
+
+        when:
+        def store = new TieredQueueStore(backing, 10, 1000)
+        stores << store
+        ready.countDown()
+        def deadline = System.currentTimeMillis() + 5000
+        while (store.headSize == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        store.headSize == 10
+        store.length == 35
+        store.poll(100)*.docid == (1..5).toList() + (11..40).toList()
+
+        cleanup:
+        store.close()
+    }
+
+    def "lists the head before the backing store without removing anything"() {
+        given:
+        def backing = new InMemoryFrontierStore().openQueue("pending")
+        def store = new TieredQueueStore(backing, 10, 1000)
+        store.putAll((1..30).collect { url(it, 0, 0) })
+        def batches = []
+
+        when:
+        store.forEachBatch(7) { batches << it*.docid }
+
+        then:
+        batches.flatten() == (1..30).toList()
+        batches.every { it.size() <= 7 }
+        store.length == 30
+        store.poll(3)*.docid == [1, 2, 3]
+
+        cleanup:
+        store.close()
+    }
+
+    def "moves all URLs to another queue"() {
+        given:
+        def store = new TieredQueueStore(new InMemoryFrontierStore().openQueue("pending"), 10, 1000)
+        def target = new InMemoryFrontierStore().openQueue("target")
+        store.putAll((1..30).collect { url(it, 0, 0) })
+
+        when:
+        def moved = store.moveAllTo(target, 8)
+
+        then:
+        moved == 30
+        store.length == 0
+        target.poll(100)*.docid == (1..30).toList()
+
+        cleanup:
+        store.close()
+    }
+
+    /**
+     * Runs {@code onPoll} before the URLs are read.
+     */
+    static class HookedQueue implements UrlQueueStore {
+        UrlQueueStore queue
+        volatile Closure onPoll
+
+        void put(WebURL url) { queue.put(url) }
+
+        void putAll(List<WebURL> urls) { queue.putAll(urls) }
+
+        List<WebURL> get(int max) { queue.get(max) }
+
+        void delete(int count) { queue.delete(count) }
+
+        List<WebURL> poll(int max) {
+            onPoll?.call()
+            queue.poll(max)
+        }
+
+        boolean remove(WebURL url) { queue.remove(url) }
+
+        long getLength() { queue.length }
+
+        void close() { queue.close() }
+    }
+}
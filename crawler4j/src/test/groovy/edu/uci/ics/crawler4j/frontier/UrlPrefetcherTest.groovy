@@ -0,0 +1,62 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class UrlPrefetcherTest extends Specification {
+
+    private static WebURL url(int docid) {
+        def url = new WebURL()
+        url.URL = "http://example.com/${docid}".toString()
+        url.docid = docid
+        return url
+    }
+
+    def "hands out the scheduled URLs in order from the prefetch buffer"() {
+        given:
+        def config = new CrawlConfig()
+        config.politenessDelay = 0
+        config.frontierPrefetchSize = 40
+        def frontier = new Frontier(new InMemoryFrontierStore(), config)
+
+        when:
+        frontier.scheduleAll((1..100).collect { url(it) })
+        def urls = []
+        while (urls.size() < 100) {
+            frontier.getNextURLs(30, urls)
+        }
+
+        then:
+        urls*.docid == (1..100).toList()
+        frontier.queueLength == 0
+        frontier.prefetchHits + frontier.prefetchMisses >= 4
+
+        cleanup:
+        frontier.finish()
+        frontier.close()
+    }
+
+    def "wakes up a waiting crawler thread when URLs are scheduled"() {
+        given:
+        def config = new CrawlConfig()
+        config.politenessDelay = 0
+        config.frontierPrefetchSize = 10
+        def frontier = new Frontier(new InMemoryFrontierStore(), config)
+        def urls = []
+        def crawler = Thread.start { frontier.getNextURLs(5, urls) }
+
+        when:
+        Thread.sleep(100)
+        frontier.schedule(url(1))
+        crawler.join(5000)
+
+        then:
+        !crawler.alive
+        urls*.docid == [1]
+
+        cleanup:
+        frontier.finish()
+        frontier.close()
+    }
+}
@@ -0,0 +1,76 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class WebURLDerbyBindingTest extends Specification {
+
+    def binding = new WebURLDerbyBinding()
+
+    def "round trips every stored field"() {
+        given:
+        def url = webURL()
+
+        when:
+        def copy = binding.entryToObject(binding.objectToEntry(url))
+
+        then:
+        copy.URL == url.URL
+        copy.docid == url.docid
+        copy.parentDocid == url.parentDocid
+        copy.parentUrl == url.parentUrl
+        copy.depth == url.depth
+        copy.priority == url.priority
+        copy.anchor == url.anchor
+    }
+
+    def "keeps only the parent docid when parent urls and anchors are dropped"() {
+        given:
+        def slim = new WebURLDerbyBinding(false, false)
+
+        when:
+        def copy = slim.entryToObject(slim.objectToEntry(webURL()))
+
+        then:
+        copy.URL == webURL().URL
+        copy.parentDocid == 7
+        copy.parentUrl == null
+        copy.anchor == null
+    }
+
+    def "reads entries written in the previous format"() {
+        given:
+        def url = webURL()
+        def bytes = new ByteArrayOutputStream()
+        new DataOutputStream(bytes).with {
+            writeUTF(url.URL)
+            writeInt(url.docid)
+            writeInt(url.parentDocid)
+            writeUTF(url.parentUrl)
+            writeShort(url.depth)
+            writeByte(url.priority)
+            writeUTF(url.anchor)
+        }
+
+        when:
+        def copy = binding.entryToObject(bytes.toByteArray())
+
+        then:
+        copy.URL == url.URL
+        copy.parentUrl == url.parentUrl
+        copy.anchor == url.anchor
+        binding.objectToEntry(url).length < bytes.size()
+    }
+
+    private static WebURL webURL() {
+        def url = new WebURL()
+        url.URL = "https://www.example.com/docs/café.html"
+        url.docid = 123456
+        url.parentDocid = 7
+        url.parentUrl = "https://www.example.com/docs/index.html"
+        url.depth = 3
+        url.priority = -2
+        url.anchor = "Café 😀"
+        return url
+    }
+}
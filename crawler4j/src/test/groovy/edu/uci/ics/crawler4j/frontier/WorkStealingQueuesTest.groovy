@@ -0,0 +1,49 @@
+package edu.uci.ics.crawler4j.frontier
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class WorkStealingQueuesTest extends Specification {
+
+    private static List<WebURL> urls(int count) {
+        (1..count).collect {
+            def webURL = new WebURL()
+            webURL.URL = "http://a.com/${it}".toString()
+            webURL
+        }
+    }
+
+    def "steals half of the fullest other deque from its tail"() {
+        given:
+        def queues = new WorkStealingQueues(10)
+        def busy = queues.register()
+        def other = queues.register()
+        def thief = queues.register()
+        busy.addAll(urls(6))
+        other.addAll(urls(2))
+
+        when:
+        def stolen = []
+        def count = queues.steal(thief, 10, stolen)
+
+        then:
+        count == 3
+        stolen*.URL == ["http://a.com/6", "http://a.com/5", "http://a.com/4"]
+        busy.pollFirst().URL == "http://a.com/1"
+        busy.size() == 2
+        queues.size() == 4
+        queues.stolen == 3
+    }
+
+    def "hands back the URLs of an unregistered deque"() {
+        given:
+        def queues = new WorkStealingQueues(4)
+        def local = queues.register()
+        local.addAll(urls(3))
+
+        expect:
+        local.remainingCapacity() == 1
+        queues.unregister(local)*.URL == ["http://a.com/1", "http://a.com/2", "http://a.com/3"]
+        queues.steal(queues.register(), 10, []) == 0
+    }
+}
@@ -0,0 +1,36 @@
+package edu.uci.ics.crawler4j.frontier.priority
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class CompositePrioritizerTest extends Specification {
+
+    def depth = new DepthPrioritizer(10)
+    def hosts = new HostDiversityPrioritizer(1)
+    def inLinks = new InLinkPrioritizer()
+    def prioritizer = new CompositePrioritizer(depth, hosts, inLinks)
+
+    def "adds up the scores of its prioritizers"() {
+        given:
+        def deep = url("http://a.com/1", 2)
+        prioritizer.onScheduled(url("http://a.com/", 0))
+
+        expect:
+        prioritizer.score(deep) == depth.score(deep) + hosts.score(deep) + inLinks.score(deep)
+        prioritizer.score(deep) == 21
+    }
+
+    def "passes links and scheduled URLs on to each of its prioritizers"() {
+        when:
+        prioritizer.onLinks(url("http://a.com/", 0), [url("http://a.com/1", 1), url("http://a.com/2", 1)])
+        prioritizer.onScheduled(url("http://a.com/1", 1))
+
+        then:
+        inLinks.getCash("http://a.com/1") == 0.5d
+        hosts.score(url("http://a.com/2", 1)) == 1
+    }
+
+    private static WebURL url(String address, int depth) {
+        new WebURL(URL: address, depth: depth as short)
+    }
+}
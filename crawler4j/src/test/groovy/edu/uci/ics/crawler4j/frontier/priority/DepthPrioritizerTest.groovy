@@ -0,0 +1,21 @@
+package edu.uci.ics.crawler4j.frontier.priority
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class DepthPrioritizerTest extends Specification {
+
+    def "scores the URLs by the depth they were found at"() {
+        given:
+        def prioritizer = new DepthPrioritizer(3)
+
+        expect:
+        prioritizer.score(url(0)) == 0
+        prioritizer.score(url(2)) == 6
+        prioritizer.score(url(-1)) == 0
+    }
+
+    private static WebURL url(int depth) {
+        new WebURL(URL: "http://a.com/", depth: depth as short)
+    }
+}
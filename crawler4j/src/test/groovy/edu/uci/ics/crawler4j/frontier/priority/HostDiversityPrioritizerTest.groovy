@@ -0,0 +1,25 @@
+package edu.uci.ics.crawler4j.frontier.priority
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class HostDiversityPrioritizerTest extends Specification {
+
+    def "scores the URLs of a host higher the more of them were scheduled"() {
+        given:
+        def prioritizer = new HostDiversityPrioritizer(2)
+
+        when:
+        (1..5).each { prioritizer.onScheduled(url("http://a.com/${it}")) }
+        prioritizer.onScheduled(url("http://b.com/1"))
+
+        then:
+        prioritizer.score(url("http://a.com/6")) == 2
+        prioritizer.score(url("http://b.com/2")) == 0
+        prioritizer.score(url("http://c.com/1")) == 0
+    }
+
+    private static WebURL url(String address) {
+        new WebURL(URL: address.toString())
+    }
+}
@@ -0,0 +1,51 @@
+package edu.uci.ics.crawler4j.frontier.priority
+
+import edu.uci.ics.crawler4j.url.WebURL
+import spock.lang.Specification
+
+class InLinkPrioritizerTest extends Specification {
+
+    def prioritizer = new InLinkPrioritizer()
+
+    def "scores the URLs with more in-links first"() {
+        when:
+        prioritizer.onLinks(url("http://a.com/"), [url("http://a.com/1"), url("http://a.com/2")])
+        prioritizer.onLinks(url("http://b.com/"), [url("http://a.com/2")])
+
+        then:
+        prioritizer.getCash("http://a.com/2") == 1.5d
+        prioritizer.score(url("http://a.com/2")) < prioritizer.score(url("http://a.com/1"))
+    }
+
+    def "passes on the cash a page collected once it is crawled"() {
+        given:
+        prioritizer.onLinks(url("http://a.com/"), [url("http://a.com/1")])
+        prioritizer.onLinks(url("http://b.com/"), [url("http://a.com/1")])
+
+        when:
+        prioritizer.onLinks(url("http://a.com/1"), [url("http://a.com/2"), url("http://a.com/3")])
+
+        then:
+        prioritizer.getCash("http://a.com/1") == 1.0d
+        prioritizer.getCash("http://a.com/2") == 1.0d
+        prioritizer.getCash("http://a.com/3") == 1.0d
+    }
+
+    def "scores the URLs beyond the tracked ones like seeds"() {
+        given:
+        def bounded = new InLinkPrioritizer(4, 1)
+
+        when:
+        bounded.onLinks(url("http://a.com/"), [url("http://a.com/1"), url("http://a.com/2")])
+
+        then:
+        bounded.getCash("http://a.com/1") == 0.5d
+        bounded.getCash("http://a.com/2") == 1.0d
+        bounded.score(url("http://a.com/1")) == 4
+        bounded.score(url("http://a.com/2")) == 0
+    }
+
+    private static WebURL url(String address) {
+        new WebURL(URL: address)
+    }
+}
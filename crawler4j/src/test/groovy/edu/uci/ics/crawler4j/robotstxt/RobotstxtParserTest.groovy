@@ -28,4 +28,24 @@ class RobotstxtParserTest extends Specification {
         then:
         notThrown(NullPointerException.class)
     }
+
+    def "takes the crawl delay of the most specific user agent"() {
+        given:
+        RobotstxtConfig robotstxtConfig = new RobotstxtConfig()
+        robotstxtConfig.userAgentName = userAgent
+
+        when:
+        HostDirectives directives = RobotstxtParser.parse(
+                "User-agent: *\nCrawl-delay: 2\n\nUser-agent: crawler4j\nCrawl-delay: 0.5\n\n" +
+                "User-agent: otherbot\nDisallow: /\n", robotstxtConfig)
+
+        then:
+        directives.crawlDelay == crawlDelay
+
+        where:
+        userAgent   | crawlDelay
+        "crawler4j" | 500
+        "somebot"   | 2000
+        "otherbot"  | -1
+    }
 }
@@ -0,0 +1,88 @@
+package edu.uci.ics.crawler4j.robotstxt
+
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration
+import com.github.tomakehurst.wiremock.junit.WireMockRule
+import edu.uci.ics.crawler4j.crawler.CrawlConfig
+import edu.uci.ics.crawler4j.fetcher.PageFetcher
+import edu.uci.ics.crawler4j.url.WebURL
+import org.junit.Rule
+import spock.lang.Specification
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*
+
+class RobotstxtServerTest extends Specification {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(new WireMockConfiguration().dynamicPort())
+
+    def pageFetcher = new PageFetcher(new CrawlConfig(politenessDelay: 100))
+
+    def cleanup() {
+        pageFetcher.shutDown()
+    }
+
+    def "passes the crawl delay of a robots.txt on to the rate limiter"() {
+        given:
+        robotsTxt("Crawl-delay: 2")
+        def server = new RobotstxtServer(new RobotstxtConfig(), pageFetcher)
+
+        when:
+        server.allows(page())
+
+        then:
+        pageFetcher.hostRateLimiter.getDelay("localhost") == 2000
+    }
+
+    def "caps a crawl delay at the maximum"() {
+        given:
+        robotsTxt("Crawl-delay: 3600")
+        def server = new RobotstxtServer(new RobotstxtConfig(maxCrawlDelay: 10000), pageFetcher)
+
+        when:
+        server.allows(page())
+
+        then:
+        server.getCrawlDelay(page()) == 3600000
+        pageFetcher.hostRateLimiter.getDelay("localhost") == 10000
+    }
+
+    def "keeps the politeness delay when crawl delays are not honored"() {
+        given:
+        robotsTxt("Crawl-delay: 2")
+        def server = new RobotstxtServer(new RobotstxtConfig(honorCrawlDelay: false), pageFetcher)
+
+        when:
+        server.allows(page())
+
+        then:
+        pageFetcher.hostRateLimiter.getDelay("localhost") == 100
+    }
+
+    def "sets the crawl delay again when the cached robots.txt is looked up"() {
+        given:
+        robotsTxt("Crawl-delay: 2")
+        def server = new RobotstxtServer(new RobotstxtConfig(), pageFetcher)
+        server.allows(page())
+        pageFetcher.hostRateLimiter.setCrawlDelay("localhost", -1)
+
+        when:
+        server.allows(page())
+
+        then:
+        pageFetcher.hostRateLimiter.getDelay("localhost") == 2000
+    }
+
+    private void robotsTxt(String crawlDelay) {
+        stubFor(get(urlPathMatching("/robots.txt"))
+                .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "text/plain")
+                .withBody("User-agent: *\nAllow: /\n" + crawlDelay + "\n")))
+    }
+
+    private WebURL page() {
+        def url = new WebURL()
+        url.URL = "http://localhost:${wireMockRule.port()}/some/page.html"
+        url
+    }
+}
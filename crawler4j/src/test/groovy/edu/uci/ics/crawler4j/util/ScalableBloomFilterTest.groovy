@@ -0,0 +1,34 @@
+package edu.uci.ics.crawler4j.util
+
+import spock.lang.Specification
+
+class ScalableBloomFilterTest extends Specification {
+
+    def "grows past its initial capacity without false negatives"() {
+        given:
+        def filter = new ScalableBloomFilter(100, 0.01)
+
+        when:
+        (1..1000).each { filter.put("http://example.com/${it}".toString()) }
+
+        then:
+        filter.stageCount > 1
+        (1..1000).every { filter.mightContain("http://example.com/${it}".toString()) }
+        (1..1000).count { filter.mightContain("http://example.org/${it}".toString()) } < 50
+    }
+
+    def "survives a write and read round trip"() {
+        given:
+        def filter = new ScalableBloomFilter(10, 0.01)
+        (1..50).each { filter.put("url-${it}".toString()) }
+        def out = new ByteArrayOutputStream()
+
+        when:
+        filter.writeTo(out)
+        def copy = ScalableBloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()))
+
+        then:
+        copy.stageCount == filter.stageCount
+        (1..50).every { copy.mightContain("url-${it}".toString()) }
+    }
+}
@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Date;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpHead;
@@ -32,12 +31,9 @@ public class PageFetcherHtmlOnly extends PageFetcher {
         try {
             head = new HttpHead(toFetchURL);
 
-            synchronized (mutex) {
-                long now = new Date().getTime();
-                if (now - this.lastFetchTime < getConfig().getPolitenessDelay()) {
-                    Thread.sleep(getConfig().getPolitenessDelay() - (now - this.lastFetchTime));
-                }
-                this.lastFetchTime = new Date().getTime();
+            long wait = hostRateLimiter.reserve(webUrl.getHost());
+            if (wait > 0) {
+                Thread.sleep(wait);
             }
 
             HttpResponse response = httpClient.execute(head);
@@ -0,0 +1,90 @@
+package edu.uci.ics.crawler4j.tests.frontier;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import edu.uci.ics.crawler4j.db.DerbyDatabase;
+import edu.uci.ics.crawler4j.db.DerbyEnvironment;
+import edu.uci.ics.crawler4j.frontier.DerbyFrontierStore;
+import edu.uci.ics.crawler4j.frontier.UrlQueueStore;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.util.IO;
+
+/**
+ * Measures the cost of dequeuing a batch from a Derby backed queue for growing
+ * queue sizes. With the bounded index scan and the range delete the time per
+ * batch should stay flat from 10k to 10M queued URLs.
+ *
+ * Not run as part of the test suite. Usage:
+ * <pre>
+ * java DequeueBenchmark [sizes, default 10000,100000,1000000,10000000] [batch size, default 50]
+ * </pre>
+ */
+public class DequeueBenchmark {
+
+    private static final int BATCHES = 200;
+    private static final int FILL_COMMIT_INTERVAL = 10000;
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000,10000000";
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        System.out.printf("%12s %16s %16s%n", "queued", "us/batch", "us/url");
+        for (String size : sizes.split(",")) {
+            long queued = Long.parseLong(size.trim());
+            double micros = run(queued, batchSize);
+            System.out.printf("%12d %16.1f %16.2f%n", queued, micros, micros / batchSize);
+        }
+    }
+
+    private static double run(long queued, int batchSize) throws Exception {
+        File home = Files.createTempDirectory("dequeue-benchmark").toFile();
+        DerbyEnvironment env = new DerbyEnvironment(home, new DerbyEnvironment.DerbyEnvironmentConfig());
+        try {
+            DerbyFrontierStore store = new DerbyFrontierStore(env, true);
+            UrlQueueStore queue = store.openQueue("PendingURLsDB");
+            fill(env, queue, queued);
+
+            // Warm up the statement cache and the page cache
+            queue.poll(batchSize);
+
+            long start = System.nanoTime();
+            int dequeued = 0;
+            for (int i = 0; i < BATCHES; i++) {
+                List<WebURL> batch = queue.poll(batchSize);
+                dequeued += batch.size();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (dequeued == 0) {
+                throw new IllegalStateException("Nothing was dequeued");
+            }
+            return elapsed / 1000.0 / BATCHES;
+        } finally {
+            env.close();
+            IO.deleteFolder(home);
+        }
+    }
+
+    private static void fill(DerbyEnvironment env, UrlQueueStore queue, long queued) {
+        DerbyEnvironment.DerbyDatabaseConfig dbConfig = new DerbyEnvironment.DerbyDatabaseConfig();
+        dbConfig.setTransactional(true);
+        DerbyDatabase db = env.openDatabase("PendingURLsDB", dbConfig);
+
+        DerbyDatabase.DerbyTransaction txn = db.beginTransaction();
+        for (long i = 1; i <= queued; i++) {
+            WebURL url = new WebURL();
+            url.setURL("http://www.example.com/page/" + i + ".html");
+            url.setDocid((int) i);
+            url.setParentDocid(1);
+            url.setParentUrl("http://www.example.com/");
+            url.setDepth((short) (i % 5));
+            queue.put(url);
+            if (i % FILL_COMMIT_INTERVAL == 0) {
+                txn.commit();
+                txn = db.beginTransaction();
+            }
+        }
+        txn.commit();
+    }
+}
@@ -0,0 +1,120 @@
+package edu.uci.ics.crawler4j.tests.frontier;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.uci.ics.crawler4j.db.DerbyEnvironment;
+import edu.uci.ics.crawler4j.db.LogEnvironment;
+import edu.uci.ics.crawler4j.frontier.DerbyFrontierStore;
+import edu.uci.ics.crawler4j.frontier.DocIdStore;
+import edu.uci.ics.crawler4j.frontier.FrontierStore;
+import edu.uci.ics.crawler4j.frontier.LogFrontierStore;
+import edu.uci.ics.crawler4j.frontier.UrlQueueStore;
+import edu.uci.ics.crawler4j.url.WebURL;
+import edu.uci.ics.crawler4j.util.IO;
+
+/**
+ * Compares the Derby and the log-structured frontier stores of resumable crawls
+ * on the three frontier workloads: scheduling URLs, dequeuing them and checking
+ * whether URLs were seen before (half of the lookups hit, half miss).
+ *
+ * Not run as part of the test suite. Usage:
+ * <pre>
+ * java FrontierBackendBenchmark [URLs, default 200000] [batch size, default 50] [backends, default derby,log]
+ * </pre>
+ */
+public class FrontierBackendBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int urls = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        String backends = args.length > 2 ? args[2] : "derby,log";
+
+        System.out.printf("%8s %16s %16s %16s%n", "backend", "schedule url/s", "dequeue url/s", "seen check/s");
+        for (String backend : backends.split(",")) {
+            File home = Files.createTempDirectory("frontier-benchmark").toFile();
+            try {
+                run(backend.trim(), home, urls, batchSize);
+            } finally {
+                IO.deleteFolder(home);
+            }
+        }
+    }
+
+    private static FrontierStore open(String backend, File home) {
+        if ("log".equals(backend)) {
+            return new LogFrontierStore(new LogEnvironment(home));
+        }
+        if ("derby".equals(backend)) {
+            return new DerbyFrontierStore(new DerbyEnvironment(home, new DerbyEnvironment.DerbyEnvironmentConfig()),
+                                          true);
+        }
+        throw new IllegalArgumentException("Unknown backend: " + backend);
+    }
+
+    private static void run(String backend, File home, int urls, int batchSize) {
+        FrontierStore store = open(backend, home);
+        try {
+            UrlQueueStore queue = store.openQueue("PendingURLsDB");
+            DocIdStore docIds = store.openDocIds("DocIDs");
+
+            long start = System.nanoTime();
+            List<WebURL> batch = new ArrayList<>(batchSize);
+            for (int i = 1; i <= urls; i++) {
+                batch.add(url(i));
+                if (batch.size() == batchSize) {
+                    queue.putAll(batch);
+                    batch.clear();
+                }
+            }
+            queue.putAll(batch);
+            double schedule = rate(urls, start);
+
+            start = System.nanoTime();
+            int dequeued = 0;
+            List<WebURL> polled;
+            while (!(polled = queue.poll(batchSize)).isEmpty()) {
+                dequeued += polled.size();
+            }
+            double dequeue = rate(dequeued, start);
+            if (dequeued != urls) {
+                throw new IllegalStateException("Dequeued " + dequeued + " of " + urls + " URLs");
+            }
+
+            for (int i = 1; i <= urls / 2; i++) {
+                docIds.put(url(i).getURL(), i);
+            }
+            start = System.nanoTime();
+            int seen = 0;
+            for (int i = 1; i <= urls; i++) {
+                if (docIds.get(url(i).getURL()) > 0) {
+                    seen++;
+                }
+            }
+            double seenCheck = rate(urls, start);
+            if (seen != urls / 2) {
+                throw new IllegalStateException("Found " + seen + " of " + urls / 2 + " seen URLs");
+            }
+
+            System.out.printf("%8s %16.0f %16.0f %16.0f%n", backend, schedule, dequeue, seenCheck);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static double rate(int operations, long startNanos) {
+        return operations / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    private static WebURL url(int i) {
+        WebURL url = new WebURL();
+        url.setURL("http://www.example.com/page/" + i + ".html");
+        url.setDocid(i);
+        url.setParentDocid(1);
+        url.setParentUrl("http://www.example.com/");
+        url.setDepth((short) (i % 5));
+        return url;
+    }
+}